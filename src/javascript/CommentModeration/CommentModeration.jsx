@@ -1,10 +1,12 @@
 import React, {useState, useEffect, useRef, useMemo, useCallback} from 'react';
-import {useQuery, useMutation, useLazyQuery} from '@apollo/client';
+import {useQuery, useMutation} from '@apollo/client';
 import {useTranslation} from 'react-i18next';
 import {Header, Button, Dropdown} from '@jahia/moonstone';
-import {GET_ALL_COMMENTS, GET_POST_BY_ID, UPDATE_COMMENT_STATUS, DELETE_COMMENT} from '~/gql-queries/CommentModeration.gql-queries';
+import {GET_MODERATION_QUEUE, UPDATE_COMMENT_STATUS, UPDATE_COMMENT_STATUSES, DELETE_COMMENT, BLOG_MUTATION_CONTEXT} from '~/gql-queries/CommentModeration.gql-queries';
 import styles from './CommentModeration.module.scss';
 
+const PAGE_SIZE = 50;
+
 const CommentModeration = ({siteKey, lang}) => {
     console.log('==== CommentModeration RENDER START ====');
     console.log('Props - siteKey:', siteKey, 'lang:', lang);
@@ -12,28 +14,26 @@ const CommentModeration = ({siteKey, lang}) => {
     const {t} = useTranslation('blog-service');
     const [filter, setFilter] = useState('all');
 
-    // GraphQL query to fetch comments
-    const {data, loading, error, refetch} = useQuery(GET_ALL_COMMENTS, {
-        variables: {lang: lang || 'en'},
-        fetchPolicy: 'cache-first',
+    // GraphQL query to fetch one page of the moderation queue, filtered and grouped by post server-side
+    const {data, loading, error, refetch, fetchMore} = useQuery(GET_MODERATION_QUEUE, {
+        variables: {siteKey, status: filter === 'all' ? null : filter, first: PAGE_SIZE, lang: lang || 'en'},
+        fetchPolicy: 'cache-and-network',
         notifyOnNetworkStatusChange: false
     });
-    
+    const queue = data?.blog?.moderationQueue;
+
     console.log('Apollo Query State:');
     console.log('  - loading:', loading);
     console.log('  - hasData:', !!data);
     console.log('  - error:', error);
-    if (data) {
-        console.log('  - nodes count:', data?.jcr?.nodesByCriteria?.nodes?.length || 0);
+    if (queue) {
+        console.log('  - posts count:', queue.posts.length);
     }
 
     // Mutations
     const [updateStatusMutation] = useMutation(UPDATE_COMMENT_STATUS);
     const [deleteCommentMutation] = useMutation(DELETE_COMMENT);
-    
-    // State for post names
-    const [postNames, setPostNames] = useState({});
-    const [getPostById] = useLazyQuery(GET_POST_BY_ID);
+    const [updateStatusesMutation] = useMutation(UPDATE_COMMENT_STATUSES);
 
     // Detect unmounting
     useEffect(() => {
@@ -57,72 +57,43 @@ const CommentModeration = ({siteKey, lang}) => {
         };
     };
 
-    // Process comments data
-    const comments = useMemo(() => {
-        console.log('useMemo: Processing comments...');
-        try {
-            if (!data?.jcr?.nodesByCriteria?.nodes) {
-                console.log('  -> No data, returning empty array');
-                return [];
-            }
-            
-            console.log('  -> Processing', data.jcr.nodesByCriteria.nodes.length, 'nodes');
-            const processed = data.jcr.nodesByCriteria.nodes.map(node => {
-                // Extract postId from path: /sites/{site}/contents/ugc/blogs/{postId}/comments/{commentId}
-                let postId = '';
-                if (node.path) {
-                    const pathParts = node.path.split('/');
-                    const blogsIndex = pathParts.indexOf('blogs');
-                    if (blogsIndex !== -1 && pathParts.length > blogsIndex + 1) {
-                        postId = pathParts[blogsIndex + 1];
-                    }
-                }
-                
-                // Determine status: use status property if available, otherwise derive from approved boolean
-                let status = node.status?.value;
-                if (!status) {
-                    // Fallback for old comments without status property
-                    const approved = node.approved?.value;
-                    status = approved === 'true' || approved === true ? 'approved' : 'pending';
-                }
-                
-                return {
-                    uuid: node.uuid,
-                    author: node.author?.value || 'Anonymous',
-                    body: node.comment?.value || '',
-                    status: status,
-                    created: node.created?.value || new Date().toISOString(),
-                    postId: postId
-                };
-            });
-            console.log('  -> Processed comments:', processed.length);
-            return processed;
-        } catch (err) {
-            console.error('ERROR processing comments:', err);
+    // Comments of the loaded pages, already grouped by post with their titles
+    const groupedComments = useMemo(() => {
+        if (!queue?.posts) {
             return [];
         }
-    }, [data]);    // Calculate stats synchronously based on comments (not in useEffect!)
-    const stats = useMemo(() => {
-        console.log('useMemo: Calculating stats from', comments.length, 'comments');
-        const calculated = {
-            total: comments.length,
-            pending: comments.filter(c => c.status === 'pending').length,
-            approved: comments.filter(c => c.status === 'approved').length,
-            rejected: comments.filter(c => c.status === 'rejected').length
-        };
-        console.log('  -> Stats:', calculated);
-        return calculated;
-    }, [comments]);
+        return queue.posts.map(post => ({
+            postId: post.postId,
+            postTitle: post.postTitle,
+            comments: post.comments.map(comment => ({
+                uuid: comment.uuid,
+                author: comment.authorName || 'Anonymous',
+                body: comment.body || '',
+                status: comment.status || 'pending',
+                created: comment.created
+            }))
+        }));
+    }, [queue]);
+
+    const commentCount = useMemo(
+        () => groupedComments.reduce((count, group) => count + group.comments.length, 0),
+        [groupedComments]
+    );
+
+    // Per-status counts are computed server-side for the whole site
+    const stats = useMemo(() => ({
+        total: queue?.totalCount || 0,
+        pending: queue?.pendingCount || 0,
+        approved: queue?.approvedCount || 0,
+        rejected: queue?.rejectedCount || 0
+    }), [queue]);
 
     const updateCommentStatus = useCallback(async (commentId, status) => {
         try {
             await updateStatusMutation({
-                variables: {
-                    commentId,
-                    status,
-                    approved: status === 'approved' ? 'true' : 'false'
-                },
-                refetchQueries: ['GetAllComments']
+                variables: {commentId, status},
+                context: BLOG_MUTATION_CONTEXT,
+                refetchQueries: ['GetModerationQueue']
             });
         } catch (err) {
             console.error('Error updating comment:', err);
@@ -138,7 +109,8 @@ const CommentModeration = ({siteKey, lang}) => {
         try {
             await deleteCommentMutation({
                 variables: {commentId},
-                refetchQueries: ['GetAllComments']
+                context: BLOG_MUTATION_CONTEXT,
+                refetchQueries: ['GetModerationQueue']
             });
         } catch (err) {
             console.error('Error deleting comment:', err);
@@ -146,71 +118,70 @@ const CommentModeration = ({siteKey, lang}) => {
         }
     }, [deleteCommentMutation]);
 
+    // Moderates all the loaded comments of a post in one request, refetching the queue once
+    const updateCommentStatuses = useCallback(async (postComments, status) => {
+        const commentIds = postComments.filter(comment => comment.status !== status).map(comment => comment.uuid);
+        if (commentIds.length === 0) {
+            return;
+        }
+        try {
+            const {data: result} = await updateStatusesMutation({
+                variables: {commentIds, status},
+                context: BLOG_MUTATION_CONTEXT,
+                refetchQueries: ['GetModerationQueue']
+            });
+            const failed = (result?.blog?.updateCommentStatuses || []).filter(item => !item.success);
+            if (failed.length > 0) {
+                alert('Unable to update ' + failed.length + ' comment(s): ' + failed.map(item => item.commentId + ' (' + item.code + ')').join(', '));
+            }
+        } catch (err) {
+            console.error('Error updating comments:', err);
+            alert('Error updating comments: ' + err.message);
+        }
+    }, [updateStatusesMutation]);
+
     const handleRefresh = useCallback(() => {
         refetch();
     }, [refetch]);
-    
-    // Fetch post names for all unique posts
-    useEffect(() => {
-        if (!comments || comments.length === 0) {
-            return;
-        }
-        
-        const uniquePostIds = [...new Set(comments.map(c => c.postId).filter(Boolean))];
-        
-        uniquePostIds.forEach(async (postId) => {
-            if (!postNames[postId]) {
-                try {
-                    const {data: postData} = await getPostById({
-                        variables: {postId, lang: lang || 'en'}
-                    });
-                    if (postData?.jcr?.nodeById?.displayName) {
-                        setPostNames(prev => ({
-                            ...prev,
-                            [postId]: postData.jcr.nodeById.displayName
-                        }));
-                    }
-                } catch (err) {
-                    console.error('Error fetching post name for', postId, err);
+
+    // Appends the next page, merging the comments of a post split across two pages
+    const handleLoadMore = useCallback(() => {
+        fetchMore({
+            variables: {after: queue?.endCursor},
+            updateQuery: (previous, {fetchMoreResult}) => {
+                const next = fetchMoreResult?.blog?.moderationQueue;
+                if (!next) {
+                    return previous;
                 }
+                const posts = previous.blog.moderationQueue.posts.map(post => ({...post}));
+                next.posts.forEach(post => {
+                    const existing = posts.find(candidate => candidate.postId === post.postId);
+                    if (existing) {
+                        existing.comments = [...existing.comments, ...post.comments];
+                    } else {
+                        posts.push(post);
+                    }
+                });
+                return {
+                    ...fetchMoreResult,
+                    blog: {
+                        ...fetchMoreResult.blog,
+                        moderationQueue: {...next, posts}
+                    }
+                };
             }
         });
-    }, [comments, getPostById, lang, postNames]);
+    }, [fetchMore, queue]);
 
     const setFilterAll = useCallback(() => setFilter('all'), []);
     const setFilterPending = useCallback(() => setFilter('pending'), []);
     const setFilterApproved = useCallback(() => setFilter('approved'), []);
     const setFilterRejected = useCallback(() => setFilter('rejected'), []);
 
-    const filteredComments = useMemo(() => {
-        console.log('useMemo: Filtering comments, filter:', filter, 'total comments:', comments.length);
-        if (filter === 'all') {
-            console.log('  -> Returning all', comments.length, 'comments');
-            return comments;
-        }
-        const filtered = comments.filter(comment => comment.status === filter);
-        console.log('  -> Filtered to', filtered.length, 'comments with status:', filter);
-        return filtered;
-    }, [comments, filter]);
-    
-    // Group comments by post (must come after filteredComments is defined)
-    const groupedComments = useMemo(() => {
-        const groups = {};
-        filteredComments.forEach(comment => {
-            const postId = comment.postId || 'unknown';
-            if (!groups[postId]) {
-                groups[postId] = [];
-            }
-            groups[postId].push(comment);
-        });
-        return groups;
-    }, [filteredComments]);
-
     console.log('Current State BEFORE RENDER:');
     console.log('  - stats:', stats);
     console.log('  - filter:', filter);
-    console.log('  - comments.length:', comments.length);
-    console.log('  - filteredComments.length:', filteredComments.length);
+    console.log('  - loaded comments:', commentCount);
     console.log('  - Will show loading?', loading && !data);
     console.log('==== About to render JSX ====');
 
@@ -288,15 +259,29 @@ const CommentModeration = ({siteKey, lang}) => {
                     </div>
                 ) : error ? (
                     <p style={{color: 'red'}}>{t('moderation.error')}: {error.message}</p>
-                ) : filteredComments.length === 0 ? (
+                ) : commentCount === 0 ? (
                     <p>{t('moderation.noComments')}</p>
                 ) : (
                     <div style={{display: 'flex', flexDirection: 'column', gap: '30px'}}>
-                        {Object.entries(groupedComments).map(([postId, postComments]) => (
+                        {groupedComments.map(({postId, postTitle, comments: postComments}) => (
                             <div key={postId} style={{display: 'flex', flexDirection: 'column', gap: '15px'}}>
-                                <h3 style={{fontSize: '18px', fontWeight: 'bold', color: '#495057', marginBottom: '10px', paddingBottom: '10px', borderBottom: '2px solid #dee2e6'}}>
-                                    {postNames[postId] || postId}
-                                </h3>
+                                <div style={{display: 'flex', justifyContent: 'space-between', alignItems: 'center', marginBottom: '10px', paddingBottom: '10px', borderBottom: '2px solid #dee2e6'}}>
+                                    <h3 style={{fontSize: '18px', fontWeight: 'bold', color: '#495057', margin: 0}}>
+                                        {postTitle || postId}
+                                    </h3>
+                                    <div style={{display: 'flex', gap: '10px'}}>
+                                        <Button
+                                            color="accent"
+                                            label={t('moderation.actions.approveAll')}
+                                            onClick={() => updateCommentStatuses(postComments, 'approved')}
+                                        />
+                                        <Button
+                                            color="default"
+                                            label={t('moderation.actions.rejectAll')}
+                                            onClick={() => updateCommentStatuses(postComments, 'rejected')}
+                                        />
+                                    </div>
+                                </div>
                                 {postComments.map((comment, index) => {
                                     console.log(`Rendering comment ${index}:`, comment);
                                     try {
@@ -368,6 +353,14 @@ const CommentModeration = ({siteKey, lang}) => {
                                 })}
                             </div>
                         ))}
+                        {queue?.hasNextPage && (
+                            <div style={{display: 'flex', justifyContent: 'center'}}>
+                                <Button
+                                    label={t('moderation.loadMore')}
+                                    onClick={handleLoadMore}
+                                />
+                            </div>
+                        )}
                     </div>
                 )}
                     </div>
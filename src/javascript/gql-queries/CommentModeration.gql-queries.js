@@ -1,44 +1,26 @@
 import {gql} from '@apollo/client';
 
-export const GET_ALL_COMMENTS = gql`
-    query GetAllComments($lang: String!) {
-        jcr(workspace: LIVE) {
-            nodesByCriteria(criteria: {
-                nodeType: "jsblognt:comment",
-                language: $lang
-            }) {
-                nodes {
-                    uuid
-                    path
-                    workspace
-                    author: property(name: "author") {
-                        value
-                    }
-                    comment: property(name: "comment") {
-                        value
-                    }
-                    status: property(name: "status") {
-                        value
-                    }
-                    approved: property(name: "approved") {
-                        value
-                    }
-                    created: property(name: "jcr:created") {
-                        value
+export const GET_MODERATION_QUEUE = gql`
+    query GetModerationQueue($siteKey: String!, $status: String, $first: Int, $after: String, $lang: String) {
+        blog {
+            moderationQueue(siteKey: $siteKey, status: $status, first: $first, after: $after, language: $lang) {
+                posts {
+                    postId
+                    postTitle
+                    comments {
+                        uuid
+                        authorName
+                        body
+                        created
+                        status
                     }
                 }
-            }
-        }
-    }
-`;
-
-export const GET_POST_BY_ID = gql`
-    query GetPostById($postId: String!, $lang: String!) {
-        jcr(workspace: LIVE) {
-            nodeById(uuid: $postId) {
-                uuid
-                workspace
-                displayName(language: $lang)
+                pendingCount
+                approvedCount
+                rejectedCount
+                totalCount
+                endCursor
+                hasNextPage
             }
         }
     }
@@ -56,15 +38,11 @@ export const GET_POST_BY_PATH = gql`
 `;
 
 export const UPDATE_COMMENT_STATUS = gql`
-    mutation UpdateCommentStatus($commentId: String!, $status: String!, $approved: String!) {
-        jcr(workspace: LIVE) {
-            mutateNode(pathOrId: $commentId) {
-                status: mutateProperty(name: "status") {
-                    setValue(value: $status)
-                }
-                approved: mutateProperty(name: "approved") {
-                    setValue(value: $approved)
-                }
+    mutation UpdateCommentStatus($commentId: String!, $status: String!) {
+        blog {
+            updateCommentStatus(commentId: $commentId, status: $status) {
+                success
+                message
             }
         }
     }
@@ -72,8 +50,42 @@ export const UPDATE_COMMENT_STATUS = gql`
 
 export const DELETE_COMMENT = gql`
     mutation DeleteComment($commentId: String!) {
-        jcr(workspace: LIVE) {
-            deleteNode(pathOrId: $commentId)
+        blog {
+            deleteComment(commentId: $commentId) {
+                success
+                message
+            }
+        }
+    }
+`;
+
+export const UPDATE_COMMENT_STATUSES = gql`
+    mutation UpdateCommentStatuses($commentIds: [String]!, $status: String!) {
+        blog {
+            updateCommentStatuses(commentIds: $commentIds, status: $status) {
+                commentId
+                success
+                code
+            }
         }
     }
 `;
+
+export const DELETE_COMMENTS = gql`
+    mutation DeleteComments($commentIds: [String]!) {
+        blog {
+            deleteComments(commentIds: $commentIds) {
+                commentId
+                success
+                code
+            }
+        }
+    }
+`;
+
+// Blog mutations only accept requests carrying a CSRF header, which cannot be set by a cross-site form post
+export const BLOG_MUTATION_CONTEXT = {
+    headers: {
+        'X-CSRF-Token': 'blog-service-moderation'
+    }
+};
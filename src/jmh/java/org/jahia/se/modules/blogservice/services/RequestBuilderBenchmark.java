@@ -0,0 +1,65 @@
+package org.jahia.se.modules.blogservice.services;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Calendar;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of building the comment, like and rating requests created by every mutation
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RequestBuilderBenchmark {
+
+    private final String blogPostId = "6f1c2b7e-3b1a-4f55-9b1e-1c2d3e4f5a6b";
+    private final String clientHash = "9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822cd15d6c15b0f00a08";
+    private final String ipHash = "60303ae22b998861bce3b28f33eec1be758a213c86c93c076dbe9f558c11c752";
+    private final String userAgent = "Mozilla/5.0 (X11; Linux x86_64) AppleWebKit/537.36 (KHTML, like Gecko)";
+    private final Calendar timestamp = Calendar.getInstance();
+
+    @Benchmark
+    public CommentRequest commentRequest() {
+        return CommentRequest.builder(blogPostId, "Great article, thanks for sharing!")
+                .withAuthor("Jane Doe")
+                .withAuthorEmail("jane.doe@example.com")
+                .withClientHash(clientHash)
+                .withIpHash(ipHash)
+                .withUserAgent(userAgent)
+                .withTimestamp(timestamp)
+                .build();
+    }
+
+    @Benchmark
+    public LikeRequest likeRequest() {
+        return LikeRequest.builder(blogPostId)
+                .withClientHash(clientHash)
+                .withIpHash(ipHash)
+                .withUserAgent(userAgent)
+                .withTimestamp(timestamp)
+                .build();
+    }
+
+    @Benchmark
+    public RatingRequest ratingRequest() {
+        return RatingRequest.builder()
+                .blogPostId(blogPostId)
+                .rating(4)
+                .clientHash(clientHash)
+                .ipHash(ipHash)
+                .userAgent(userAgent)
+                .build();
+    }
+}
@@ -0,0 +1,223 @@
+package org.jahia.se.modules.blogservice.services;
+
+import org.jahia.services.content.JCRNodeWrapper;
+
+import javax.jcr.PathNotFoundException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+
+/**
+ * In-memory stand-in for the JCR nodes walked by the UGC services, built on dynamic proxies. Only the node,
+ * property and iterator methods used by the services are implemented; any other call fails with
+ * {@link UnsupportedOperationException}. Iterators work on a snapshot of the children, like the lazy
+ * Jackrabbit iterators, so nodes can be removed while a folder is walked.
+ */
+final class StubNodes {
+
+    private static final Map<String, String> SUPER_TYPES = new HashMap<>();
+
+    static {
+        SUPER_TYPES.put("jsblognt:comment", "jnt:content");
+        SUPER_TYPES.put("jsblognt:like", "jnt:content");
+        SUPER_TYPES.put("jsblognt:rating", "jnt:content");
+        SUPER_TYPES.put(KeyedUgcNodes.INDEX_ENTRY_TYPE, "jnt:content");
+    }
+
+    private StubNodes() {
+    }
+
+    /**
+     * Creates a detached root node
+     */
+    static JCRNodeWrapper root(String name, String nodeType) {
+        return new StubNode(null, name, nodeType).proxy;
+    }
+
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(StubNodes.class.getClassLoader(), new Class<?>[]{type}, handler));
+    }
+
+    private static Object identity(Object proxy, Method method, Object[] args) {
+        switch (method.getName()) {
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "equals":
+                return proxy == args[0];
+            default:
+                throw new UnsupportedOperationException(method.getDeclaringClass().getSimpleName() + "." + method.getName());
+        }
+    }
+
+    private static final class StubNode implements InvocationHandler {
+        private final StubNode parent;
+        private final String name;
+        private final String nodeType;
+        private final String identifier = UUID.randomUUID().toString();
+        private final Map<String, StubNode> children = new LinkedHashMap<>();
+        private final Map<String, Object> properties = new HashMap<>();
+        private final JCRNodeWrapper proxy;
+
+        StubNode(StubNode parent, String name, String nodeType) {
+            this.parent = parent;
+            this.name = name;
+            this.nodeType = nodeType;
+            this.proxy = proxy(JCRNodeWrapper.class, this);
+        }
+
+        @Override
+        public Object invoke(Object self, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "getName":
+                    return name;
+                case "getPath":
+                case "toString":
+                    return path();
+                case "getIdentifier":
+                    return identifier;
+                case "getParent":
+                    return parent.proxy;
+                case "isNodeType":
+                    return nodeType.equals(args[0]) || args[0].equals(SUPER_TYPES.get(nodeType));
+                case "hasNodes":
+                    return !children.isEmpty();
+                case "hasNode":
+                    return resolve((String) args[0]) != null;
+                case "getNode":
+                    StubNode node = resolve((String) args[0]);
+                    if (node == null) {
+                        throw new PathNotFoundException(path() + "/" + args[0]);
+                    }
+                    return node.proxy;
+                case "getNodes":
+                    List<Object> snapshot = new ArrayList<>(children.size());
+                    children.values().forEach(child -> snapshot.add(child.proxy));
+                    return proxy(method.getReturnType(), new StubIterator(snapshot));
+                case "addNode":
+                    StubNode child = new StubNode(this, (String) args[0], args.length > 1 ? (String) args[1] : "jnt:contentFolder");
+                    children.put(child.name, child);
+                    return child.proxy;
+                case "remove":
+                    parent.children.remove(name);
+                    return null;
+                case "hasProperty":
+                    return properties.containsKey(args[0]);
+                case "getProperty":
+                    if (!properties.containsKey(args[0])) {
+                        throw new PathNotFoundException(path() + "/" + args[0]);
+                    }
+                    return proxy(method.getReturnType(), new StubProperty(this, (String) args[0]));
+                case "getPropertyAsString":
+                    Object value = properties.get(args[0]);
+                    return value != null ? value.toString() : null;
+                case "setProperty":
+                    if (args[1] == null) {
+                        properties.remove(args[0]);
+                    } else {
+                        properties.put((String) args[0], args[1]);
+                    }
+                    return null;
+                default:
+                    return identity(self, method, args);
+            }
+        }
+
+        private String path() {
+            return parent == null ? "/" + name : parent.path() + "/" + name;
+        }
+
+        private StubNode resolve(String relativePath) {
+            StubNode current = this;
+            for (String segment : relativePath.split("/")) {
+                current = current.children.get(segment);
+                if (current == null) {
+                    return null;
+                }
+            }
+            return current;
+        }
+    }
+
+    private static final class StubProperty implements InvocationHandler {
+        private final StubNode node;
+        private final String name;
+
+        StubProperty(StubNode node, String name) {
+            this.node = node;
+            this.name = name;
+        }
+
+        @Override
+        public Object invoke(Object self, Method method, Object[] args) {
+            Object value = node.properties.get(name);
+            switch (method.getName()) {
+                case "getName":
+                    return name;
+                case "getString":
+                    return String.valueOf(value);
+                case "getLong":
+                    return ((Number) value).longValue();
+                case "getDouble":
+                    return ((Number) value).doubleValue();
+                case "getBoolean":
+                    return (Boolean) value;
+                case "getDate":
+                    return (Calendar) value;
+                case "remove":
+                    node.properties.remove(name);
+                    return null;
+                default:
+                    return identity(self, method, args);
+            }
+        }
+    }
+
+    private static final class StubIterator implements InvocationHandler {
+        private final List<Object> items;
+        private final Iterator<Object> iterator;
+        private long position;
+
+        StubIterator(List<Object> items) {
+            this.items = items;
+            this.iterator = items.iterator();
+        }
+
+        @Override
+        public Object invoke(Object self, Method method, Object[] args) {
+            switch (method.getName()) {
+                case "hasNext":
+                    return iterator.hasNext();
+                case "next":
+                case "nextNode":
+                    position++;
+                    return iterator.next();
+                case "skip":
+                    for (long i = 0; i < (Long) args[0]; i++) {
+                        if (!iterator.hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        position++;
+                        iterator.next();
+                    }
+                    return null;
+                case "getSize":
+                    return (long) items.size();
+                case "getPosition":
+                    return position;
+                case "iterator":
+                    return self;
+                default:
+                    return identity(self, method, args);
+            }
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package org.jahia.se.modules.blogservice.services;
+
+import org.jahia.se.modules.blogservice.util.HashUtils;
+import org.jahia.services.content.JCRNodeWrapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.jcr.RepositoryException;
+import java.util.Calendar;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dedup and aggregation algorithms of the comment, like and rating services, run against a stub post holding
+ * the given number of comments, likes and ratings.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class UgcServicesBenchmark {
+
+    private static final String POST_ID = "6f1c2b7e-3b1a-4f55-9b1e-1c2d3e4f5a6b";
+
+    @Param({"10", "1000", "100000"})
+    private int interactions;
+
+    @Param({"FLAT", "HASH", "DATE"})
+    private UgcFolderLayout layout;
+
+    private JCRNodeWrapper comments;
+    private JCRNodeWrapper likes;
+    private JCRNodeWrapper likesByIp;
+    private JCRNodeWrapper ratings;
+    private CommentRequest newComment;
+    private String existingClientHash;
+    private String existingIpHash;
+    private String missingHash;
+
+    @Setup(Level.Trial)
+    public void createPost() throws RepositoryException {
+        JCRNodeWrapper postFolder = StubNodes.root(POST_ID, "jnt:contentFolder");
+        comments = postFolder.addNode("comments", "jsblognt:commentsFolder");
+        likes = postFolder.addNode("likes", "jsblognt:likesFolder");
+        likesByIp = postFolder.addNode("likesByIp", KeyedUgcNodes.INDEX_FOLDER_TYPE);
+        ratings = postFolder.addNode("ratings", "jsblognt:ratingsFolder");
+
+        Calendar timestamp = Calendar.getInstance();
+        for (int i = 0; i < interactions; i++) {
+            String clientHash = HashUtils.sha256(POST_ID, "client-" + i);
+            String ipHash = HashUtils.sha256(POST_ID, "10.0." + (i >> 8 & 0xff) + "." + (i & 0xff));
+            // Spread the comments over the last 100 days so the date layout uses several buckets
+            timestamp.setTimeInMillis(System.currentTimeMillis() - (i % 100) * TimeUnit.DAYS.toMillis(1));
+
+            String commentName = "c-" + i;
+            JCRNodeWrapper comment = UgcFolders.getOrCreateParent(comments, layout, commentName, timestamp)
+                    .addNode(commentName, "jsblognt:comment");
+            comment.setProperty("blogPostId", POST_ID);
+            comment.setProperty("comment", "Comment number " + i);
+            comment.setProperty("clientHash", clientHash);
+            comment.setProperty("ipHash", ipHash);
+            comment.setProperty("ts", (Calendar) timestamp.clone());
+            comment.setProperty("status", i % 3 == 0 ? CommentCounters.STATUS_PENDING : CommentCounters.STATUS_APPROVED);
+
+            String likeName = KeyedUgcNodes.nodeName("l-", clientHash, ipHash);
+            JCRNodeWrapper like = KeyedUgcNodes.add(likes, layout, likeName, "jsblognt:like");
+            like.setProperty("blogPostId", POST_ID);
+            like.setProperty("clientHash", clientHash);
+            like.setProperty("ipHash", ipHash);
+            KeyedUgcNodes.index(likesByIp, layout, ipHash, likeName);
+
+            JCRNodeWrapper rating = KeyedUgcNodes.add(ratings, layout, KeyedUgcNodes.nodeName("r-", clientHash, ipHash),
+                    "jsblognt:rating");
+            rating.setProperty("blogPostId", POST_ID);
+            rating.setProperty("rating", (long) (i % 5 + 1));
+
+            if (i == interactions / 2) {
+                existingClientHash = clientHash;
+                existingIpHash = ipHash;
+            }
+        }
+        likes.setProperty(KeyedUgcNodes.PROP_KEYED, true);
+        ratings.setProperty(KeyedUgcNodes.PROP_KEYED, true);
+        CommentCounters.rebuild(comments);
+        BlogLikeService.countLikes(likes);
+        BlogRatingService.calculateRatingStats(ratings);
+
+        missingHash = HashUtils.sha256(POST_ID, "unknown-client");
+        // A new comment is never a duplicate, so the scan always walks every comment
+        newComment = CommentRequest.builder(POST_ID, "A brand new comment")
+                .withClientHash(missingHash)
+                .withIpHash(missingHash)
+                .withTimestamp(Calendar.getInstance())
+                .build();
+    }
+
+    @Benchmark
+    public boolean duplicateCommentScan() throws RepositoryException {
+        return BlogCommentService.isDuplicateComment(comments, newComment);
+    }
+
+    @Benchmark
+    public JCRNodeWrapper likeLookupByClientHash() throws RepositoryException {
+        return KeyedUgcNodes.find(likes, likesByIp, "l-", existingClientHash, null);
+    }
+
+    @Benchmark
+    public JCRNodeWrapper likeLookupThroughIpIndex() throws RepositoryException {
+        return KeyedUgcNodes.find(likes, likesByIp, "l-", missingHash, existingIpHash);
+    }
+
+    @Benchmark
+    public JCRNodeWrapper likeLookupMiss() throws RepositoryException {
+        return KeyedUgcNodes.find(likes, likesByIp, "l-", missingHash, missingHash);
+    }
+
+    @Benchmark
+    public long readLikeCounter() throws RepositoryException {
+        return BlogLikeService.readLikeCount(likes);
+    }
+
+    @Benchmark
+    public long recountLikes() throws RepositoryException {
+        return BlogLikeService.countLikes(likes);
+    }
+
+    @Benchmark
+    public BlogRatingService.RatingStats readRatingAggregate() throws RepositoryException {
+        return BlogRatingService.readRatingStats(ratings);
+    }
+
+    @Benchmark
+    public BlogRatingService.RatingStats recalculateRatingAggregate() throws RepositoryException {
+        return BlogRatingService.calculateRatingStats(ratings);
+    }
+
+    @Benchmark
+    public long rebuildCommentCounters() throws RepositoryException {
+        CommentCounters.rebuild(comments);
+        return CommentCounters.get(comments, CommentCounters.STATUS_APPROVED);
+    }
+}
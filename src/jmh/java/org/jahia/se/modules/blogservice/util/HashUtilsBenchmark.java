@@ -0,0 +1,44 @@
+package org.jahia.se.modules.blogservice.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hashing of the client and IP identifiers, as done twice by every mutation
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HashUtilsBenchmark {
+
+    private final String blogPostId = "6f1c2b7e-3b1a-4f55-9b1e-1c2d3e4f5a6b";
+    private final String clientId = "3c1e4f2a-8d7b-4a6c-9e5f-0b1d2c3e4f5a";
+    private final KeyedHasher keyedHasher = new KeyedHasher("c1458747f52fd1709b12985b723cfeeeeae14d799f3d74ad982b904c4832a21da");
+
+    @Benchmark
+    public String sha256() {
+        return HashUtils.sha256(blogPostId + ":" + clientId);
+    }
+
+    @Benchmark
+    public String sha256Parts() {
+        return HashUtils.sha256(blogPostId, clientId);
+    }
+
+    @Benchmark
+    public String keyedHash() {
+        return keyedHasher.hash(blogPostId, clientId);
+    }
+}
@@ -0,0 +1,68 @@
+package org.jahia.se.modules.blogservice.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.servlet.http.HttpServletRequest;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Client IP extraction and truncation, for a request behind a proxy chain and a direct request
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IpUtilsBenchmark {
+
+    private final HttpServletRequest proxiedRequest =
+            request(Collections.singletonMap("X-Forwarded-For", "203.0.113.195, 70.41.3.18, 150.172.238.178"), "10.0.0.1");
+    private final HttpServletRequest directRequest = request(Collections.emptyMap(), "198.51.100.23");
+
+    @Benchmark
+    public String extractClientIpFromForwardedHeader() {
+        return IpUtils.extractClientIp(proxiedRequest);
+    }
+
+    @Benchmark
+    public String extractClientIpFromRemoteAddress() {
+        // Every known proxy header is checked before falling back to the remote address
+        return IpUtils.extractClientIp(directRequest);
+    }
+
+    @Benchmark
+    public String truncateIpv4() {
+        return IpUtils.truncateForHash("203.0.113.195");
+    }
+
+    @Benchmark
+    public String truncateIpv6() {
+        return IpUtils.truncateForHash("2001:DB8:85A3:0000:0000:8A2E:0370:7334");
+    }
+
+    private static HttpServletRequest request(Map<String, String> headers, String remoteAddress) {
+        return (HttpServletRequest) Proxy.newProxyInstance(IpUtilsBenchmark.class.getClassLoader(),
+                new Class<?>[]{HttpServletRequest.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getHeader":
+                            return headers.get(args[0]);
+                        case "getRemoteAddr":
+                            return remoteAddress;
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+}
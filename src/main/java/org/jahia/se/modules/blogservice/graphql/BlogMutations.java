@@ -12,17 +12,23 @@ import org.jahia.modules.graphql.provider.dxm.DXGraphQLProvider;
 import org.jahia.modules.graphql.provider.dxm.osgi.annotations.GraphQLOsgiService;
 import org.jahia.se.modules.blogservice.services.BlogCommentService;
 import org.jahia.se.modules.blogservice.services.BlogConfigurationService;
+import org.jahia.se.modules.blogservice.services.BlogEngagementService;
 import org.jahia.se.modules.blogservice.services.BlogLikeService;
+import org.jahia.se.modules.blogservice.services.BlogMetrics;
+import org.jahia.se.modules.blogservice.services.BlogPostResolver;
+import org.jahia.se.modules.blogservice.services.BlogRateLimiter;
 import org.jahia.se.modules.blogservice.services.BlogRatingService;
+import org.jahia.se.modules.blogservice.services.BlogUgcMigrationService;
+import org.jahia.se.modules.blogservice.services.BlogUgcPurgeService;
+import org.jahia.se.modules.blogservice.services.BlogWriteExecutor;
 import org.jahia.se.modules.blogservice.services.CommentRequest;
-import org.jahia.se.modules.blogservice.services.CommentResult;
+import org.jahia.se.modules.blogservice.services.EngagementRequest;
 import org.jahia.se.modules.blogservice.services.LikeRequest;
-import org.jahia.se.modules.blogservice.services.LikeResult;
 import org.jahia.se.modules.blogservice.services.RatingRequest;
-import org.jahia.se.modules.blogservice.services.RatingResult;
 import org.jahia.se.modules.blogservice.services.BlogServiceException;
 import org.jahia.se.modules.blogservice.util.HashUtils;
 import org.jahia.se.modules.blogservice.util.IpUtils;
+import org.jahia.se.modules.blogservice.util.KeyedHasher;
 import org.jahia.se.modules.blogservice.util.RequestUtil;
 import org.osgi.service.component.annotations.Component;
 
@@ -30,7 +36,11 @@ import javax.inject.Inject;
 import javax.servlet.http.Cookie;
 import javax.servlet.http.HttpServletRequest;
 import java.util.Calendar;
-import java.util.Optional;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 @GraphQLDescription("GraphQL mutations related to blog posts")
 public class BlogMutations {
@@ -39,6 +49,12 @@ public class BlogMutations {
     private BlogLikeService likeService;
     private BlogRatingService ratingService;
     private BlogConfigurationService configurationService;
+    private BlogUgcMigrationService migrationService;
+    private BlogUgcPurgeService purgeService;
+    private BlogRateLimiter rateLimiter;
+    private BlogWriteExecutor writeExecutor;
+    private BlogEngagementService engagementService;
+    private BlogPostResolver postResolver;
 
     @Inject
     @GraphQLOsgiService
@@ -64,15 +80,51 @@ public class BlogMutations {
         this.configurationService = configurationService;
     }
 
+    @Inject
+    @GraphQLOsgiService
+    public void setMigrationService(BlogUgcMigrationService migrationService) {
+        this.migrationService = migrationService;
+    }
+
+    @Inject
+    @GraphQLOsgiService
+    public void setPurgeService(BlogUgcPurgeService purgeService) {
+        this.purgeService = purgeService;
+    }
+
+    @Inject
+    @GraphQLOsgiService
+    public void setRateLimiter(BlogRateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+    }
+
+    @Inject
+    @GraphQLOsgiService
+    public void setWriteExecutor(BlogWriteExecutor writeExecutor) {
+        this.writeExecutor = writeExecutor;
+    }
+
+    @Inject
+    @GraphQLOsgiService
+    public void setEngagementService(BlogEngagementService engagementService) {
+        this.engagementService = engagementService;
+    }
+
+    @Inject
+    @GraphQLOsgiService
+    public void setPostResolver(BlogPostResolver postResolver) {
+        this.postResolver = postResolver;
+    }
+
     @GraphQLField
     @GraphQLName("addComment")
     @GraphQLDescription("Add a comment to a blog post")
-    public CommentPayload addComment(@GraphQLName("blogPostId") @GraphQLNonNull String blogPostId,
-                                     @GraphQLName("comment") @GraphQLNonNull String comment,
-                                     @GraphQLName("author") String author,
-                                     @GraphQLName("authorEmail") String authorEmail,
-                                     @GraphQLName("clientHash") String clientHashFromClient,
-                                     DataFetchingEnvironment environment) {
+    public CompletableFuture<CommentPayload> addComment(@GraphQLName("blogPostId") @GraphQLNonNull String blogPostId,
+                                                        @GraphQLName("comment") @GraphQLNonNull String comment,
+                                                        @GraphQLName("author") String author,
+                                                        @GraphQLName("authorEmail") String authorEmail,
+                                                        @GraphQLName("clientHash") String clientHashFromClient,
+                                                        DataFetchingEnvironment environment) {
 
         HttpServletRequest request = RequestUtil.extractHttpServletRequest(environment)
                 .orElseThrow(() -> new DataFetchingException("Unable to resolve HTTP request from context"));
@@ -80,16 +132,17 @@ public class BlogMutations {
         validateCsrf(request);
 
         String clientFingerprintSource = extractClientIdentifier(request, clientHashFromClient);
+        checkRateLimit(BlogRateLimiter.Operation.COMMENT, request, clientFingerprintSource);
         String computedClientHash = null;
         if (StringUtils.isNotBlank(clientFingerprintSource)) {
-            computedClientHash = HashUtils.sha256(blogPostId + ":" + clientFingerprintSource);
+            computedClientHash = HashUtils.sha256(blogPostId, clientFingerprintSource);
         }
 
         String ipHash = null;
         String clientIp = IpUtils.extractClientIp(request);
         String truncatedIp = IpUtils.truncateForHash(clientIp);
         if (StringUtils.isNotBlank(truncatedIp)) {
-            ipHash = HashUtils.sha256(blogPostId + ":" + truncatedIp);
+            ipHash = HashUtils.sha256(blogPostId, truncatedIp);
         }
 
         CommentRequest commentRequest = CommentRequest.builder(blogPostId, comment)
@@ -101,24 +154,19 @@ public class BlogMutations {
                 .withTimestamp(Calendar.getInstance())
                 .build();
 
-        try {
-            CommentResult result = commentService.submit(commentRequest);
-            return new CommentPayload(result);
-        } catch (BlogServiceException e) {
-            throw new DataFetchingException(e);
-        }
+        return submitWrite(BlogMetrics.COMMENT_SUBMIT, () -> new CommentPayload(commentService.submit(commentRequest)));
     }
 
     @GraphQLField
     @GraphQLName("createComment")
     @GraphQLDescription("Create a comment for a blog post")
-    public CommentPayload createComment(@GraphQLName("postId") @GraphQLNonNull String postId,
-                                        @GraphQLName("authorName") @GraphQLNonNull String authorName,
-                                        @GraphQLName("authorEmail") String authorEmail,
-                                        @GraphQLName("body") @GraphQLNonNull String body,
-                                        @GraphQLName("token") String token,
-                                        @GraphQLName("clientHash") String clientHashFromClient,
-                                        DataFetchingEnvironment environment) {
+    public CompletableFuture<CommentPayload> createComment(@GraphQLName("postId") @GraphQLNonNull String postId,
+                                                           @GraphQLName("authorName") @GraphQLNonNull String authorName,
+                                                           @GraphQLName("authorEmail") String authorEmail,
+                                                           @GraphQLName("body") @GraphQLNonNull String body,
+                                                           @GraphQLName("token") String token,
+                                                           @GraphQLName("clientHash") String clientHashFromClient,
+                                                           DataFetchingEnvironment environment) {
 
         HttpServletRequest request = RequestUtil.extractHttpServletRequest(environment)
                 .orElseThrow(() -> new DataFetchingException("Unable to resolve HTTP request from context"));
@@ -126,15 +174,14 @@ public class BlogMutations {
         // Validate CSRF token from parameter or header
         validateCsrfToken(request, token);
 
-        Optional<String> serverSecret = configurationService.getServerSecret();
-        if (serverSecret.isEmpty()) {
-            throw new DataFetchingException("Blog service secret is not configured");
-        }
+        KeyedHasher hasher = configurationService.getKeyedHasher()
+                .orElseThrow(() -> new DataFetchingException("Blog service secret is not configured"));
 
         String clientFingerprintSource = extractClientIdentifier(request, clientHashFromClient);
+        checkRateLimit(BlogRateLimiter.Operation.COMMENT, request, clientFingerprintSource);
         String computedClientHash = null;
         if (StringUtils.isNotBlank(clientFingerprintSource)) {
-            computedClientHash = HashUtils.sha256(postId + ":" + clientFingerprintSource + ":" + serverSecret.get());
+            computedClientHash = hasher.hash(postId, clientFingerprintSource);
         }
 
         String ipHash = null;
@@ -142,7 +189,7 @@ public class BlogMutations {
             String clientIp = IpUtils.extractClientIp(request);
             String truncatedIp = IpUtils.truncateForHash(clientIp);
             if (StringUtils.isNotBlank(truncatedIp)) {
-                ipHash = HashUtils.sha256(postId + ":" + truncatedIp + ":" + serverSecret.get());
+                ipHash = hasher.hash(postId, truncatedIp);
             }
         }
 
@@ -155,35 +202,29 @@ public class BlogMutations {
                 .withTimestamp(Calendar.getInstance())
                 .build();
 
-        try {
-            CommentResult result = commentService.submit(commentRequest);
-            return new CommentPayload(result);
-        } catch (BlogServiceException e) {
-            throw new DataFetchingException(e);
-        }
+        return submitWrite(BlogMetrics.COMMENT_SUBMIT, () -> new CommentPayload(commentService.submit(commentRequest)));
     }
 
     @GraphQLField
     @GraphQLName("addLike")
     @GraphQLDescription("Add a like to a blog post")
-    public LikePayload addLike(@GraphQLName("blogPostId") @GraphQLNonNull String blogPostId,
-                               @GraphQLName("clientHash") String clientHashFromClient,
-                               DataFetchingEnvironment environment) {
+    public CompletableFuture<LikePayload> addLike(@GraphQLName("blogPostId") @GraphQLNonNull String blogPostId,
+                                                  @GraphQLName("clientHash") String clientHashFromClient,
+                                                  DataFetchingEnvironment environment) {
 
         HttpServletRequest request = RequestUtil.extractHttpServletRequest(environment)
                 .orElseThrow(() -> new DataFetchingException("Unable to resolve HTTP request from context"));
 
         validateCsrf(request);
 
-        Optional<String> serverSecret = configurationService.getServerSecret();
-        if (serverSecret.isEmpty()) {
-            throw new DataFetchingException("Blog service secret is not configured");
-        }
+        KeyedHasher hasher = configurationService.getKeyedHasher()
+                .orElseThrow(() -> new DataFetchingException("Blog service secret is not configured"));
 
         String clientFingerprintSource = extractClientIdentifier(request, clientHashFromClient);
+        checkRateLimit(BlogRateLimiter.Operation.LIKE, request, clientFingerprintSource);
         String computedClientHash = null;
         if (StringUtils.isNotBlank(clientFingerprintSource)) {
-            computedClientHash = HashUtils.sha256(blogPostId + ":" + clientFingerprintSource + ":" + serverSecret.get());
+            computedClientHash = hasher.hash(blogPostId, clientFingerprintSource);
         }
 
         String ipHash = null;
@@ -191,7 +232,7 @@ public class BlogMutations {
             String clientIp = IpUtils.extractClientIp(request);
             String truncatedIp = IpUtils.truncateForHash(clientIp);
             if (StringUtils.isNotBlank(truncatedIp)) {
-                ipHash = HashUtils.sha256(blogPostId + ":" + truncatedIp + ":" + serverSecret.get());
+                ipHash = hasher.hash(blogPostId, truncatedIp);
             }
         }
 
@@ -202,21 +243,16 @@ public class BlogMutations {
                 .withTimestamp(Calendar.getInstance())
                 .build();
 
-        try {
-            LikeResult result = likeService.submit(likeRequest);
-            return new LikePayload(result);
-        } catch (BlogServiceException e) {
-            throw new DataFetchingException(e);
-        }
+        return submitWrite(BlogMetrics.LIKE_SUBMIT, () -> new LikePayload(likeService.submit(likeRequest)));
     }
 
     @GraphQLField
     @GraphQLName("ratePost")
     @GraphQLDescription("Rate a blog post with a rating from 1 to 5")
-    public RatingPayload ratePost(@GraphQLName("postId") @GraphQLNonNull String postId,
-                                  @GraphQLName("rating") @GraphQLNonNull int rating,
-                                  @GraphQLName("clientHash") String clientHashFromClient,
-                                  DataFetchingEnvironment environment) {
+    public CompletableFuture<RatingPayload> ratePost(@GraphQLName("postId") @GraphQLNonNull String postId,
+                                                     @GraphQLName("rating") @GraphQLNonNull int rating,
+                                                     @GraphQLName("clientHash") String clientHashFromClient,
+                                                     DataFetchingEnvironment environment) {
 
         HttpServletRequest request = RequestUtil.extractHttpServletRequest(environment)
                 .orElseThrow(() -> new DataFetchingException("Unable to resolve HTTP request from context"));
@@ -228,15 +264,14 @@ public class BlogMutations {
             throw new DataFetchingException("Rating must be between 1 and 5");
         }
 
-        Optional<String> serverSecret = configurationService.getServerSecret();
-        if (serverSecret.isEmpty()) {
-            throw new DataFetchingException("Blog service secret is not configured");
-        }
+        KeyedHasher hasher = configurationService.getKeyedHasher()
+                .orElseThrow(() -> new DataFetchingException("Blog service secret is not configured"));
 
         String clientFingerprintSource = extractClientIdentifier(request, clientHashFromClient);
+        checkRateLimit(BlogRateLimiter.Operation.RATING, request, clientFingerprintSource);
         String computedClientHash = null;
         if (StringUtils.isNotBlank(clientFingerprintSource)) {
-            computedClientHash = HashUtils.sha256(postId + ":" + clientFingerprintSource + ":" + serverSecret.get());
+            computedClientHash = hasher.hash(postId, clientFingerprintSource);
         }
 
         String ipHash = null;
@@ -244,7 +279,7 @@ public class BlogMutations {
             String clientIp = IpUtils.extractClientIp(request);
             String truncatedIp = IpUtils.truncateForHash(clientIp);
             if (StringUtils.isNotBlank(truncatedIp)) {
-                ipHash = HashUtils.sha256(postId + ":" + truncatedIp + ":" + serverSecret.get());
+                ipHash = hasher.hash(postId, truncatedIp);
             }
         }
 
@@ -256,14 +291,178 @@ public class BlogMutations {
                 .userAgent(sanitizeUserAgent(request.getHeader("User-Agent")))
                 .build();
 
+        return submitWrite(BlogMetrics.RATING_SUBMIT, () -> new RatingPayload(ratingService.submit(ratingRequest)));
+    }
+
+    @GraphQLField
+    @GraphQLName("submitEngagement")
+    @GraphQLDescription("Like, rate and comment a blog post at once; the submitted parts are persisted together with one save")
+    public CompletableFuture<EngagementSubmissionPayload> submitEngagement(
+            @GraphQLName("postId") @GraphQLNonNull String postId,
+            @GraphQLName("like") Boolean like,
+            @GraphQLName("rating") Integer rating,
+            @GraphQLName("comment") String comment,
+            @GraphQLName("authorName") String authorName,
+            @GraphQLName("authorEmail") String authorEmail,
+            @GraphQLName("token") String token,
+            @GraphQLName("clientHash") String clientHashFromClient,
+            DataFetchingEnvironment environment) {
+
+        HttpServletRequest request = RequestUtil.extractHttpServletRequest(environment)
+                .orElseThrow(() -> new DataFetchingException("Unable to resolve HTTP request from context"));
+
+        validateCsrfToken(request, token);
+
+        boolean withLike = Boolean.TRUE.equals(like);
+        boolean withComment = StringUtils.isNotBlank(comment);
+        if (!withLike && rating == null && !withComment) {
+            throw new DataFetchingException("At least one of like, rating or comment must be provided");
+        }
+        if (rating != null && (rating < 1 || rating > 5)) {
+            throw new DataFetchingException("Rating must be between 1 and 5");
+        }
+        if (withComment && StringUtils.isBlank(authorName)) {
+            throw new DataFetchingException("An author name is required to comment");
+        }
+
+        KeyedHasher hasher = configurationService.getKeyedHasher()
+                .orElseThrow(() -> new DataFetchingException("Blog service secret is not configured"));
+
+        // Each part still consumes the budget of its own operation
+        String clientFingerprintSource = extractClientIdentifier(request, clientHashFromClient);
+        if (withLike) {
+            checkRateLimit(BlogRateLimiter.Operation.LIKE, request, clientFingerprintSource);
+        }
+        if (rating != null) {
+            checkRateLimit(BlogRateLimiter.Operation.RATING, request, clientFingerprintSource);
+        }
+        if (withComment) {
+            checkRateLimit(BlogRateLimiter.Operation.COMMENT, request, clientFingerprintSource);
+        }
+
+        String computedClientHash = null;
+        if (StringUtils.isNotBlank(clientFingerprintSource)) {
+            computedClientHash = hasher.hash(postId, clientFingerprintSource);
+        }
+
+        String ipHash = null;
+        if (configurationService.isEnableIpHash()) {
+            String clientIp = IpUtils.extractClientIp(request);
+            String truncatedIp = IpUtils.truncateForHash(clientIp);
+            if (StringUtils.isNotBlank(truncatedIp)) {
+                ipHash = hasher.hash(postId, truncatedIp);
+            }
+        }
+
+        String userAgent = sanitizeUserAgent(request.getHeader("User-Agent"));
+        Calendar timestamp = Calendar.getInstance();
+        EngagementRequest.Builder engagement = EngagementRequest.builder(postId);
+        if (withLike) {
+            engagement.withLike(LikeRequest.builder(postId)
+                    .withClientHash(computedClientHash)
+                    .withIpHash(ipHash)
+                    .withUserAgent(userAgent)
+                    .withTimestamp(timestamp)
+                    .build());
+        }
+        if (rating != null) {
+            engagement.withRating(RatingRequest.builder()
+                    .blogPostId(postId)
+                    .rating(rating)
+                    .clientHash(computedClientHash)
+                    .ipHash(ipHash)
+                    .userAgent(userAgent)
+                    .build());
+        }
+        if (withComment) {
+            engagement.withComment(CommentRequest.builder(postId, comment)
+                    .withAuthor(authorName)
+                    .withAuthorEmail(authorEmail)
+                    .withClientHash(computedClientHash)
+                    .withIpHash(ipHash)
+                    .withUserAgent(userAgent)
+                    .withTimestamp(timestamp)
+                    .build());
+        }
+        EngagementRequest engagementRequest = engagement.build();
+
+        return submitWrite(BlogMetrics.ENGAGEMENT_SUBMIT,
+                () -> new EngagementSubmissionPayload(engagementService.submit(engagementRequest)));
+    }
+
+    @GraphQLField
+    @GraphQLName("rebuildRatingStats")
+    @GraphQLDescription("Rebuild the persisted rating aggregate of a blog post from its rating nodes")
+    public RatingPayload rebuildRatingStats(@GraphQLName("postId") @GraphQLNonNull String postId,
+                                            DataFetchingEnvironment environment) {
+
+        HttpServletRequest request = RequestUtil.extractHttpServletRequest(environment)
+                .orElseThrow(() -> new DataFetchingException("Unable to resolve HTTP request from context"));
+
+        validateCsrf(request);
+        checkPostPermission(postId);
+
+        try {
+            BlogRatingService.RatingStats stats = ratingService.rebuildRatingStats(postId);
+            return new RatingPayload(postId, stats.getAverageRating(), stats.getRatingCount());
+        } catch (BlogServiceException e) {
+            throw new DataFetchingException("Error rebuilding rating stats: " + e.getMessage(), e);
+        }
+    }
+
+    @GraphQLField
+    @GraphQLName("rebuildLikeCount")
+    @GraphQLDescription("Recount the likes of a blog post and store the result as its like counter")
+    public LikesPayload rebuildLikeCount(@GraphQLName("postId") @GraphQLNonNull String postId,
+                                         DataFetchingEnvironment environment) {
+
+        HttpServletRequest request = RequestUtil.extractHttpServletRequest(environment)
+                .orElseThrow(() -> new DataFetchingException("Unable to resolve HTTP request from context"));
+
+        validateCsrf(request);
+        checkPostPermission(postId);
+
         try {
-            RatingResult result = ratingService.submit(ratingRequest);
-            return new RatingPayload(result.getBlogPostId(), result.getAverageRating(), result.getRatingCount());
+            return new LikesPayload(postId, likeService.rebuildLikeCount(postId));
         } catch (BlogServiceException e) {
-            throw new DataFetchingException(e);
+            throw new DataFetchingException("Error rebuilding like count: " + e.getMessage(), e);
         }
     }
 
+    @GraphQLField
+    @GraphQLName("migrateUgcLayout")
+    @GraphQLDescription("Move the existing comments, likes and ratings of a site into the configured UGC folder layout. Returns the number of post folders processed")
+    public int migrateUgcLayout(@GraphQLName("siteKey") @GraphQLNonNull String siteKey,
+                                DataFetchingEnvironment environment) {
+
+        HttpServletRequest request = RequestUtil.extractHttpServletRequest(environment)
+                .orElseThrow(() -> new DataFetchingException("Unable to resolve HTTP request from context"));
+
+        validateCsrf(request);
+        BlogPermissions.checkSitePermission(siteKey);
+
+        try {
+            return migrationService.migrateSite(siteKey);
+        } catch (BlogServiceException e) {
+            throw new DataFetchingException("Error migrating UGC layout: " + e.getMessage(), e);
+        }
+    }
+
+    @GraphQLField
+    @GraphQLName("purgeUgc")
+    @GraphQLDescription("Start a background purge of the rejected comments, expired likes and orphaned UGC folders of a site. Returns false if a purge is already running")
+    public boolean purgeUgc(@GraphQLName("siteKey") @GraphQLNonNull String siteKey,
+                            DataFetchingEnvironment environment) {
+
+        HttpServletRequest request = RequestUtil.extractHttpServletRequest(environment)
+                .orElseThrow(() -> new DataFetchingException("Unable to resolve HTTP request from context"));
+
+        validateCsrf(request);
+        BlogPermissions.checkSitePermission(siteKey);
+
+        return purgeService.requestPurge(siteKey);
+    }
+
     @GraphQLField
     @GraphQLName("updateCommentStatus")
     @GraphQLDescription("Update the status of a comment (approve/reject)")
@@ -313,6 +512,95 @@ public class BlogMutations {
         }
     }
 
+    @GraphQLField
+    @GraphQLName("updateCommentStatuses")
+    @GraphQLDescription("Update the status of several comments at once, with one outcome per comment")
+    public List<CommentBatchItemPayload> updateCommentStatuses(
+            @GraphQLName("commentIds") @GraphQLNonNull List<String> commentIds,
+            @GraphQLName("status") @GraphQLNonNull String status,
+            DataFetchingEnvironment environment) {
+
+        HttpServletRequest request = RequestUtil.extractHttpServletRequest(environment)
+                .orElseThrow(() -> new DataFetchingException("Unable to resolve HTTP request from context"));
+
+        validateCsrf(request);
+
+        try {
+            // A single comment of a site the user may not moderate rejects the whole batch
+            BlogPermissions.checkSitePermission(commentService.getSiteKeys(commentIds));
+            return commentService.updateCommentStatuses(commentIds, status).stream()
+                    .map(CommentBatchItemPayload::new)
+                    .collect(Collectors.toList());
+        } catch (BlogServiceException e) {
+            throw new DataFetchingException("Error updating comment statuses: " + e.getMessage(), e);
+        }
+    }
+
+    @GraphQLField
+    @GraphQLName("deleteComments")
+    @GraphQLDescription("Delete several comments at once, with one outcome per comment")
+    public List<CommentBatchItemPayload> deleteComments(
+            @GraphQLName("commentIds") @GraphQLNonNull List<String> commentIds,
+            DataFetchingEnvironment environment) {
+
+        HttpServletRequest request = RequestUtil.extractHttpServletRequest(environment)
+                .orElseThrow(() -> new DataFetchingException("Unable to resolve HTTP request from context"));
+
+        validateCsrf(request);
+
+        try {
+            // A single comment of a site the user may not moderate rejects the whole batch
+            BlogPermissions.checkSitePermission(commentService.getSiteKeys(commentIds));
+            return commentService.deleteComments(commentIds).stream()
+                    .map(CommentBatchItemPayload::new)
+                    .collect(Collectors.toList());
+        } catch (BlogServiceException e) {
+            throw new DataFetchingException("Error deleting comments: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Hands a write over to the blog write executor. Everything needed from the HTTP request must have been
+     * captured in the service request beforehand, since the request may be recycled before the write runs.
+     */
+    private <T> CompletableFuture<T> submitWrite(String operation, BlogWrite<T> write) {
+        try {
+            return writeExecutor.submit(operation, () -> {
+                try {
+                    return write.execute();
+                } catch (BlogServiceException e) {
+                    throw new DataFetchingException(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            throw new DataFetchingException("Too many pending blog submissions, retry later");
+        }
+    }
+
+    /**
+     * A service call run by {@link #submitWrite}
+     */
+    @FunctionalInterface
+    private interface BlogWrite<T> {
+        T execute() throws BlogServiceException;
+    }
+
+    /**
+     * Rebuilds read every node of a post folder, so they are reserved to the users allowed to publish in its site
+     */
+    private void checkPostPermission(String postId) {
+        String siteKey;
+        try {
+            siteKey = postResolver.getSiteKey(postId);
+        } catch (BlogServiceException e) {
+            throw new DataFetchingException("Unable to check permission: " + e.getMessage(), e);
+        }
+        if (siteKey == null) {
+            throw new DataFetchingException("Blog post not found: " + postId);
+        }
+        BlogPermissions.checkSitePermission(siteKey);
+    }
+
     private void validateCsrf(HttpServletRequest request) {
         validateCsrfToken(request, null);
     }
@@ -331,6 +619,18 @@ public class BlogMutations {
         }
     }
 
+    /**
+     * Refuses the call, before any repository access, when the client or its IP used up its budget for the operation
+     */
+    private void checkRateLimit(BlogRateLimiter.Operation operation, HttpServletRequest request, String clientIdentifier) {
+        String truncatedIp = IpUtils.truncateForHash(IpUtils.extractClientIp(request));
+        long retryAfterMillis = rateLimiter.acquire(operation, clientIdentifier, truncatedIp);
+        if (retryAfterMillis > 0) {
+            throw new DataFetchingException("Too many requests, retry in "
+                    + TimeUnit.MILLISECONDS.toSeconds(retryAfterMillis + 999) + " seconds");
+        }
+    }
+
     private String extractClientIdentifier(HttpServletRequest request, String clientHashFromClient) {
         String cookieValue = getCookieValue(request, configurationService.getClientIdCookieName());
         if (StringUtils.isNotBlank(cookieValue)) {
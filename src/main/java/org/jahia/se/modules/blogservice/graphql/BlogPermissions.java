@@ -0,0 +1,59 @@
+package org.jahia.se.modules.blogservice.graphql;
+
+import org.jahia.api.Constants;
+import org.jahia.modules.graphql.provider.dxm.DataFetchingException;
+import org.jahia.services.content.JCRSessionFactory;
+import org.jahia.services.content.JCRSessionWrapper;
+
+import javax.jcr.RepositoryException;
+import java.util.Collection;
+
+/**
+ * Permission checks of the moderation and administration fields, made with the session of the current user.
+ * The GraphQL API is open to the visitors of the site, so every field that exposes unpublished content or
+ * changes more than the caller's own interactions must go through one of them.
+ */
+final class BlogPermissions {
+
+    /** Permission on a site required to moderate and administer its UGC */
+    static final String SITE_PERMISSION = "publish";
+    /** Permission on the repository root required to read the server-wide statistics */
+    static final String SERVER_PERMISSION = "administrationAccess";
+
+    private BlogPermissions() {
+    }
+
+    /**
+     * @throws DataFetchingException if the current user may not publish in the site
+     */
+    static void checkSitePermission(String siteKey) {
+        checkPermission("/sites/" + siteKey, SITE_PERMISSION);
+    }
+
+    /**
+     * @throws DataFetchingException if the current user may not publish in one of the sites
+     */
+    static void checkSitePermission(Collection<String> siteKeys) {
+        for (String siteKey : siteKeys) {
+            checkSitePermission(siteKey);
+        }
+    }
+
+    /**
+     * @throws DataFetchingException if the current user is not a server administrator
+     */
+    static void checkServerPermission() {
+        checkPermission("/", SERVER_PERMISSION);
+    }
+
+    private static void checkPermission(String path, String permission) {
+        try {
+            JCRSessionWrapper session = JCRSessionFactory.getInstance().getCurrentUserSession(Constants.EDIT_WORKSPACE);
+            if (!session.nodeExists(path) || !session.getNode(path).hasPermission(permission)) {
+                throw new DataFetchingException("Permission denied");
+            }
+        } catch (RepositoryException e) {
+            throw new DataFetchingException("Unable to check permission", e);
+        }
+    }
+}
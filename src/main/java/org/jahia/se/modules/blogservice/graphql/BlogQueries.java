@@ -5,10 +5,23 @@ import graphql.annotations.annotationTypes.GraphQLField;
 import graphql.annotations.annotationTypes.GraphQLName;
 import graphql.annotations.annotationTypes.GraphQLNonNull;
 import graphql.annotations.annotationTypes.GraphQLTypeExtension;
+import graphql.GraphQLContext;
+import graphql.schema.DataFetchingEnvironment;
+import org.jahia.modules.graphql.provider.dxm.DataFetchingException;
 import org.jahia.modules.graphql.provider.dxm.DXGraphQLProvider;
 import org.jahia.se.modules.blogservice.services.BlogCommentService;
+import org.jahia.se.modules.blogservice.services.BlogEngagementService;
+import org.jahia.se.modules.blogservice.services.BlogLikeService;
+import org.jahia.se.modules.blogservice.services.BlogMetrics;
 import org.jahia.se.modules.blogservice.services.BlogRatingService;
 import org.jahia.se.modules.blogservice.services.BlogServiceException;
+import org.jahia.se.modules.blogservice.services.BlogUgcPurgeService;
+import org.jahia.se.modules.blogservice.services.BlogTrendingService;
+import org.jahia.se.modules.blogservice.services.BlogWriteExecutor;
+import org.jahia.se.modules.blogservice.services.CommentPage;
+import org.jahia.se.modules.blogservice.services.CommentSortOrder;
+import org.jahia.se.modules.blogservice.services.EngagementStats;
+import org.jahia.se.modules.blogservice.services.ModerationPage;
 import org.osgi.service.component.annotations.Component;
 import org.osgi.service.component.annotations.Reference;
 import org.jahia.modules.graphql.provider.dxm.osgi.annotations.GraphQLOsgiService;
@@ -16,7 +29,12 @@ import javax.inject.Inject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 /**
@@ -26,6 +44,9 @@ public class BlogQueries {
 
     private static final Logger logger = LoggerFactory.getLogger(BlogQueries.class);
 
+    private static final int DEFAULT_TRENDING_LIMIT = 10;
+    private static final String ENGAGEMENT_CONTEXT_KEY = BlogQueries.class.getName() + ".engagement";
+
     @Inject
     @GraphQLOsgiService
     private BlogCommentService blogCommentService;
@@ -34,28 +55,54 @@ public class BlogQueries {
     @GraphQLOsgiService
     private BlogRatingService blogRatingService;
 
+    @Inject
+    @GraphQLOsgiService
+    private BlogEngagementService blogEngagementService;
+
+    @Inject
+    @GraphQLOsgiService
+    private BlogLikeService blogLikeService;
+
+    @Inject
+    @GraphQLOsgiService
+    private BlogUgcPurgeService blogUgcPurgeService;
+
+    @Inject
+    @GraphQLOsgiService
+    private BlogMetrics blogMetrics;
+
+    @Inject
+    @GraphQLOsgiService
+    private BlogWriteExecutor blogWriteExecutor;
+
+    @Inject
+    @GraphQLOsgiService
+    private BlogTrendingService blogTrendingService;
+
     /**
-     * Retrieve all comments for a blog post
+     * Retrieve one page of approved comments for a blog post
      * @param postId The blog post UUID
-     * @return Comments payload with list of comments and total count
+     * @param first Page size, defaults to {@link BlogCommentService#DEFAULT_PAGE_SIZE}
+     * @param after Cursor of the previous page
+     * @param order Ordering on the comment timestamp, newest first by default
+     * @return Comments payload with the page of comments, total count and next page cursor
      */
     @GraphQLField
     @GraphQLName("getComments")
-    public CommentsPayload getComments(@GraphQLName("postId") @GraphQLNonNull String postId) {
+    @GraphQLDescription("Retrieve a page of approved comments for a blog post, using the endCursor of the previous page as 'after'")
+    public CommentsPayload getComments(@GraphQLName("postId") @GraphQLNonNull String postId,
+                                       @GraphQLName("first") Integer first,
+                                       @GraphQLName("after") String after,
+                                       @GraphQLName("order") CommentSortOrder order) {
         try {
-            List<BlogCommentService.CommentData> commentDataList = blogCommentService.getComments(postId);
+            CommentPage page = blogCommentService.getComments(postId,
+                    first != null ? first : BlogCommentService.DEFAULT_PAGE_SIZE, after,
+                    order != null ? order : CommentSortOrder.NEWEST_FIRST);
             
-            List<Comment> comments = commentDataList.stream()
-                    .map(data -> new Comment(
-                            data.getUuid(),
-                            data.getAuthorName(),
-                            data.getBody(),
-                            data.getCreated(),
-                            data.getStatus()
-                    ))
-                    .collect(Collectors.toList());
+            List<Comment> comments = toComments(page.getComments());
 
-            return new CommentsPayload(postId, comments, comments.size());
+            return new CommentsPayload(postId, comments, (int) page.getTotalCount(), page.getEndCursor(),
+                    page.isHasNextPage());
         } catch (BlogServiceException e) {
             logger.error("Failed to retrieve comments for post={}", postId, e);
             throw new RuntimeException("Failed to retrieve comments", e);
@@ -78,4 +125,218 @@ public class BlogQueries {
             throw new RuntimeException("Failed to retrieve rating stats", e);
         }
     }
+
+    /**
+     * Retrieve one page of the moderation queue of a site, newest comments first
+     * @param siteKey The site key
+     * @param status Status of the comments to return (pending, approved, rejected), all statuses when omitted
+     * @param first Page size, defaults to {@link BlogCommentService#DEFAULT_PAGE_SIZE}
+     * @param after Cursor of the previous page
+     * @param language Language of the post titles
+     * @return Comments of the page grouped by post, with the per-status counts of the site
+     */
+    @GraphQLField
+    @GraphQLName("moderationQueue")
+    @GraphQLDescription("Retrieve a page of comments of a site for moderation, grouped by blog post, with per-status counts")
+    public ModerationQueuePayload getModerationQueue(@GraphQLName("siteKey") @GraphQLNonNull String siteKey,
+                                                     @GraphQLName("status") String status,
+                                                     @GraphQLName("first") Integer first,
+                                                     @GraphQLName("after") String after,
+                                                     @GraphQLName("language") String language) {
+        // The moderation queue exposes unpublished comments
+        BlogPermissions.checkSitePermission(siteKey);
+        try {
+            ModerationPage page = blogCommentService.getModerationQueue(siteKey,
+                    "all".equals(status) ? null : status,
+                    first != null ? first : BlogCommentService.DEFAULT_PAGE_SIZE, after,
+                    language != null ? Locale.forLanguageTag(language) : null);
+            List<ModerationPostPayload> posts = page.getPosts().stream()
+                    .map(post -> new ModerationPostPayload(post.getBlogPostId(), post.getPostTitle(),
+                            toComments(post.getComments())))
+                    .collect(Collectors.toList());
+            return new ModerationQueuePayload(posts, page.getPendingCount(), page.getApprovedCount(),
+                    page.getRejectedCount(), page.getEndCursor(), page.isHasNextPage());
+        } catch (BlogServiceException e) {
+            logger.error("Failed to retrieve moderation queue for site={}", siteKey, e);
+            throw new DataFetchingException("Failed to retrieve moderation queue: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Retrieve the number of likes of a blog post
+     * @param postId The blog post UUID
+     * @return Likes payload with the like count
+     */
+    @GraphQLField
+    @GraphQLName("getLikes")
+    @GraphQLDescription("Retrieve the number of likes of a blog post")
+    public LikesPayload getLikes(@GraphQLName("postId") @GraphQLNonNull String postId) {
+        try {
+            return new LikesPayload(postId, blogLikeService.getLikeCount(postId));
+        } catch (BlogServiceException e) {
+            logger.error("Failed to retrieve like count for post={}", postId, e);
+            throw new RuntimeException("Failed to retrieve like count", e);
+        }
+    }
+
+    /**
+     * Statistics of the cache of approved comment pages
+     * @return Hit, miss and eviction counts of the cache
+     */
+    @GraphQLField
+    @GraphQLName("commentCacheStats")
+    @GraphQLDescription("Hit, miss and eviction statistics of the approved comments cache")
+    public CacheStatsPayload getCommentCacheStats() {
+        BlogPermissions.checkServerPermission();
+        return new CacheStatsPayload(blogCommentService.getCommentCacheStats());
+    }
+
+    /**
+     * Statistics of the per-post filters that short-circuit the like and rating duplicate checks
+     * @return One entry for likes and one for ratings
+     */
+    @GraphQLField
+    @GraphQLName("dedupFilterStats")
+    @GraphQLDescription("Memory use and false-positive rates of the like and rating dedup filters")
+    public List<DedupFilterStatsPayload> getDedupFilterStats() {
+        BlogPermissions.checkServerPermission();
+        List<DedupFilterStatsPayload> stats = new ArrayList<>();
+        stats.add(new DedupFilterStatsPayload(blogLikeService.getDedupFilterStats()));
+        stats.add(new DedupFilterStatsPayload(blogRatingService.getDedupFilterStats()));
+        return stats;
+    }
+
+    /**
+     * Retrieve the trending posts of a site from the in-memory ranking
+     * @param siteKey The site key
+     * @param limit The maximum number of posts, 10 by default
+     * @return The posts by decreasing score
+     */
+    @GraphQLField
+    @GraphQLName("trending")
+    @GraphQLDescription("Posts of a site ranked by their recent likes, ratings and comments, most trending first")
+    public List<TrendingPostPayload> getTrending(@GraphQLName("siteKey") @GraphQLNonNull String siteKey,
+                                                 @GraphQLName("limit") Integer limit) {
+        return blogTrendingService.getTrending(siteKey, limit != null ? limit : DEFAULT_TRENDING_LIMIT).stream()
+                .map(TrendingPostPayload::new)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * State of the executor running the comment, like and rating writes
+     * @return Queue depth, running writes and rejection counts
+     */
+    @GraphQLField
+    @GraphQLName("writeExecutorStats")
+    @GraphQLDescription("Queue depth, running writes and rejection counts of the blog write executor")
+    public WriteExecutorStatsPayload getWriteExecutorStats() {
+        BlogPermissions.checkServerPermission();
+        return new WriteExecutorStatsPayload(blogWriteExecutor.getStats());
+    }
+
+    /**
+     * Retrieve the call counts and latency percentiles of the blog service operations
+     * @return One entry per operation called since the module started or the metrics were reset
+     */
+    @GraphQLField
+    @GraphQLName("metrics")
+    @GraphQLDescription("Call counts per result code and latency percentiles of the blog service operations and their repository saves")
+    public List<OperationMetricsPayload> getMetrics() {
+        BlogPermissions.checkServerPermission();
+        return blogMetrics.getOperations().stream()
+                .map(OperationMetricsPayload::new)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Retrieve the progress of the UGC purge job
+     * @return Status and counts of the running or last purge
+     */
+    @GraphQLField
+    @GraphQLName("ugcPurgeStatus")
+    @GraphQLDescription("Progress and counts of the running or last purge of rejected comments, expired likes and orphaned UGC folders")
+    public PurgeStatusPayload getUgcPurgeStatus() {
+        // The report covers every site, so it is reserved to server administrators
+        BlogPermissions.checkServerPermission();
+        return new PurgeStatusPayload(blogUgcPurgeService.isRunning(), blogUgcPurgeService.getReport());
+    }
+
+    /**
+     * Retrieve the engagement aggregates of several blog posts in one call, for listing pages
+     * @param postIds The blog post UUIDs, at most {@link BlogEngagementService#MAX_POSTS}
+     * @return One entry per existing post, in request order
+     */
+    @GraphQLField
+    @GraphQLName("engagement")
+    @GraphQLDescription("Rating, like and approved comment aggregates of several blog posts, read in a single pass")
+    public List<EngagementPayload> getEngagement(@GraphQLName("postIds") @GraphQLNonNull List<String> postIds,
+                                                 DataFetchingEnvironment environment) {
+        // Aggregates already loaded by another engagement field of the same GraphQL request are reused
+        Map<String, EngagementStats> loaded = getEngagementMemo(environment);
+        List<String> missing = new ArrayList<>();
+        for (String postId : postIds) {
+            if (!loaded.containsKey(postId)) {
+                missing.add(postId);
+            }
+        }
+        if (!missing.isEmpty()) {
+            try {
+                Map<String, EngagementStats> stats = blogEngagementService.getEngagement(missing);
+                for (String postId : missing) {
+                    loaded.put(postId, stats.get(postId));
+                }
+            } catch (BlogServiceException e) {
+                logger.error("Failed to retrieve engagement for {} posts", missing.size(), e);
+                throw new DataFetchingException("Failed to retrieve engagement: " + e.getMessage(), e);
+            }
+        }
+
+        List<EngagementPayload> result = new ArrayList<>(postIds.size());
+        for (String postId : postIds) {
+            EngagementStats stats = loaded.get(postId);
+            if (stats != null) {
+                result.add(new EngagementPayload(stats));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Retrieve the engagement summary of a blog post, for post pages
+     * @param postId The blog post UUID
+     * @return The aggregates of the post, or null if it does not exist
+     */
+    @GraphQLField
+    @GraphQLName("summary")
+    @GraphQLDescription("Rating, like, approved and pending comment aggregates of a blog post, read from its maintained counters in one pass")
+    public EngagementPayload getSummary(@GraphQLName("postId") @GraphQLNonNull String postId,
+                                        DataFetchingEnvironment environment) {
+        List<EngagementPayload> engagement = getEngagement(Collections.singletonList(postId), environment);
+        return engagement.isEmpty() ? null : engagement.get(0);
+    }
+
+    private static List<Comment> toComments(List<BlogCommentService.CommentData> comments) {
+        return comments.stream()
+                .map(data -> new Comment(
+                        data.getUuid(),
+                        data.getAuthorName(),
+                        data.getBody(),
+                        data.getCreated(),
+                        data.getStatus()
+                ))
+                .collect(Collectors.toList());
+    }
+
+    private static Map<String, EngagementStats> getEngagementMemo(DataFetchingEnvironment environment) {
+        GraphQLContext context = environment.getGraphQlContext();
+        if (context == null) {
+            return new HashMap<>();
+        }
+        Map<String, EngagementStats> memo = context.get(ENGAGEMENT_CONTEXT_KEY);
+        if (memo == null) {
+            memo = new HashMap<>();
+            context.put(ENGAGEMENT_CONTEXT_KEY, memo);
+        }
+        return memo;
+    }
 }
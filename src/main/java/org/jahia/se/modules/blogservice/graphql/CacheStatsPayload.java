@@ -0,0 +1,56 @@
+package org.jahia.se.modules.blogservice.graphql;
+
+import graphql.annotations.annotationTypes.GraphQLDescription;
+import graphql.annotations.annotationTypes.GraphQLField;
+import graphql.annotations.annotationTypes.GraphQLName;
+import org.jahia.se.modules.blogservice.util.CacheStats;
+
+/**
+ * GraphQL payload exposing the statistics of an in-process blog cache
+ */
+@GraphQLName("BlogCacheStats")
+@GraphQLDescription("Statistics of an in-process blog service cache")
+public class CacheStatsPayload {
+    private final CacheStats stats;
+
+    public CacheStatsPayload(CacheStats stats) {
+        this.stats = stats;
+    }
+
+    @GraphQLField
+    public long getHits() {
+        return stats.getHits();
+    }
+
+    @GraphQLField
+    public long getMisses() {
+        return stats.getMisses();
+    }
+
+    @GraphQLField
+    public long getEvictions() {
+        return stats.getEvictions();
+    }
+
+    @GraphQLField
+    public int getSize() {
+        return stats.getSize();
+    }
+
+    @GraphQLField
+    @GraphQLDescription("Estimated size of the cached values, in bytes")
+    public long getWeight() {
+        return stats.getWeight();
+    }
+
+    @GraphQLField
+    @GraphQLDescription("Configured maximum size of the cached values, in bytes")
+    public long getMaxWeight() {
+        return stats.getMaxWeight();
+    }
+
+    @GraphQLField
+    public double getHitRatio() {
+        return stats.getHitRatio();
+    }
+}
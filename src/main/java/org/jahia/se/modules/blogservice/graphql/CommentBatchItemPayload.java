@@ -0,0 +1,40 @@
+package org.jahia.se.modules.blogservice.graphql;
+
+import graphql.annotations.annotationTypes.GraphQLDescription;
+import graphql.annotations.annotationTypes.GraphQLField;
+import graphql.annotations.annotationTypes.GraphQLName;
+import org.jahia.se.modules.blogservice.services.CommentBatchResult;
+
+@GraphQLName("CommentBatchItemPayload")
+@GraphQLDescription("Outcome of a bulk moderation operation for one comment")
+public class CommentBatchItemPayload {
+    private final String commentId;
+    private final boolean success;
+    private final String code;
+
+    public CommentBatchItemPayload(CommentBatchResult result) {
+        this.commentId = result.getCommentId();
+        this.success = result.isSuccess();
+        this.code = result.getCode();
+    }
+
+    @GraphQLField
+    @GraphQLName("commentId")
+    public String getCommentId() {
+        return commentId;
+    }
+
+    @GraphQLField
+    @GraphQLName("success")
+    @GraphQLDescription("Whether the operation was successful for this comment")
+    public boolean isSuccess() {
+        return success;
+    }
+
+    @GraphQLField
+    @GraphQLName("code")
+    @GraphQLDescription("OK, NOT_FOUND or ERROR")
+    public String getCode() {
+        return code;
+    }
+}
@@ -13,11 +13,15 @@ public class CommentsPayload {
     private final String postId;
     private final List<Comment> comments;
     private final int total;
+    private final String endCursor;
+    private final boolean hasNextPage;
 
-    public CommentsPayload(String postId, List<Comment> comments, int total) {
+    public CommentsPayload(String postId, List<Comment> comments, int total, String endCursor, boolean hasNextPage) {
         this.postId = postId;
         this.comments = comments;
         this.total = total;
+        this.endCursor = endCursor;
+        this.hasNextPage = hasNextPage;
     }
 
     @GraphQLField
@@ -34,4 +38,14 @@ public class CommentsPayload {
     public int getTotal() {
         return total;
     }
+
+    @GraphQLField
+    public String getEndCursor() {
+        return endCursor;
+    }
+
+    @GraphQLField
+    public boolean isHasNextPage() {
+        return hasNextPage;
+    }
 }
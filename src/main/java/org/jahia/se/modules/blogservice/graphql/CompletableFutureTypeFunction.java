@@ -0,0 +1,51 @@
+package org.jahia.se.modules.blogservice.graphql;
+
+import graphql.annotations.processor.ProcessingElementsContainer;
+import graphql.annotations.processor.typeFunctions.TypeFunction;
+import graphql.schema.GraphQLType;
+import org.osgi.service.component.annotations.Component;
+
+import java.lang.reflect.AnnotatedParameterizedType;
+import java.lang.reflect.AnnotatedType;
+import java.lang.reflect.ParameterizedType;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Maps a {@code CompletableFuture<T>} field to the GraphQL type of {@code T}. The execution strategy waits for
+ * the future, so asynchronous resolvers expose the same schema as synchronous ones.
+ */
+@Component(service = TypeFunction.class, immediate = true)
+public class CompletableFutureTypeFunction implements TypeFunction {
+
+    /**
+     * No type name of its own: the type is the one of the value of the future
+     */
+    public String getTypeName(Class<?> aClass, AnnotatedType annotatedType) {
+        return null;
+    }
+
+    @Override
+    public boolean canBuildType(Class<?> aClass, AnnotatedType annotatedType) {
+        return CompletableFuture.class.isAssignableFrom(aClass);
+    }
+
+    @Override
+    public GraphQLType buildType(boolean input, Class<?> aClass, AnnotatedType annotatedType,
+                                 ProcessingElementsContainer container) {
+        AnnotatedType argument = argument(annotatedType);
+        if (argument == null) {
+            throw new IllegalArgumentException("CompletableFuture type parameter should be specified");
+        }
+        Class<?> klass = argument.getType() instanceof ParameterizedType
+                ? (Class<?>) ((ParameterizedType) argument.getType()).getRawType()
+                : (Class<?>) argument.getType();
+        return container.getDefaultTypeFunction().buildType(input, klass, argument, container);
+    }
+
+    private static AnnotatedType argument(AnnotatedType annotatedType) {
+        if (!(annotatedType instanceof AnnotatedParameterizedType)) {
+            return null;
+        }
+        return ((AnnotatedParameterizedType) annotatedType).getAnnotatedActualTypeArguments()[0];
+    }
+}
@@ -0,0 +1,85 @@
+package org.jahia.se.modules.blogservice.graphql;
+
+import graphql.annotations.annotationTypes.GraphQLDescription;
+import graphql.annotations.annotationTypes.GraphQLField;
+import graphql.annotations.annotationTypes.GraphQLName;
+import org.jahia.se.modules.blogservice.services.DedupFilterStats;
+
+/**
+ * GraphQL payload exposing the statistics of the per-post duplicate filters of likes or ratings
+ */
+@GraphQLName("BlogDedupFilterStats")
+@GraphQLDescription("Memory use and effectiveness of the per-post Bloom filters that short-circuit duplicate checks")
+public class DedupFilterStatsPayload {
+    private final DedupFilterStats stats;
+
+    public DedupFilterStatsPayload(DedupFilterStats stats) {
+        this.stats = stats;
+    }
+
+    @GraphQLField
+    @GraphQLDescription("likes or ratings")
+    public String getName() {
+        return stats.getName();
+    }
+
+    @GraphQLField
+    @GraphQLDescription("Number of posts with a filter in memory")
+    public int getFilters() {
+        return stats.getFilters();
+    }
+
+    @GraphQLField
+    @GraphQLDescription("Memory used by the filters, in bytes")
+    public long getSizeBytes() {
+        return stats.getSizeBytes();
+    }
+
+    @GraphQLField
+    @GraphQLDescription("Configured maximum memory of the filters, in bytes")
+    public long getMaxSizeBytes() {
+        return stats.getMaxSizeBytes();
+    }
+
+    @GraphQLField
+    @GraphQLDescription("Number of submissions checked against a filter")
+    public long getChecks() {
+        return stats.getChecks();
+    }
+
+    @GraphQLField
+    @GraphQLDescription("Number of submissions for which the repository lookup was skipped")
+    public long getLookupsSkipped() {
+        return stats.getLookupsSkipped();
+    }
+
+    @GraphQLField
+    @GraphQLDescription("Number of new submissions that the filter could not tell apart from a duplicate")
+    public long getFalsePositives() {
+        return stats.getFalsePositives();
+    }
+
+    @GraphQLField
+    @GraphQLDescription("Observed share of new submissions that still required a repository lookup")
+    public double getFalsePositiveRate() {
+        return stats.getFalsePositiveRate();
+    }
+
+    @GraphQLField
+    @GraphQLDescription("False-positive rate expected from the current fill of the filters, averaged over the filters")
+    public double getExpectedFalsePositiveRate() {
+        return stats.getExpectedFalsePositiveRate();
+    }
+
+    @GraphQLField
+    @GraphQLDescription("Number of checks that fell back to the repository because the filter was out of date")
+    public long getStaleChecks() {
+        return stats.getStaleChecks();
+    }
+
+    @GraphQLField
+    @GraphQLDescription("Number of filters built from the repository")
+    public long getRebuilds() {
+        return stats.getRebuilds();
+    }
+}
@@ -0,0 +1,51 @@
+package org.jahia.se.modules.blogservice.graphql;
+
+import graphql.annotations.annotationTypes.GraphQLDescription;
+import graphql.annotations.annotationTypes.GraphQLField;
+import graphql.annotations.annotationTypes.GraphQLName;
+import org.jahia.se.modules.blogservice.services.EngagementStats;
+
+/**
+ * GraphQL payload with the engagement aggregates of a blog post
+ */
+@GraphQLName("BlogEngagement")
+@GraphQLDescription("Rating, like and comment aggregates of a blog post")
+public class EngagementPayload {
+    private final EngagementStats stats;
+
+    public EngagementPayload(EngagementStats stats) {
+        this.stats = stats;
+    }
+
+    @GraphQLField
+    public String getPostId() {
+        return stats.getBlogPostId();
+    }
+
+    @GraphQLField
+    public double getAverageRating() {
+        return stats.getAverageRating();
+    }
+
+    @GraphQLField
+    public int getRatingCount() {
+        return stats.getRatingCount();
+    }
+
+    @GraphQLField
+    public long getLikeCount() {
+        return stats.getLikeCount();
+    }
+
+    @GraphQLField
+    @GraphQLDescription("Number of approved comments")
+    public long getCommentCount() {
+        return stats.getApprovedCommentCount();
+    }
+
+    @GraphQLField
+    @GraphQLDescription("Number of comments awaiting moderation")
+    public long getPendingCommentCount() {
+        return stats.getPendingCommentCount();
+    }
+}
@@ -0,0 +1,52 @@
+package org.jahia.se.modules.blogservice.graphql;
+
+import graphql.annotations.annotationTypes.GraphQLDescription;
+import graphql.annotations.annotationTypes.GraphQLField;
+import graphql.annotations.annotationTypes.GraphQLName;
+import graphql.annotations.annotationTypes.GraphQLNonNull;
+import org.jahia.se.modules.blogservice.services.EngagementResult;
+
+/**
+ * GraphQL payload of a combined like, rating and comment submission
+ */
+@GraphQLName("BlogEngagementSubmission")
+@GraphQLDescription("Outcome of a combined engagement submission, with one result per submitted part")
+public class EngagementSubmissionPayload {
+
+    private final EngagementResult result;
+
+    public EngagementSubmissionPayload(EngagementResult result) {
+        this.result = result;
+    }
+
+    @GraphQLField
+    @GraphQLNonNull
+    public String getPostId() {
+        return result.getBlogPostId();
+    }
+
+    @GraphQLField
+    @GraphQLNonNull
+    @GraphQLDescription("True if every submitted part was persisted")
+    public boolean isSuccess() {
+        return result.isSuccess();
+    }
+
+    @GraphQLField
+    @GraphQLDescription("Result of the like, null if no like was submitted")
+    public LikePayload getLike() {
+        return result.getLike() != null ? new LikePayload(result.getLike()) : null;
+    }
+
+    @GraphQLField
+    @GraphQLDescription("Result of the rating, null if no rating was submitted")
+    public RatingPayload getRating() {
+        return result.getRating() != null ? new RatingPayload(result.getRating()) : null;
+    }
+
+    @GraphQLField
+    @GraphQLDescription("Result of the comment, null if no comment was submitted")
+    public CommentPayload getComment() {
+        return result.getComment() != null ? new CommentPayload(result.getComment()) : null;
+    }
+}
@@ -1,5 +1,6 @@
 package org.jahia.se.modules.blogservice.graphql;
 
+import graphql.annotations.annotationTypes.GraphQLDescription;
 import graphql.annotations.annotationTypes.GraphQLField;
 import graphql.annotations.annotationTypes.GraphQLName;
 import graphql.annotations.annotationTypes.GraphQLNonNull;
@@ -10,14 +11,20 @@ public class LikePayload {
 
     private final boolean success;
     private final String code;
+    private final Long likeCount;
 
     public LikePayload(boolean success, String code) {
+        this(success, code, null);
+    }
+
+    public LikePayload(boolean success, String code, Long likeCount) {
         this.success = success;
         this.code = code;
+        this.likeCount = likeCount;
     }
 
     public LikePayload(LikeResult result) {
-        this(result.isSuccess(), result.getCode());
+        this(result.isSuccess(), result.getCode(), result.getLikeCount());
     }
 
     @GraphQLField
@@ -31,4 +38,10 @@ public class LikePayload {
     public String getCode() {
         return code;
     }
+
+    @GraphQLField
+    @GraphQLDescription("Number of likes of the post, null when the like was only queued")
+    public Long getLikeCount() {
+        return likeCount;
+    }
 }
@@ -0,0 +1,28 @@
+package org.jahia.se.modules.blogservice.graphql;
+
+import graphql.annotations.annotationTypes.GraphQLField;
+import graphql.annotations.annotationTypes.GraphQLName;
+
+/**
+ * GraphQL payload for like count operations
+ */
+@GraphQLName("BlogLikesPayload")
+public class LikesPayload {
+    private final String postId;
+    private final long likeCount;
+
+    public LikesPayload(String postId, long likeCount) {
+        this.postId = postId;
+        this.likeCount = likeCount;
+    }
+
+    @GraphQLField
+    public String getPostId() {
+        return postId;
+    }
+
+    @GraphQLField
+    public long getLikeCount() {
+        return likeCount;
+    }
+}
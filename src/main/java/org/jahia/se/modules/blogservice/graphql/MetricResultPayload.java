@@ -0,0 +1,30 @@
+package org.jahia.se.modules.blogservice.graphql;
+
+import graphql.annotations.annotationTypes.GraphQLDescription;
+import graphql.annotations.annotationTypes.GraphQLField;
+import graphql.annotations.annotationTypes.GraphQLName;
+
+/**
+ * GraphQL payload exposing the number of calls of an operation that ended with a result code
+ */
+@GraphQLName("BlogMetricResult")
+@GraphQLDescription("Number of calls of an operation that ended with a given result code")
+public class MetricResultPayload {
+    private final String code;
+    private final long count;
+
+    public MetricResultPayload(String code, long count) {
+        this.code = code;
+        this.count = count;
+    }
+
+    @GraphQLField
+    public String getCode() {
+        return code;
+    }
+
+    @GraphQLField
+    public long getCount() {
+        return count;
+    }
+}
@@ -0,0 +1,39 @@
+package org.jahia.se.modules.blogservice.graphql;
+
+import graphql.annotations.annotationTypes.GraphQLDescription;
+import graphql.annotations.annotationTypes.GraphQLField;
+import graphql.annotations.annotationTypes.GraphQLName;
+
+import java.util.List;
+
+/**
+ * GraphQL representation of the comments of one blog post in a moderation queue page
+ */
+@GraphQLName("BlogModerationPost")
+public class ModerationPostPayload {
+    private final String postId;
+    private final String postTitle;
+    private final List<Comment> comments;
+
+    public ModerationPostPayload(String postId, String postTitle, List<Comment> comments) {
+        this.postId = postId;
+        this.postTitle = postTitle;
+        this.comments = comments;
+    }
+
+    @GraphQLField
+    public String getPostId() {
+        return postId;
+    }
+
+    @GraphQLField
+    @GraphQLDescription("Display name of the post, null if the post no longer exists")
+    public String getPostTitle() {
+        return postTitle;
+    }
+
+    @GraphQLField
+    public List<Comment> getComments() {
+        return comments;
+    }
+}
@@ -0,0 +1,70 @@
+package org.jahia.se.modules.blogservice.graphql;
+
+import graphql.annotations.annotationTypes.GraphQLDescription;
+import graphql.annotations.annotationTypes.GraphQLField;
+import graphql.annotations.annotationTypes.GraphQLName;
+
+import java.util.List;
+
+/**
+ * GraphQL payload for the moderationQueue query
+ */
+@GraphQLName("BlogModerationQueuePayload")
+public class ModerationQueuePayload {
+    private final List<ModerationPostPayload> posts;
+    private final long pendingCount;
+    private final long approvedCount;
+    private final long rejectedCount;
+    private final String endCursor;
+    private final boolean hasNextPage;
+
+    public ModerationQueuePayload(List<ModerationPostPayload> posts, long pendingCount, long approvedCount,
+                                  long rejectedCount, String endCursor, boolean hasNextPage) {
+        this.posts = posts;
+        this.pendingCount = pendingCount;
+        this.approvedCount = approvedCount;
+        this.rejectedCount = rejectedCount;
+        this.endCursor = endCursor;
+        this.hasNextPage = hasNextPage;
+    }
+
+    @GraphQLField
+    @GraphQLDescription("Comments of the page, grouped by blog post")
+    public List<ModerationPostPayload> getPosts() {
+        return posts;
+    }
+
+    @GraphQLField
+    @GraphQLDescription("Number of pending comments of the site")
+    public long getPendingCount() {
+        return pendingCount;
+    }
+
+    @GraphQLField
+    @GraphQLDescription("Number of approved comments of the site")
+    public long getApprovedCount() {
+        return approvedCount;
+    }
+
+    @GraphQLField
+    @GraphQLDescription("Number of rejected comments of the site")
+    public long getRejectedCount() {
+        return rejectedCount;
+    }
+
+    @GraphQLField
+    @GraphQLDescription("Number of comments of the site, all statuses included")
+    public long getTotalCount() {
+        return pendingCount + approvedCount + rejectedCount;
+    }
+
+    @GraphQLField
+    public String getEndCursor() {
+        return endCursor;
+    }
+
+    @GraphQLField
+    public boolean isHasNextPage() {
+        return hasNextPage;
+    }
+}
@@ -0,0 +1,65 @@
+package org.jahia.se.modules.blogservice.graphql;
+
+import graphql.annotations.annotationTypes.GraphQLDescription;
+import graphql.annotations.annotationTypes.GraphQLField;
+import graphql.annotations.annotationTypes.GraphQLName;
+import org.jahia.se.modules.blogservice.services.OperationStats;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * GraphQL payload exposing the call counts and latency percentiles of a blog service operation
+ */
+@GraphQLName("BlogOperationMetrics")
+@GraphQLDescription("Call counts per result code and latency percentiles of a blog service operation, in microseconds")
+public class OperationMetricsPayload {
+    private final OperationStats stats;
+
+    public OperationMetricsPayload(OperationStats stats) {
+        this.stats = stats;
+    }
+
+    @GraphQLField
+    @GraphQLDescription("Operation name, for instance comment.submit, or comment.submit.save for its repository save")
+    public String getOperation() {
+        return stats.getOperation();
+    }
+
+    @GraphQLField
+    public long getCount() {
+        return stats.getCount();
+    }
+
+    @GraphQLField
+    public double getMeanMicros() {
+        return stats.getMeanMicros();
+    }
+
+    @GraphQLField
+    public long getP50Micros() {
+        return stats.getP50Micros();
+    }
+
+    @GraphQLField
+    public long getP90Micros() {
+        return stats.getP90Micros();
+    }
+
+    @GraphQLField
+    public long getP99Micros() {
+        return stats.getP99Micros();
+    }
+
+    @GraphQLField
+    public long getMaxMicros() {
+        return stats.getMaxMicros();
+    }
+
+    @GraphQLField
+    public List<MetricResultPayload> getResults() {
+        return stats.getResults().entrySet().stream()
+                .map(entry -> new MetricResultPayload(entry.getKey(), entry.getValue()))
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,71 @@
+package org.jahia.se.modules.blogservice.graphql;
+
+import graphql.annotations.annotationTypes.GraphQLDescription;
+import graphql.annotations.annotationTypes.GraphQLField;
+import graphql.annotations.annotationTypes.GraphQLName;
+import org.jahia.se.modules.blogservice.services.UgcPurgeReport;
+
+import java.time.Instant;
+
+/**
+ * GraphQL payload exposing the progress of the UGC purge job
+ */
+@GraphQLName("BlogUgcPurgeStatus")
+@GraphQLDescription("Progress and counts of the running or last UGC purge")
+public class PurgeStatusPayload {
+    private final boolean running;
+    private final UgcPurgeReport report;
+
+    public PurgeStatusPayload(boolean running, UgcPurgeReport report) {
+        this.running = running;
+        this.report = report;
+    }
+
+    @GraphQLField
+    public boolean isRunning() {
+        return running;
+    }
+
+    @GraphQLField
+    @GraphQLDescription("Start of the purge, as an ISO-8601 instant. Null if no purge ran since the module started")
+    public String getStartedAt() {
+        return report != null ? Instant.ofEpochMilli(report.getStartedAt()).toString() : null;
+    }
+
+    @GraphQLField
+    @GraphQLDescription("End of the purge, as an ISO-8601 instant. Null while it is running")
+    public String getFinishedAt() {
+        return report != null && report.isFinished() ? Instant.ofEpochMilli(report.getFinishedAt()).toString() : null;
+    }
+
+    @GraphQLField
+    public String getCurrentSite() {
+        return report != null ? report.getCurrentSite() : null;
+    }
+
+    @GraphQLField
+    public long getPostFoldersScanned() {
+        return report != null ? report.getPostFoldersScanned() : 0;
+    }
+
+    @GraphQLField
+    public long getRejectedCommentsDeleted() {
+        return report != null ? report.getRejectedCommentsDeleted() : 0;
+    }
+
+    @GraphQLField
+    public long getLikesDeleted() {
+        return report != null ? report.getLikesDeleted() : 0;
+    }
+
+    @GraphQLField
+    public long getOrphanedFoldersDeleted() {
+        return report != null ? report.getOrphanedFoldersDeleted() : 0;
+    }
+
+    @GraphQLField
+    @GraphQLDescription("Number of batches discarded because of a concurrent change; their nodes are purged by the next pass")
+    public long getSaveConflicts() {
+        return report != null ? report.getSaveConflicts() : 0;
+    }
+}
@@ -1,7 +1,9 @@
 package org.jahia.se.modules.blogservice.graphql;
 
+import graphql.annotations.annotationTypes.GraphQLDescription;
 import graphql.annotations.annotationTypes.GraphQLField;
 import graphql.annotations.annotationTypes.GraphQLName;
+import org.jahia.se.modules.blogservice.services.RatingResult;
 
 /**
  * GraphQL payload for rating operations
@@ -11,11 +13,21 @@ public class RatingPayload {
     private final String postId;
     private final double averageRating;
     private final int ratingCount;
+    private final String code;
 
     public RatingPayload(String postId, double averageRating, int ratingCount) {
+        this(postId, averageRating, ratingCount, null);
+    }
+
+    public RatingPayload(String postId, double averageRating, int ratingCount, String code) {
         this.postId = postId;
         this.averageRating = averageRating;
         this.ratingCount = ratingCount;
+        this.code = code;
+    }
+
+    public RatingPayload(RatingResult result) {
+        this(result.getBlogPostId(), result.getAverageRating(), result.getRatingCount(), result.getCode());
     }
 
     @GraphQLField
@@ -32,4 +44,10 @@ public class RatingPayload {
     public int getRatingCount() {
         return ratingCount;
     }
+
+    @GraphQLField
+    @GraphQLDescription("OK for a first vote, UPDATED when the vote of the client was changed; null when no vote was submitted")
+    public String getCode() {
+        return code;
+    }
 }
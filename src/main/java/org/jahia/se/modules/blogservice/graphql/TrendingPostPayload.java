@@ -0,0 +1,30 @@
+package org.jahia.se.modules.blogservice.graphql;
+
+import graphql.annotations.annotationTypes.GraphQLDescription;
+import graphql.annotations.annotationTypes.GraphQLField;
+import graphql.annotations.annotationTypes.GraphQLName;
+import org.jahia.se.modules.blogservice.services.TrendingPost;
+
+/**
+ * GraphQL payload of a trending blog post
+ */
+@GraphQLName("BlogTrendingPost")
+@GraphQLDescription("A trending blog post with its time-decayed engagement score")
+public class TrendingPostPayload {
+    private final TrendingPost post;
+
+    public TrendingPostPayload(TrendingPost post) {
+        this.post = post;
+    }
+
+    @GraphQLField
+    public String getPostId() {
+        return post.getBlogPostId();
+    }
+
+    @GraphQLField
+    @GraphQLDescription("Weighted sum of the likes, first ratings and comments of the post, each halved for every half-life elapsed since")
+    public double getScore() {
+        return post.getScore();
+    }
+}
@@ -0,0 +1,70 @@
+package org.jahia.se.modules.blogservice.graphql;
+
+import graphql.annotations.annotationTypes.GraphQLDescription;
+import graphql.annotations.annotationTypes.GraphQLField;
+import graphql.annotations.annotationTypes.GraphQLName;
+import org.jahia.se.modules.blogservice.services.WriteExecutorStats;
+
+/**
+ * GraphQL payload exposing the state of the executor running the blog writes
+ */
+@GraphQLName("BlogWriteExecutorStats")
+@GraphQLDescription("Queue depth and counters of the executor running the comment, like and rating writes")
+public class WriteExecutorStatsPayload {
+    private final WriteExecutorStats stats;
+
+    public WriteExecutorStatsPayload(WriteExecutorStats stats) {
+        this.stats = stats;
+    }
+
+    @GraphQLField
+    @GraphQLDescription("VIRTUAL, PLATFORM, or DIRECT when writes run on the request thread")
+    public String getMode() {
+        return stats.getMode();
+    }
+
+    @GraphQLField
+    @GraphQLDescription("Maximum number of writes running at once")
+    public int getThreads() {
+        return stats.getThreads();
+    }
+
+    @GraphQLField
+    @GraphQLDescription("Maximum number of writes waiting for their turn")
+    public int getQueueCapacity() {
+        return stats.getQueueCapacity();
+    }
+
+    @GraphQLField
+    @GraphQLDescription("Number of writes currently waiting")
+    public int getQueued() {
+        return stats.getQueued();
+    }
+
+    @GraphQLField
+    @GraphQLDescription("Number of writes currently running")
+    public int getActive() {
+        return stats.getActive();
+    }
+
+    @GraphQLField
+    public long getSubmitted() {
+        return stats.getSubmitted();
+    }
+
+    @GraphQLField
+    @GraphQLDescription("Number of writes refused because the queue was full")
+    public long getRejected() {
+        return stats.getRejected();
+    }
+
+    @GraphQLField
+    public long getCompleted() {
+        return stats.getCompleted();
+    }
+
+    @GraphQLField
+    public long getFailed() {
+        return stats.getFailed();
+    }
+}
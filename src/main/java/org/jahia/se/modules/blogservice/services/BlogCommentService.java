@@ -6,21 +6,35 @@ import org.jahia.services.content.JCRCallback;
 import org.jahia.services.content.JCRNodeWrapper;
 import org.jahia.services.content.JCRSessionWrapper;
 import org.jahia.services.content.JCRTemplate;
-import org.jahia.services.content.decorator.JCRSiteNode;
+import org.jahia.se.modules.blogservice.util.CacheStats;
+import org.jahia.se.modules.blogservice.util.WeightedLruCache;
 import org.osgi.service.component.annotations.Component;
 import org.osgi.service.component.annotations.Reference;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.jcr.ItemNotFoundException;
-import javax.jcr.Node;
 import javax.jcr.NodeIterator;
 import javax.jcr.PathNotFoundException;
 import javax.jcr.RepositoryException;
+import javax.jcr.query.Query;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Base64;
 import java.util.Calendar;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.UUID;
 
 /**
@@ -31,51 +45,79 @@ public class BlogCommentService {
 
     private static final Logger logger = LoggerFactory.getLogger(BlogCommentService.class);
 
+    public static final int DEFAULT_PAGE_SIZE = 20;
+    public static final int MAX_PAGE_SIZE = 100;
+    public static final int MAX_BATCH_IDS = 1000;
+
+    private static final DateTimeFormatter JCR_DATE_FORMAT =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSSXXX").withZone(ZoneOffset.UTC);
+
     @Reference
     private BlogConfigurationService configurationService;
 
+    @Reference
+    private BlogPostResolver postResolver;
+
+    @Reference
+    private BlogMetrics metrics;
+
+    @Reference
+    private BlogTrendingService trendingService;
+
+    private final WeightedLruCache<CommentPageKey, CommentPage> commentCache =
+            new WeightedLruCache<>(0, 0, BlogCommentService::estimateSize);
+
     public CommentResult submit(CommentRequest request) throws BlogServiceException {
+        long start = metrics.start();
+        String resultCode = BlogMetrics.RESULT_ERROR;
         try {
             if (logger.isInfoEnabled()) {
                 logger.info("Submitting comment for blogPost={} author={} clientHashPresent={} ipHashPresent={}",
                         request.getBlogPostId(), request.getAuthor(),
                         StringUtils.isNotBlank(request.getClientHash()), StringUtils.isNotBlank(request.getIpHash()));
             }
-            return JCRTemplate.getInstance().doExecuteWithSystemSessionAsUser(null, Constants.LIVE_WORKSPACE,
+            CommentResult result = JCRTemplate.getInstance().doExecuteWithSystemSessionAsUser(null, Constants.LIVE_WORKSPACE,
                     null, (JCRCallback<CommentResult>) session -> execute(session, request));
+            resultCode = result.getCode();
+            return result;
         } catch (RepositoryException e) {
             logger.error("Comment persistence failed for blogPost={}", request.getBlogPostId(), e);
             throw new BlogServiceException("Unable to execute comment persistence", e);
+        } finally {
+            metrics.record(BlogMetrics.COMMENT_SUBMIT, resultCode, start);
         }
     }
 
     private CommentResult execute(JCRSessionWrapper session, CommentRequest request) throws RepositoryException {
-        try {
-            JCRNodeWrapper blogPost = session.getNodeByUUID(request.getBlogPostId());
+        List<Runnable> afterSave = new ArrayList<>(1);
+        CommentResult result = stage(session, request, afterSave);
+        if (!result.isSuccess()) {
+            return result;
+        }
 
-            JCRSiteNode site = blogPost.getResolveSite();
-            if (site == null) {
-                logger.error("Unable to resolve site for blog post {}", request.getBlogPostId());
-                throw new RepositoryException("Unable to resolve site for blog post " + request.getBlogPostId());
-            }
+        metrics.save(session, BlogMetrics.COMMENT_SUBMIT);
+        afterSave.forEach(Runnable::run);
 
-            String basePath = "/sites/" + site.getName() + "/contents/ugc/blogs/" + request.getBlogPostId() + "/comments";
-            if (logger.isDebugEnabled()) {
-                logger.debug("Using comments base path {}", basePath);
-            }
-        } catch (RepositoryException e) {
-            logger.error("Failed to resolve blog post or site for UUID={}", request.getBlogPostId(), e);
-            throw e;
+        if (logger.isInfoEnabled()) {
+            logger.info("Comment persisted for blogPost={} id={} code={}", request.getBlogPostId(),
+                    result.getCommentId(), result.getCode());
         }
-        
-        JCRNodeWrapper blogPost = session.getNodeByUUID(request.getBlogPostId());
-        JCRSiteNode site = blogPost.getResolveSite();
-        
-        String basePath = "/sites/" + site.getName() + "/contents/ugc/blogs/" + request.getBlogPostId() + "/comments";
+        return result;
+    }
+
+    /**
+     * Adds a comment and its counter update to the session without saving it, so it can be persisted together
+     * with other interactions.
+     * @param afterSave Receives the actions to run once the session was saved
+     * @return the result the comment will have once saved, or {@link CommentResult#CODE_DUPLICATE} if nothing was staged
+     */
+    CommentResult stage(JCRSessionWrapper session, CommentRequest request, List<Runnable> afterSave) throws RepositoryException {
+        BlogPostResolver.PostLocation location = postResolver.resolve(session, request.getBlogPostId());
+        String basePath = location.getCommentsPath();
         if (logger.isDebugEnabled()) {
             logger.debug("Using comments base path {}", basePath);
         }
-        JCRNodeWrapper commentsFolder = getOrCreateCommentsFolder(session, basePath);
+        JCRNodeWrapper commentsFolder = postResolver.getOrCreateFolder(session, basePath, "jsblognt:commentsFolder");
         if (logger.isDebugEnabled()) {
             logger.debug("Comments folder primary type={} mixins={}", commentsFolder.getPrimaryNodeTypeName(),
                     Arrays.toString(commentsFolder.getMixinNodeTypes()));
@@ -87,7 +129,11 @@ public class BlogCommentService {
         }
 
         String commentNodeName = "c-" + UUID.randomUUID();
-        JCRNodeWrapper commentNode = commentsFolder.addNode(commentNodeName, "jsblognt:comment");
+        // Every comment gets a timestamp, it is the sort key of the comment pages
+        Calendar timestamp = request.getTimestamp() != null ? request.getTimestamp() : Calendar.getInstance();
+        JCRNodeWrapper parent = UgcFolders.getOrCreateParent(commentsFolder, configurationService.getUgcFolderLayout(),
+                commentNodeName, timestamp);
+        JCRNodeWrapper commentNode = parent.addNode(commentNodeName, "jsblognt:comment");
 
         commentNode.setProperty("blogPostId", request.getBlogPostId());
         commentNode.setProperty("comment", request.getComment());
@@ -112,43 +158,41 @@ public class BlogCommentService {
             commentNode.setProperty("ua", request.getUserAgent());
         }
 
-        Calendar timestamp = request.getTimestamp();
-        if (timestamp != null) {
-            commentNode.setProperty("ts", timestamp);
-        }
+        commentNode.setProperty("ts", timestamp);
 
         // Comments require approval based on configuration
         boolean requiresModeration = configurationService.isRequireModeration();
-        logger.info("DEBUG: requiresModeration value from config: {}", requiresModeration);
-        logger.info("DEBUG: Setting approved property to: {}", !requiresModeration);
-        logger.info("DEBUG: Setting status property to: {}", requiresModeration ? "pending" : "approved");
-        
+        String status = requiresModeration ? CommentCounters.STATUS_PENDING : CommentCounters.STATUS_APPROVED;
+        if (logger.isDebugEnabled()) {
+            logger.debug("Staging comment for blogPost={} with status={}", request.getBlogPostId(), status);
+        }
         commentNode.setProperty("approved", !requiresModeration);
-        commentNode.setProperty("status", requiresModeration ? "pending" : "approved");
+        commentNode.setProperty("status", status);
+        CommentCounters.adjust(commentsFolder, status, 1);
 
-        session.save();
-        
-        if (logger.isInfoEnabled()) {
-            logger.info("Comment persisted for blogPost={} node={} status={} approved={} requiresModeration={}", 
-                    request.getBlogPostId(), commentNode.getPath(), 
-                    commentNode.getProperty("status").getString(),
-                    commentNode.getProperty("approved").getBoolean(),
-                    configurationService.isRequireModeration());
-        }
-        
-        String resultCode = configurationService.isRequireModeration() ? 
-                CommentResult.CODE_MODERATION : CommentResult.CODE_OK;
+        afterSave.add(() -> {
+            if (!requiresModeration) {
+                invalidateComments(request.getBlogPostId());
+            }
+            trendingService.record(location.getSiteKey(), request.getBlogPostId(), BlogTrendingService.Signal.COMMENT, 1);
+        });
+
+        String resultCode = requiresModeration ? CommentResult.CODE_MODERATION : CommentResult.CODE_OK;
         return new CommentResult(true, resultCode, commentNode.getIdentifier());
     }
 
-    private boolean isDuplicateComment(JCRNodeWrapper commentsFolder, CommentRequest request) throws RepositoryException {
+    /**
+     * Scans the comments of a post for the same comment from the same client, or from the same IP within the
+     * last minute.
+     */
+    static boolean isDuplicateComment(JCRNodeWrapper commentsFolder, CommentRequest request) throws RepositoryException {
         if (!commentsFolder.hasNodes()) {
             return false;
         }
 
-        NodeIterator nodes = commentsFolder.getNodes();
+        UgcNodeIterator nodes = new UgcNodeIterator(commentsFolder, "jsblognt:comment");
         while (nodes.hasNext()) {
-            JCRNodeWrapper comment = (JCRNodeWrapper) nodes.nextNode();
+            JCRNodeWrapper comment = nodes.next();
             
             // Check for duplicate by client hash
             if (StringUtils.isNotBlank(request.getClientHash()) && comment.hasProperty("clientHash")
@@ -180,94 +224,268 @@ public class BlogCommentService {
         return false;
     }
 
-    private JCRNodeWrapper getOrCreateCommentsFolder(JCRSessionWrapper session, String basePath) throws RepositoryException {
-        if (session.nodeExists(basePath)) {
-            return session.getNode(basePath);
-        }
+    /**
+     * Retrieves one page of approved comments for a blog post
+     * @param blogPostId The UUID of the blog post
+     * @param first Maximum number of comments to return, capped to {@link #MAX_PAGE_SIZE}
+     * @param after Cursor returned with the previous page, or null for the first page
+     * @param order Ordering on the comment timestamp
+     * @return The page of comments with the approved comments total and the cursor of the next page
+     * @throws BlogServiceException if retrieval fails or the cursor is invalid
+     */
+    public CommentPage getComments(String blogPostId, int first, String after, CommentSortOrder order) throws BlogServiceException {
+        long start = metrics.start();
+        String resultCode = BlogMetrics.RESULT_ERROR;
+        try {
+            int pageSize = Math.max(1, Math.min(first, MAX_PAGE_SIZE));
+            CommentCursor cursor = CommentCursor.parse(after);
+            Long cursorTimestamp = cursor != null ? cursor.timestamp : null;
+            String cursorId = cursor != null ? cursor.identifier : null;
 
-        String[] segments = StringUtils.split(basePath, '/');
-        JCRNodeWrapper current = session.getRootNode();
-        for (int i = 0; i < segments.length; i++) {
-            String segment = segments[i];
-            if (StringUtils.isBlank(segment)) {
-                continue;
-            }
-            if (current.hasNode(segment)) {
-                current = current.getNode(segment);
-            } else {
-                String nodeType = (i == segments.length - 1) ? "jsblognt:commentsFolder" : "jnt:contentFolder";
-                if (logger.isDebugEnabled()) {
-                    logger.debug("Creating node {} of type {} under {}", segment, nodeType, current.getPath());
-                }
-                current = current.addNode(segment, nodeType);
+            commentCache.setLimits(configurationService.getCommentCacheMaxSizeKb() * 1024L,
+                    configurationService.getCommentCacheTtlSeconds() * 1000L);
+            CommentPageKey key = new CommentPageKey(blogPostId, pageSize, after, order);
+            CommentPage cached = commentCache.get(key);
+            if (cached != null) {
+                resultCode = BlogMetrics.RESULT_CACHE_HIT;
+                return cached;
             }
+            long loadToken = commentCache.loadToken();
+            CommentPage page = JCRTemplate.getInstance().doExecuteWithSystemSessionAsUser(null, Constants.LIVE_WORKSPACE,
+                    null, (JCRCallback<CommentPage>) session -> retrieveComments(session, blogPostId, pageSize,
+                            cursorTimestamp, cursorId, order));
+            commentCache.putIfNotInvalidated(key, page, loadToken);
+            resultCode = BlogMetrics.RESULT_OK;
+            return page;
+        } catch (RepositoryException e) {
+            logger.error("Failed to retrieve comments for blogPost={}", blogPostId, e);
+            throw new BlogServiceException("Unable to retrieve comments", e);
+        } finally {
+            metrics.record(BlogMetrics.COMMENT_GET, resultCode, start);
         }
-        if (logger.isInfoEnabled()) {
-            logger.info("Created comments folder structure at {}", current.getPath());
+    }
+
+    private CommentPage retrieveComments(JCRSessionWrapper session, String blogPostId, int pageSize, Long afterTimestamp,
+                                         String afterId, CommentSortOrder order) throws RepositoryException {
+        String basePath = postResolver.resolve(session, blogPostId).getCommentsPath();
+        JCRNodeWrapper commentsFolder = postResolver.getExistingFolder(session, basePath);
+        if (commentsFolder == null) {
+            logger.debug("No comments folder exists for blogPost={}", blogPostId);
+            return new CommentPage(Collections.emptyList(), 0, null, false);
         }
-        return current;
+        
+        if (CommentCounters.ensure(commentsFolder)) {
+            session.save();
+        }
+        long total = CommentCounters.get(commentsFolder, CommentCounters.STATUS_APPROVED);
+
+        // Keyset pagination on (ts, uuid): every page is a bounded query, whatever its position in the thread
+        StringBuilder sql = new StringBuilder("SELECT * FROM [jsblognt:comment] AS c WHERE ISDESCENDANTNODE(c, '")
+                .append(escapeLiteral(basePath)).append("')")
+                .append(" AND ").append(statusCondition(CommentCounters.STATUS_APPROVED));
+        appendKeyset(sql, afterTimestamp, afterId, order == CommentSortOrder.OLDEST_FIRST);
+
+        Query query = session.getWorkspace().getQueryManager().createQuery(sql.toString(), Query.JCR_SQL2);
+        query.setLimit(pageSize + 1L);
+        NodeIterator iterator = query.execute().getNodes();
+
+        List<CommentData> comments = new ArrayList<>(pageSize);
+        String endCursor = null;
+        boolean hasNextPage = false;
+        while (iterator.hasNext()) {
+            JCRNodeWrapper commentNode = (JCRNodeWrapper) iterator.nextNode();
+            if (comments.size() == pageSize) {
+                hasNextPage = true;
+                break;
+            }
+            comments.add(toCommentData(commentNode));
+            endCursor = encodeCursor(sortTimestampOf(commentNode), commentNode.getIdentifier());
+        }
+        
+        logger.debug("Retrieved {} of {} approved comments for blogPost={}", comments.size(), total, blogPostId);
+        return new CommentPage(comments, total, endCursor, hasNextPage);
     }
 
     /**
-     * Retrieves all comments for a blog post
-     * @param blogPostId The UUID of the blog post
-     * @return List of comment nodes with their properties
-     * @throws BlogServiceException if retrieval fails
+     * Retrieves one page of the moderation queue of a site, newest comments first, grouped by blog post
+     * @param siteKey The site key
+     * @param status Status of the comments to return, or null for all statuses
+     * @param first Maximum number of comments to return, capped to {@link #MAX_PAGE_SIZE}
+     * @param after Cursor returned with the previous page, or null for the first page
+     * @param locale Locale of the post titles
+     * @return The page of comments grouped by post, with the per-status counts of the site as of the first page
+     * @throws BlogServiceException if retrieval fails, the status is unknown or the cursor is invalid
      */
-    public List<CommentData> getComments(String blogPostId) throws BlogServiceException {
+    public ModerationPage getModerationQueue(String siteKey, String status, int first, String after, Locale locale)
+            throws BlogServiceException {
+        if (StringUtils.isBlank(siteKey) || siteKey.indexOf('/') >= 0) {
+            throw new BlogServiceException("Invalid site key " + siteKey);
+        }
+        if (status != null && !CommentCounters.isStatus(status)) {
+            throw new BlogServiceException("Unknown comment status " + status);
+        }
+        int pageSize = Math.max(1, Math.min(first, MAX_PAGE_SIZE));
+        CommentCursor cursor = CommentCursor.parse(after);
         try {
             return JCRTemplate.getInstance().doExecuteWithSystemSessionAsUser(null, Constants.LIVE_WORKSPACE,
-                    null, (JCRCallback<List<CommentData>>) session -> retrieveComments(session, blogPostId));
+                    locale, (JCRCallback<ModerationPage>) session -> retrieveModerationQueue(session, siteKey, status,
+                            pageSize, cursor));
         } catch (RepositoryException e) {
-            logger.error("Failed to retrieve comments for blogPost={}", blogPostId, e);
-            throw new BlogServiceException("Unable to retrieve comments", e);
+            logger.error("Failed to retrieve moderation queue for site={}", siteKey, e);
+            throw new BlogServiceException("Unable to retrieve moderation queue", e);
         }
     }
 
-    private List<CommentData> retrieveComments(JCRSessionWrapper session, String blogPostId) throws RepositoryException {
-        List<CommentData> comments = new ArrayList<>();
-        
-        JCRNodeWrapper blogPost = session.getNodeByUUID(blogPostId);
-        JCRSiteNode site = blogPost.getResolveSite();
-        
-        String basePath = String.format("/sites/%s/contents/ugc/blogs/%s/comments", site.getName(), blogPostId);
-        
-        if (!session.nodeExists(basePath)) {
-            logger.debug("No comments folder exists for blogPost={}", blogPostId);
-            return comments;
+    private ModerationPage retrieveModerationQueue(JCRSessionWrapper session, String siteKey, String status,
+                                                   int pageSize, CommentCursor cursor) throws RepositoryException {
+        String rootPath = "/sites/" + siteKey + "/contents/ugc/blogs";
+        if (!session.nodeExists(rootPath)) {
+            return new ModerationPage(Collections.emptyList(), 0, 0, 0, null, false);
         }
-        
-        JCRNodeWrapper commentsFolder = session.getNode(basePath);
-        NodeIterator iterator = commentsFolder.getNodes();
-        
+
+        // The site-wide counts walk every post folder: they are read on the first page only and the next pages
+        // get them back from the cursor
+        long[] counts = cursor != null && cursor.counts != null ? cursor.counts : countSiteComments(session, rootPath);
+
+        StringBuilder sql = new StringBuilder("SELECT * FROM [jsblognt:comment] AS c WHERE ISDESCENDANTNODE(c, '")
+                .append(escapeLiteral(rootPath)).append("')");
+        if (status != null) {
+            sql.append(" AND ").append(statusCondition(status));
+        }
+        appendKeyset(sql, cursor != null ? cursor.timestamp : null, cursor != null ? cursor.identifier : null, false);
+
+        Query query = session.getWorkspace().getQueryManager().createQuery(sql.toString(), Query.JCR_SQL2);
+        query.setLimit(pageSize + 1L);
+        NodeIterator iterator = query.execute().getNodes();
+
+        Map<String, List<CommentData>> commentsByPost = new LinkedHashMap<>();
+        int size = 0;
+        String endCursor = null;
+        boolean hasNextPage = false;
         while (iterator.hasNext()) {
             JCRNodeWrapper commentNode = (JCRNodeWrapper) iterator.nextNode();
-            if (commentNode.isNodeType("jsblognt:comment")) {
-                // Check status property first, fall back to approved boolean for backwards compatibility
-                String status;
-                if (commentNode.hasProperty("status")) {
-                    status = commentNode.getProperty("status").getString();
-                } else {
-                    boolean approved = commentNode.hasProperty("approved") && commentNode.getProperty("approved").getBoolean();
-                    status = approved ? "approved" : "pending";
-                }
-                
-                // Only return approved comments for public display
-                if (!"approved".equals(status)) {
-                    continue;
-                }
-                
-                String uuid = commentNode.getIdentifier();
-                String authorName = commentNode.hasProperty("author") ? commentNode.getProperty("author").getString() : "Anonymous";
-                String body = commentNode.getProperty("comment").getString();
-                String created = commentNode.getProperty("ts").getDate().toInstant().toString();
-                
-                comments.add(new CommentData(uuid, authorName, body, created, status));
+            if (size == pageSize) {
+                hasNextPage = true;
+                break;
             }
+            String blogPostId = commentNode.getPropertyAsString("blogPostId");
+            commentsByPost.computeIfAbsent(blogPostId, id -> new ArrayList<>()).add(toCommentData(commentNode));
+            size++;
+            endCursor = encodeCursor(sortTimestampOf(commentNode), commentNode.getIdentifier(), counts);
         }
-        
-        logger.debug("Retrieved {} approved comments for blogPost={}", comments.size(), blogPostId);
-        return comments;
+
+        // Post titles are resolved once per distinct post of the page, in the same session
+        List<ModerationPage.PostComments> posts = new ArrayList<>(commentsByPost.size());
+        for (Map.Entry<String, List<CommentData>> entry : commentsByPost.entrySet()) {
+            String title = null;
+            try {
+                title = session.getNodeByIdentifier(entry.getKey()).getDisplayableName();
+            } catch (ItemNotFoundException e) {
+                logger.debug("Blog post {} of moderated comments no longer exists", entry.getKey());
+            }
+            posts.add(new ModerationPage.PostComments(entry.getKey(), title, entry.getValue()));
+        }
+
+        logger.debug("Retrieved {} comments of {} posts for moderation of site={}", size, posts.size(), siteKey);
+        return new ModerationPage(posts, counts[0], counts[1], counts[2], endCursor, hasNextPage);
+    }
+
+    /**
+     * Per-status comment counts of a site, summed from the counters of each post comments folder
+     * @return the pending, approved and rejected counts
+     */
+    private static long[] countSiteComments(JCRSessionWrapper session, String rootPath) throws RepositoryException {
+        long[] counts = new long[3];
+        boolean initialised = false;
+        NodeIterator postFolders = session.getNode(rootPath).getNodes();
+        while (postFolders.hasNext()) {
+            JCRNodeWrapper postFolder = (JCRNodeWrapper) postFolders.nextNode();
+            if (!postFolder.hasNode("comments")) {
+                continue;
+            }
+            JCRNodeWrapper commentsFolder = postFolder.getNode("comments");
+            initialised |= CommentCounters.ensure(commentsFolder);
+            counts[0] += CommentCounters.get(commentsFolder, CommentCounters.STATUS_PENDING);
+            counts[1] += CommentCounters.get(commentsFolder, CommentCounters.STATUS_APPROVED);
+            counts[2] += CommentCounters.get(commentsFolder, CommentCounters.STATUS_REJECTED);
+        }
+        if (initialised) {
+            session.save();
+        }
+        return counts;
+    }
+
+    private CommentData toCommentData(JCRNodeWrapper commentNode) throws RepositoryException {
+        String uuid = commentNode.getIdentifier();
+        String authorName = commentNode.hasProperty("author") ? commentNode.getProperty("author").getString() : "Anonymous";
+        String body = commentNode.getProperty("comment").getString();
+        String created = Instant.ofEpochMilli(timestampOf(commentNode)).toString();
+        return new CommentData(uuid, authorName, body, created, CommentCounters.statusOf(commentNode));
+    }
+
+    /**
+     * Timestamp of a comment for display, falling back to its creation date for comments stored without one.
+     */
+    private static long timestampOf(JCRNodeWrapper commentNode) throws RepositoryException {
+        if (commentNode.hasProperty("ts")) {
+            return commentNode.getProperty("ts").getDate().getTimeInMillis();
+        }
+        return commentNode.hasProperty("jcr:created") ? commentNode.getProperty("jcr:created").getDate().getTimeInMillis() : 0L;
+    }
+
+    /**
+     * Value of the sort key of a comment, the only one a cursor may be built from. Comments stored without a
+     * timestamp get one from {@link CommentCounters#ensure} before their folder is queried.
+     */
+    private static long sortTimestampOf(JCRNodeWrapper commentNode) throws RepositoryException {
+        return commentNode.hasProperty("ts") ? commentNode.getProperty("ts").getDate().getTimeInMillis() : 0L;
+    }
+
+    /**
+     * SQL2 condition matching the comments of a status, including comments created before the status property.
+     */
+    private static String statusCondition(String status) {
+        switch (status) {
+            case CommentCounters.STATUS_APPROVED:
+                return "(c.[status] = 'approved' OR (c.[status] IS NULL AND c.[approved] = true))";
+            case CommentCounters.STATUS_PENDING:
+                return "(c.[status] = 'pending' OR (c.[status] IS NULL AND (c.[approved] IS NULL OR c.[approved] = false)))";
+            default:
+                return "c.[status] = '" + escapeLiteral(status) + "'";
+        }
+    }
+
+    /**
+     * Appends the keyset condition on (ts, uuid) after the given cursor, and the matching ordering.
+     */
+    private static void appendKeyset(StringBuilder sql, Long afterTimestamp, String afterId, boolean ascending) {
+        String direction = ascending ? "ASC" : "DESC";
+        String comparator = ascending ? ">" : "<";
+        if (afterTimestamp != null) {
+            String date = "CAST('" + JCR_DATE_FORMAT.format(Instant.ofEpochMilli(afterTimestamp)) + "' AS DATE)";
+            sql.append(" AND (c.[ts] ").append(comparator).append(' ').append(date)
+                    .append(" OR (c.[ts] = ").append(date)
+                    .append(" AND c.[jcr:uuid] ").append(comparator).append(" '").append(escapeLiteral(afterId)).append("'))");
+        }
+        sql.append(" ORDER BY c.[ts] ").append(direction).append(", c.[jcr:uuid] ").append(direction);
+    }
+
+    private static String encodeCursor(long timestamp, String identifier) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((timestamp + ":" + identifier).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Moderation queue cursor, which also carries the site-wide counts of the first page
+     */
+    private static String encodeCursor(long timestamp, String identifier, long[] counts) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString((timestamp + ":" + identifier + ":" + counts[0]
+                + ":" + counts[1] + ":" + counts[2]).getBytes(StandardCharsets.UTF_8));
+    }
+
+
+    private static String escapeLiteral(String value) {
+        return StringUtils.replace(value, "'", "''");
     }
 
     /**
@@ -275,28 +493,36 @@ public class BlogCommentService {
      * @param commentId The UUID of the comment
      * @param status The new status (approved, rejected, pending)
      * @return true if successful
-     * @throws BlogServiceException if update fails
+     * @throws BlogServiceException if the status is unknown or the update fails
      */
     public boolean updateCommentStatus(String commentId, String status) throws BlogServiceException {
+        if (!CommentCounters.isStatus(status)) {
+            throw new BlogServiceException("Unknown comment status " + status);
+        }
+        long start = metrics.start();
+        String resultCode = BlogMetrics.RESULT_ERROR;
         try {
-            return JCRTemplate.getInstance().doExecuteWithSystemSessionAsUser(null, Constants.LIVE_WORKSPACE,
+            boolean found = JCRTemplate.getInstance().doExecuteWithSystemSessionAsUser(null, Constants.LIVE_WORKSPACE,
                     null, (JCRCallback<Boolean>) session -> {
                         try {
                             JCRNodeWrapper commentNode = session.getNodeByIdentifier(commentId);
-                            commentNode.setProperty("status", status);
-                            // Sync the approved boolean for backwards compatibility
-                            commentNode.setProperty("approved", "approved".equals(status));
-                            session.save();
+                            applyStatus(commentNode, status);
+                            metrics.save(session, BlogMetrics.COMMENT_UPDATE_STATUS);
+                            invalidateComments(commentNode.getPropertyAsString("blogPostId"));
                             logger.info("Updated comment {} status to {}", commentId, status);
                             return true;
-                        } catch (PathNotFoundException e) {
+                        } catch (ItemNotFoundException | PathNotFoundException e) {
                             logger.error("Comment not found: {}", commentId, e);
                             return false;
                         }
                     });
+            resultCode = found ? BlogMetrics.RESULT_OK : BlogMetrics.RESULT_NOT_FOUND;
+            return found;
         } catch (RepositoryException e) {
             logger.error("Failed to update comment status for commentId={}", commentId, e);
             throw new BlogServiceException("Failed to update comment status", e);
+        } finally {
+            metrics.record(BlogMetrics.COMMENT_UPDATE_STATUS, resultCode, start);
         }
     }
 
@@ -307,24 +533,328 @@ public class BlogCommentService {
      * @throws BlogServiceException if deletion fails
      */
     public boolean deleteComment(String commentId) throws BlogServiceException {
+        long start = metrics.start();
+        String resultCode = BlogMetrics.RESULT_ERROR;
         try {
-            return JCRTemplate.getInstance().doExecuteWithSystemSessionAsUser(null, Constants.LIVE_WORKSPACE,
+            boolean found = JCRTemplate.getInstance().doExecuteWithSystemSessionAsUser(null, Constants.LIVE_WORKSPACE,
                     null, (JCRCallback<Boolean>) session -> {
                         try {
                             JCRNodeWrapper commentNode = session.getNodeByIdentifier(commentId);
                             String path = commentNode.getPath();
-                            commentNode.remove();
-                            session.save();
+                            String blogPostId = commentNode.getPropertyAsString("blogPostId");
+                            applyDelete(commentNode);
+                            metrics.save(session, BlogMetrics.COMMENT_DELETE);
+                            invalidateComments(blogPostId);
                             logger.info("Deleted comment {} at path {}", commentId, path);
                             return true;
-                        } catch (PathNotFoundException e) {
+                        } catch (ItemNotFoundException | PathNotFoundException e) {
                             logger.error("Comment not found: {}", commentId, e);
                             return false;
                         }
                     });
+            resultCode = found ? BlogMetrics.RESULT_OK : BlogMetrics.RESULT_NOT_FOUND;
+            return found;
         } catch (RepositoryException e) {
             logger.error("Failed to delete comment commentId={}", commentId, e);
             throw new BlogServiceException("Failed to delete comment", e);
+        } finally {
+            metrics.record(BlogMetrics.COMMENT_DELETE, resultCode, start);
+        }
+    }
+
+    /**
+     * Update the status of several comments in one session, saving every
+     * {@link BlogConfigurationService#getModerationBatchSize()} comments
+     * @param commentIds The UUIDs of the comments, at most {@link #MAX_BATCH_IDS}
+     * @param status The new status (approved, rejected, pending)
+     * @return One result per distinct comment id, in request order
+     * @throws BlogServiceException if the status is unknown, too many ids are given or the session fails
+     */
+    public List<CommentBatchResult> updateCommentStatuses(List<String> commentIds, String status) throws BlogServiceException {
+        if (!CommentCounters.isStatus(status)) {
+            throw new BlogServiceException("Unknown comment status " + status);
+        }
+        return processBatch(commentIds, commentNode -> applyStatus(commentNode, status), "status update to " + status);
+    }
+
+    /**
+     * Delete several comments in one session, saving every {@link BlogConfigurationService#getModerationBatchSize()}
+     * comments
+     * @param commentIds The UUIDs of the comments, at most {@link #MAX_BATCH_IDS}
+     * @return One result per distinct comment id, in request order
+     * @throws BlogServiceException if too many ids are given or the session fails
+     */
+    public List<CommentBatchResult> deleteComments(List<String> commentIds) throws BlogServiceException {
+        return processBatch(commentIds, this::applyDelete, "deletion");
+    }
+
+    /**
+     * Resolve the sites of several comments, so the caller can check its permissions before moderating them
+     * @param commentIds The UUIDs of the comments, at most {@link #MAX_BATCH_IDS}
+     * @return The keys of the sites of the existing comments; unknown ids and other nodes are ignored
+     * @throws BlogServiceException if too many ids are given or the session fails
+     */
+    public Set<String> getSiteKeys(List<String> commentIds) throws BlogServiceException {
+        Set<String> ids = new LinkedHashSet<>(commentIds);
+        if (ids.size() > MAX_BATCH_IDS) {
+            throw new BlogServiceException("At most " + MAX_BATCH_IDS + " comments can be moderated at once");
+        }
+        try {
+            return JCRTemplate.getInstance().doExecuteWithSystemSessionAsUser(null, Constants.LIVE_WORKSPACE,
+                    null, (JCRCallback<Set<String>>) session -> {
+                        Set<String> siteKeys = new HashSet<>();
+                        for (String commentId : ids) {
+                            try {
+                                JCRNodeWrapper commentNode = session.getNodeByIdentifier(commentId);
+                                // Other nodes are reported as not found by the moderation itself
+                                if (commentNode.isNodeType("jsblognt:comment")) {
+                                    // Comments are stored below /sites/<siteKey>/contents/ugc
+                                    siteKeys.add(StringUtils.split(commentNode.getPath(), '/')[1]);
+                                }
+                            } catch (ItemNotFoundException e) {
+                                logger.debug("Comment not found: {}", commentId);
+                            }
+                        }
+                        return siteKeys;
+                    });
+        } catch (RepositoryException e) {
+            throw new BlogServiceException("Failed to resolve the sites of the comments", e);
+        }
+    }
+
+    private List<CommentBatchResult> processBatch(List<String> commentIds, CommentOperation operation, String label)
+            throws BlogServiceException {
+        List<String> ids = new ArrayList<>(new LinkedHashSet<>(commentIds));
+        if (ids.size() > MAX_BATCH_IDS) {
+            throw new BlogServiceException("At most " + MAX_BATCH_IDS + " comments can be moderated at once");
+        }
+        int chunkSize = configurationService.getModerationBatchSize();
+        List<CommentBatchResult> results = new ArrayList<>(ids.size());
+        Set<String> touchedPosts = new HashSet<>();
+        long start = metrics.start();
+        String resultCode = BlogMetrics.RESULT_ERROR;
+        try {
+            JCRTemplate.getInstance().doExecuteWithSystemSessionAsUser(null, Constants.LIVE_WORKSPACE,
+                    null, (JCRCallback<Void>) session -> {
+                        for (int from = 0; from < ids.size(); from += chunkSize) {
+                            List<String> chunk = ids.subList(from, Math.min(from + chunkSize, ids.size()));
+                            results.addAll(processChunk(session, chunk, operation, touchedPosts));
+                        }
+                        return null;
+                    });
+            resultCode = BlogMetrics.RESULT_OK;
+        } catch (RepositoryException e) {
+            logger.error("Bulk comment {} failed after {} of {} comments", label, results.size(), ids.size(), e);
+            throw new BlogServiceException("Failed to moderate comments", e);
+        } finally {
+            touchedPosts.forEach(this::invalidateComments);
+            metrics.record(BlogMetrics.COMMENT_BATCH, resultCode, start);
+        }
+        if (logger.isInfoEnabled()) {
+            logger.info("Bulk comment {}: {} of {} comments succeeded", label,
+                    results.stream().filter(CommentBatchResult::isSuccess).count(), ids.size());
+        }
+        return results;
+    }
+
+    /**
+     * Applies an operation to a chunk of comments with a single save. If a comment fails or the save fails, the
+     * chunk is replayed one comment at a time so that only the faulty comments are reported as failed.
+     */
+    private List<CommentBatchResult> processChunk(JCRSessionWrapper session, List<String> chunk, CommentOperation operation,
+                                                  Set<String> touchedPosts) throws RepositoryException {
+        List<CommentBatchResult> results = new ArrayList<>(chunk.size());
+        Set<String> chunkPosts = new HashSet<>();
+        boolean failed = false;
+        for (String commentId : chunk) {
+            CommentBatchResult result = applyOperation(session, commentId, operation, chunkPosts);
+            failed |= CommentBatchResult.CODE_ERROR.equals(result.getCode());
+            results.add(result);
+        }
+        if (!failed) {
+            try {
+                metrics.save(session, BlogMetrics.COMMENT_BATCH);
+                touchedPosts.addAll(chunkPosts);
+                return results;
+            } catch (RepositoryException e) {
+                logger.warn("Saving a chunk of {} moderated comments failed, replaying them one by one", chunk.size(), e);
+            }
+        }
+
+        session.refresh(false);
+        results.clear();
+        for (String commentId : chunk) {
+            CommentBatchResult result = applyOperation(session, commentId, operation, touchedPosts);
+            if (result.isSuccess()) {
+                try {
+                    metrics.save(session, BlogMetrics.COMMENT_BATCH);
+                } catch (RepositoryException e) {
+                    logger.error("Unable to moderate comment {}", commentId, e);
+                    result = new CommentBatchResult(commentId, CommentBatchResult.CODE_ERROR);
+                }
+            }
+            if (!result.isSuccess()) {
+                session.refresh(false);
+            }
+            results.add(result);
+        }
+        return results;
+    }
+
+    private CommentBatchResult applyOperation(JCRSessionWrapper session, String commentId, CommentOperation operation,
+                                              Set<String> touchedPosts) {
+        try {
+            JCRNodeWrapper commentNode = session.getNodeByIdentifier(commentId);
+            if (!commentNode.isNodeType("jsblognt:comment")) {
+                return new CommentBatchResult(commentId, CommentBatchResult.CODE_NOT_FOUND);
+            }
+            touchedPosts.add(commentNode.getPropertyAsString("blogPostId"));
+            operation.apply(commentNode);
+            return new CommentBatchResult(commentId, CommentBatchResult.CODE_OK);
+        } catch (ItemNotFoundException | PathNotFoundException e) {
+            logger.debug("Comment not found: {}", commentId);
+            return new CommentBatchResult(commentId, CommentBatchResult.CODE_NOT_FOUND);
+        } catch (RepositoryException e) {
+            logger.error("Unable to moderate comment {}", commentId, e);
+            return new CommentBatchResult(commentId, CommentBatchResult.CODE_ERROR);
+        }
+    }
+
+    /**
+     * Sets the status of a comment and moves it between the status counters, without saving.
+     */
+    private void applyStatus(JCRNodeWrapper commentNode, String status) throws RepositoryException {
+        String previousStatus = CommentCounters.statusOf(commentNode);
+        commentNode.setProperty("status", status);
+        // Sync the approved boolean for backwards compatibility
+        commentNode.setProperty("approved", "approved".equals(status));
+        if (!previousStatus.equals(status)) {
+            JCRNodeWrapper commentsFolder = CommentCounters.folderOf(commentNode);
+            CommentCounters.adjust(commentsFolder, previousStatus, -1);
+            CommentCounters.adjust(commentsFolder, status, 1);
+        }
+    }
+
+    /**
+     * Removes a comment and decrements its status counter, without saving.
+     */
+    private void applyDelete(JCRNodeWrapper commentNode) throws RepositoryException {
+        CommentCounters.adjust(CommentCounters.folderOf(commentNode), CommentCounters.statusOf(commentNode), -1);
+        commentNode.remove();
+    }
+
+    /**
+     * Statistics of the cache of approved comment pages
+     * @return Hit, miss and eviction counts with the current cache size
+     */
+    public CacheStats getCommentCacheStats() {
+        return commentCache.getStats();
+    }
+
+    /**
+     * Drops the cached comment pages of a post, or of all posts when the post is null
+     */
+    void invalidateComments(String blogPostId) {
+        if (blogPostId != null) {
+            commentCache.invalidateIf(key -> key.blogPostId.equals(blogPostId));
+        } else {
+            commentCache.invalidateAll();
+        }
+    }
+
+    private static long estimateSize(CommentPage page) {
+        long size = 64;
+        for (CommentData comment : page.getComments()) {
+            size += 64 + 2L * (StringUtils.length(comment.getUuid()) + StringUtils.length(comment.getAuthorName())
+                    + StringUtils.length(comment.getBody()) + StringUtils.length(comment.getCreated())
+                    + StringUtils.length(comment.getStatus()));
+        }
+        return size;
+    }
+
+    /**
+     * Cache key of a page of approved comments
+     */
+    private static final class CommentPageKey {
+        private final String blogPostId;
+        private final int pageSize;
+        private final String after;
+        private final CommentSortOrder order;
+
+        private CommentPageKey(String blogPostId, int pageSize, String after, CommentSortOrder order) {
+            this.blogPostId = blogPostId;
+            this.pageSize = pageSize;
+            this.after = after;
+            this.order = order;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof CommentPageKey)) {
+                return false;
+            }
+            CommentPageKey that = (CommentPageKey) o;
+            return pageSize == that.pageSize && blogPostId.equals(that.blogPostId)
+                    && Objects.equals(after, that.after) && order == that.order;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(blogPostId, pageSize, after, order);
+        }
+    }
+
+    /**
+     * Moderation operation applied to one comment node, without saving
+     */
+    private interface CommentOperation {
+        void apply(JCRNodeWrapper commentNode) throws RepositoryException;
+    }
+
+    /**
+     * Decoded keyset cursor: timestamp and identifier of the last comment of a page, and for the moderation queue
+     * the pending, approved and rejected counts of the site
+     */
+    private static final class CommentCursor {
+        private final long timestamp;
+        private final String identifier;
+        private final long[] counts;
+
+        private CommentCursor(long timestamp, String identifier, long[] counts) {
+            this.timestamp = timestamp;
+            this.identifier = identifier;
+            this.counts = counts;
+        }
+
+        /**
+         * @return the decoded cursor, or null for a blank cursor
+         */
+        private static CommentCursor parse(String cursor) throws BlogServiceException {
+            if (StringUtils.isBlank(cursor)) {
+                return null;
+            }
+            String decoded;
+            try {
+                decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            } catch (IllegalArgumentException e) {
+                throw new BlogServiceException("Invalid comments cursor", e);
+            }
+            String[] parts = decoded.split(":", -1);
+            if ((parts.length != 2 && parts.length != 5) || parts[0].isEmpty() || parts[1].isEmpty()) {
+                throw new BlogServiceException("Invalid comments cursor");
+            }
+            try {
+                long[] counts = null;
+                if (parts.length == 5) {
+                    counts = new long[] {Long.parseLong(parts[2]), Long.parseLong(parts[3]), Long.parseLong(parts[4])};
+                }
+                return new CommentCursor(Long.parseLong(parts[0]), parts[1], counts);
+            } catch (NumberFormatException e) {
+                throw new BlogServiceException("Invalid comments cursor", e);
+            }
         }
     }
 
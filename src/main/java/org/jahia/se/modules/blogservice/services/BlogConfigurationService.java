@@ -1,6 +1,7 @@
 package org.jahia.se.modules.blogservice.services;
 
 import org.apache.commons.lang3.StringUtils;
+import org.jahia.se.modules.blogservice.util.KeyedHasher;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
 import org.osgi.service.component.annotations.Modified;
@@ -24,21 +25,118 @@ public class BlogConfigurationService {
     private static final Logger logger = LoggerFactory.getLogger(BlogConfigurationService.class);
 
     private volatile String serverSecret;
+    private volatile KeyedHasher keyedHasher;
     private volatile String clientIdCookieName;
     private volatile boolean enableIpHash;
     private volatile boolean requireModeration;
+    private volatile UgcFolderLayout ugcFolderLayout;
+    private volatile int ugcMigrationBatchSize;
+    private volatile int commentCacheMaxSizeKb;
+    private volatile int commentCacheTtlSeconds;
+    private volatile int postCacheSize;
+    private volatile boolean likeBufferEnabled;
+    private volatile int likeBufferCapacity;
+    private volatile int likeBufferFlushSize;
+    private volatile int likeBufferFlushIntervalMs;
+    private volatile int moderationBatchSize;
+    private volatile boolean purgeEnabled;
+    private volatile int purgeIntervalHours;
+    private volatile int purgeRejectedCommentsAfterDays;
+    private volatile int purgeLikesAfterDays;
+    private volatile boolean purgeOrphanedFolders;
+    private volatile int purgeBatchSize;
+    private volatile int purgeBatchPauseMs;
+    private volatile boolean rateLimitEnabled;
+    private volatile int rateLimitCommentsPerMinute;
+    private volatile int rateLimitLikesPerMinute;
+    private volatile int rateLimitRatingsPerMinute;
+    private volatile int rateLimitIpFactor;
+    private volatile int rateLimitMaxClients;
+    private volatile boolean dedupFilterEnabled;
+    private volatile int dedupFilterMaxSizeKb;
+    private volatile boolean writeExecutorEnabled;
+    private volatile boolean writeExecutorVirtualThreads;
+    private volatile int writeExecutorThreads;
+    private volatile int writeExecutorQueueSize;
+    private volatile boolean trendingEnabled;
+    private volatile int trendingHalfLifeHours;
+    private volatile int trendingTopSize;
+    private volatile int trendingCheckpointIntervalMinutes;
+    private volatile int clusterInvalidationDelayMs;
+    private volatile boolean engagementPropertiesEnabled;
+    private volatile boolean engagementPropertiesOnPost;
+    private volatile int engagementPropertiesDelayMs;
 
     @Activate
     @Modified
     protected void activate(Configuration configuration) {
         this.serverSecret = StringUtils.trimToNull(configuration.serverSecret());
+        this.keyedHasher = this.serverSecret != null ? new KeyedHasher(this.serverSecret) : null;
         this.clientIdCookieName = StringUtils.defaultIfBlank(configuration.clientIdCookieName(), "jahia-client-id");
         this.enableIpHash = configuration.enableIpHash();
         this.requireModeration = configuration.requireModeration();
+        this.ugcFolderLayout = UgcFolderLayout.fromConfiguration(configuration.ugcFolderLayout());
+        this.ugcMigrationBatchSize = Math.max(1, configuration.ugcMigrationBatchSize());
+        this.commentCacheMaxSizeKb = Math.max(0, configuration.commentCacheMaxSizeKb());
+        this.commentCacheTtlSeconds = Math.max(0, configuration.commentCacheTtlSeconds());
+        this.postCacheSize = Math.max(0, configuration.postCacheSize());
+        this.likeBufferEnabled = configuration.likeBufferEnabled();
+        this.likeBufferCapacity = Math.max(1, configuration.likeBufferCapacity());
+        this.likeBufferFlushSize = Math.max(1, configuration.likeBufferFlushSize());
+        this.likeBufferFlushIntervalMs = Math.max(10, configuration.likeBufferFlushIntervalMs());
+        this.moderationBatchSize = Math.max(1, configuration.moderationBatchSize());
+        this.purgeEnabled = configuration.purgeEnabled();
+        this.purgeIntervalHours = Math.max(1, configuration.purgeIntervalHours());
+        this.purgeRejectedCommentsAfterDays = configuration.purgeRejectedCommentsAfterDays();
+        this.purgeLikesAfterDays = Math.max(0, configuration.purgeLikesAfterDays());
+        this.purgeOrphanedFolders = configuration.purgeOrphanedFolders();
+        this.purgeBatchSize = Math.max(1, configuration.purgeBatchSize());
+        this.purgeBatchPauseMs = Math.max(0, configuration.purgeBatchPauseMs());
+        this.rateLimitEnabled = configuration.rateLimitEnabled();
+        this.rateLimitCommentsPerMinute = Math.max(0, configuration.rateLimitCommentsPerMinute());
+        this.rateLimitLikesPerMinute = Math.max(0, configuration.rateLimitLikesPerMinute());
+        this.rateLimitRatingsPerMinute = Math.max(0, configuration.rateLimitRatingsPerMinute());
+        this.rateLimitIpFactor = Math.max(1, configuration.rateLimitIpFactor());
+        this.rateLimitMaxClients = Math.max(1, configuration.rateLimitMaxClients());
+        this.dedupFilterEnabled = configuration.dedupFilterEnabled();
+        this.dedupFilterMaxSizeKb = Math.max(0, configuration.dedupFilterMaxSizeKb());
+        this.writeExecutorEnabled = configuration.writeExecutorEnabled();
+        this.writeExecutorVirtualThreads = configuration.writeExecutorVirtualThreads();
+        this.writeExecutorThreads = Math.max(1, configuration.writeExecutorThreads());
+        this.writeExecutorQueueSize = Math.max(1, configuration.writeExecutorQueueSize());
+        this.trendingEnabled = configuration.trendingEnabled();
+        this.trendingHalfLifeHours = Math.max(1, configuration.trendingHalfLifeHours());
+        this.trendingTopSize = Math.max(1, configuration.trendingTopSize());
+        this.trendingCheckpointIntervalMinutes = Math.max(1, configuration.trendingCheckpointIntervalMinutes());
+        this.clusterInvalidationDelayMs = Math.max(0, configuration.clusterInvalidationDelayMs());
+        this.engagementPropertiesEnabled = configuration.engagementPropertiesEnabled();
+        this.engagementPropertiesOnPost = configuration.engagementPropertiesOnPost();
+        this.engagementPropertiesDelayMs = Math.max(0, configuration.engagementPropertiesDelayMs());
 
         if (logger.isInfoEnabled()) {
-            logger.info("Blog configuration updated: serverSecretConfigured={} clientIdCookieName={} enableIpHash={} requireModeration={}",
-                    this.serverSecret != null, this.clientIdCookieName, this.enableIpHash, this.requireModeration);
+            logger.info("Blog configuration updated: serverSecretConfigured={} clientIdCookieName={} enableIpHash={} requireModeration={} "
+                            + "ugcFolderLayout={} ugcMigrationBatchSize={} commentCacheMaxSizeKb={} commentCacheTtlSeconds={} postCacheSize={} "
+                            + "likeBufferEnabled={} likeBufferCapacity={} likeBufferFlushSize={} likeBufferFlushIntervalMs={} "
+                            + "moderationBatchSize={} purgeEnabled={} purgeIntervalHours={} purgeRejectedCommentsAfterDays={} "
+                            + "purgeLikesAfterDays={} purgeOrphanedFolders={} purgeBatchSize={} purgeBatchPauseMs={} "
+                            + "rateLimitEnabled={} rateLimitCommentsPerMinute={} rateLimitLikesPerMinute={} rateLimitRatingsPerMinute={} "
+                            + "rateLimitIpFactor={} rateLimitMaxClients={} dedupFilterEnabled={} dedupFilterMaxSizeKb={} "
+                            + "writeExecutorEnabled={} writeExecutorVirtualThreads={} writeExecutorThreads={} writeExecutorQueueSize={} "
+                            + "trendingEnabled={} trendingHalfLifeHours={} trendingTopSize={} trendingCheckpointIntervalMinutes={} "
+                            + "clusterInvalidationDelayMs={} engagementPropertiesEnabled={} engagementPropertiesOnPost={} "
+                            + "engagementPropertiesDelayMs={}",
+                    this.serverSecret != null, this.clientIdCookieName, this.enableIpHash, this.requireModeration,
+                    this.ugcFolderLayout, this.ugcMigrationBatchSize, this.commentCacheMaxSizeKb, this.commentCacheTtlSeconds,
+                    this.postCacheSize, this.likeBufferEnabled, this.likeBufferCapacity, this.likeBufferFlushSize,
+                    this.likeBufferFlushIntervalMs, this.moderationBatchSize, this.purgeEnabled, this.purgeIntervalHours,
+                    this.purgeRejectedCommentsAfterDays, this.purgeLikesAfterDays, this.purgeOrphanedFolders,
+                    this.purgeBatchSize, this.purgeBatchPauseMs, this.rateLimitEnabled, this.rateLimitCommentsPerMinute,
+                    this.rateLimitLikesPerMinute, this.rateLimitRatingsPerMinute, this.rateLimitIpFactor, this.rateLimitMaxClients,
+                    this.dedupFilterEnabled, this.dedupFilterMaxSizeKb, this.writeExecutorEnabled,
+                    this.writeExecutorVirtualThreads, this.writeExecutorThreads, this.writeExecutorQueueSize,
+                    this.trendingEnabled, this.trendingHalfLifeHours, this.trendingTopSize,
+                    this.trendingCheckpointIntervalMinutes, this.clusterInvalidationDelayMs, this.engagementPropertiesEnabled,
+                    this.engagementPropertiesOnPost, this.engagementPropertiesDelayMs);
         }
 
         if (this.serverSecret == null) {
@@ -50,6 +148,13 @@ public class BlogConfigurationService {
         return Optional.ofNullable(serverSecret);
     }
 
+    /**
+     * @return the hasher keyed with the current server secret, empty if no secret is configured
+     */
+    public Optional<KeyedHasher> getKeyedHasher() {
+        return Optional.ofNullable(keyedHasher);
+    }
+
     public String getClientIdCookieName() {
         return clientIdCookieName;
     }
@@ -62,6 +167,158 @@ public class BlogConfigurationService {
         return requireModeration;
     }
 
+    public UgcFolderLayout getUgcFolderLayout() {
+        return ugcFolderLayout;
+    }
+
+    public int getUgcMigrationBatchSize() {
+        return ugcMigrationBatchSize;
+    }
+
+    public int getCommentCacheMaxSizeKb() {
+        return commentCacheMaxSizeKb;
+    }
+
+    public int getCommentCacheTtlSeconds() {
+        return commentCacheTtlSeconds;
+    }
+
+    public int getPostCacheSize() {
+        return postCacheSize;
+    }
+
+    public boolean isLikeBufferEnabled() {
+        return likeBufferEnabled;
+    }
+
+    public int getLikeBufferCapacity() {
+        return likeBufferCapacity;
+    }
+
+    public int getLikeBufferFlushSize() {
+        return likeBufferFlushSize;
+    }
+
+    public int getLikeBufferFlushIntervalMs() {
+        return likeBufferFlushIntervalMs;
+    }
+
+    public int getModerationBatchSize() {
+        return moderationBatchSize;
+    }
+
+    public boolean isPurgeEnabled() {
+        return purgeEnabled;
+    }
+
+    public int getPurgeIntervalHours() {
+        return purgeIntervalHours;
+    }
+
+    public int getPurgeRejectedCommentsAfterDays() {
+        return purgeRejectedCommentsAfterDays;
+    }
+
+    public int getPurgeLikesAfterDays() {
+        return purgeLikesAfterDays;
+    }
+
+    public boolean isPurgeOrphanedFolders() {
+        return purgeOrphanedFolders;
+    }
+
+    public int getPurgeBatchSize() {
+        return purgeBatchSize;
+    }
+
+    public int getPurgeBatchPauseMs() {
+        return purgeBatchPauseMs;
+    }
+
+    public boolean isRateLimitEnabled() {
+        return rateLimitEnabled;
+    }
+
+    /**
+     * @return the number of calls per minute allowed to a single client for an operation, 0 for no limit
+     */
+    public int getRateLimitPerMinute(BlogRateLimiter.Operation operation) {
+        switch (operation) {
+            case COMMENT:
+                return rateLimitCommentsPerMinute;
+            case LIKE:
+                return rateLimitLikesPerMinute;
+            case RATING:
+                return rateLimitRatingsPerMinute;
+            default:
+                return 0;
+        }
+    }
+
+    public int getRateLimitIpFactor() {
+        return rateLimitIpFactor;
+    }
+
+    public int getRateLimitMaxClients() {
+        return rateLimitMaxClients;
+    }
+
+    public boolean isDedupFilterEnabled() {
+        return dedupFilterEnabled;
+    }
+
+    public int getDedupFilterMaxSizeKb() {
+        return dedupFilterMaxSizeKb;
+    }
+
+    public boolean isWriteExecutorEnabled() {
+        return writeExecutorEnabled;
+    }
+
+    public boolean isWriteExecutorVirtualThreads() {
+        return writeExecutorVirtualThreads;
+    }
+
+    public int getWriteExecutorThreads() {
+        return writeExecutorThreads;
+    }
+
+    public int getWriteExecutorQueueSize() {
+        return writeExecutorQueueSize;
+    }
+
+    public boolean isTrendingEnabled() {
+        return trendingEnabled;
+    }
+
+    public int getTrendingHalfLifeHours() {
+        return trendingHalfLifeHours;
+    }
+
+    public int getTrendingTopSize() {
+        return trendingTopSize;
+    }
+
+    public int getTrendingCheckpointIntervalMinutes() {
+        return trendingCheckpointIntervalMinutes;
+    }
+
+    public int getClusterInvalidationDelayMs() {
+        return clusterInvalidationDelayMs;
+    }
+
+    public boolean isEngagementPropertiesEnabled() {
+        return engagementPropertiesEnabled;
+    }
+
+    public boolean isEngagementPropertiesOnPost() {
+        return engagementPropertiesOnPost;
+    }
+
+    public int getEngagementPropertiesDelayMs() {
+        return engagementPropertiesDelayMs;
+    }
+
     @ObjectClassDefinition(
             pid = "org.jahia.se.modules.blogservice",
             name = "Blog service configuration"
@@ -87,5 +344,195 @@ public class BlogConfigurationService {
                 name = "Require comment moderation",
                 description = "If enabled, all comments will require approval before being visible.")
         boolean requireModeration() default false;
+
+        @AttributeDefinition(
+                name = "UGC folder layout",
+                description = "How comments, likes and ratings are stored below their folder: flat, hash (256 hash-prefix buckets) "
+                        + "or date (year/month/day buckets for comments, hash buckets for likes and ratings).")
+        String ugcFolderLayout() default "flat";
+
+        @AttributeDefinition(
+                name = "UGC migration batch size",
+                description = "Number of nodes moved between two saves when migrating UGC folders to the configured layout.")
+        int ugcMigrationBatchSize() default 500;
+
+        @AttributeDefinition(
+                name = "Comment cache size (KB)",
+                description = "Approximate maximum memory used by the cache of approved comment pages. 0 disables the cache.")
+        int commentCacheMaxSizeKb() default 8192;
+
+        @AttributeDefinition(
+                name = "Comment cache TTL (seconds)",
+                description = "Time after which a cached page of approved comments is reloaded from the repository. 0 disables the cache.")
+        int commentCacheTtlSeconds() default 300;
+
+        @AttributeDefinition(
+                name = "Blog post cache size",
+                description = "Maximum number of blog posts whose site and UGC folder paths are kept in memory. 0 disables the cache.")
+        int postCacheSize() default 10000;
+
+        @AttributeDefinition(
+                name = "Buffer likes",
+                description = "If enabled, likes are queued in memory and persisted in batches by a background writer. "
+                        + "The mutation then returns ACCEPTED, or QUEUE_FULL when the buffer is full.")
+        boolean likeBufferEnabled() default false;
+
+        @AttributeDefinition(
+                name = "Like buffer capacity",
+                description = "Maximum number of likes waiting to be persisted before new likes are refused.")
+        int likeBufferCapacity() default 10000;
+
+        @AttributeDefinition(
+                name = "Like buffer flush size",
+                description = "Number of queued likes that triggers a flush.")
+        int likeBufferFlushSize() default 200;
+
+        @AttributeDefinition(
+                name = "Like buffer flush interval (ms)",
+                description = "Maximum time a queued like waits before being flushed.")
+        int likeBufferFlushIntervalMs() default 500;
+
+        @AttributeDefinition(
+                name = "Moderation batch size",
+                description = "Number of comments updated or deleted between two saves by the bulk moderation mutations.")
+        int moderationBatchSize() default 100;
+
+        @AttributeDefinition(
+                name = "Enable UGC purge",
+                description = "If enabled, a background job periodically removes rejected comments, expired likes and the UGC of deleted blog posts.")
+        boolean purgeEnabled() default false;
+
+        @AttributeDefinition(
+                name = "UGC purge interval (hours)",
+                description = "Minimum time between two purge passes of the same site.")
+        int purgeIntervalHours() default 24;
+
+        @AttributeDefinition(
+                name = "Purge rejected comments after (days)",
+                description = "Age after which rejected comments are removed. 0 removes them at the next pass, a negative value keeps them.")
+        int purgeRejectedCommentsAfterDays() default 30;
+
+        @AttributeDefinition(
+                name = "Purge likes after (days)",
+                description = "Retention of likes: likes older than this are removed and no longer counted. 0 keeps likes forever.")
+        int purgeLikesAfterDays() default 0;
+
+        @AttributeDefinition(
+                name = "Purge orphaned UGC folders",
+                description = "If enabled, the UGC folders of blog posts that no longer exist in either workspace are removed.")
+        boolean purgeOrphanedFolders() default true;
+
+        @AttributeDefinition(
+                name = "UGC purge batch size",
+                description = "Number of nodes removed, or post folders scanned, between two saves of the purge job.")
+        int purgeBatchSize() default 200;
+
+        @AttributeDefinition(
+                name = "UGC purge pause (ms)",
+                description = "Pause after each purge batch, to limit the load on the repository.")
+        int purgeBatchPauseMs() default 200;
+
+        @AttributeDefinition(
+                name = "Enable rate limiting",
+                description = "If enabled, comments, likes and ratings submitted by a single client or IP beyond the budgets below are refused.")
+        boolean rateLimitEnabled() default true;
+
+        @AttributeDefinition(
+                name = "Comments per minute",
+                description = "Number of comments a single client may submit per minute, all posts together. 0 disables the limit.")
+        int rateLimitCommentsPerMinute() default 5;
+
+        @AttributeDefinition(
+                name = "Likes per minute",
+                description = "Number of likes a single client may submit per minute, all posts together. 0 disables the limit.")
+        int rateLimitLikesPerMinute() default 30;
+
+        @AttributeDefinition(
+                name = "Ratings per minute",
+                description = "Number of ratings a single client may submit per minute, all posts together. 0 disables the limit.")
+        int rateLimitRatingsPerMinute() default 10;
+
+        @AttributeDefinition(
+                name = "IP rate limit factor",
+                description = "Multiplier applied to the per-client budgets for all the clients sharing a truncated IP.")
+        int rateLimitIpFactor() default 10;
+
+        @AttributeDefinition(
+                name = "Rate limiter capacity",
+                description = "Maximum number of clients and IPs tracked by the rate limiter. Beyond it, untracked clients are not limited.")
+        int rateLimitMaxClients() default 100000;
+
+        @AttributeDefinition(
+                name = "Enable dedup filters",
+                description = "If enabled, per-post Bloom filters of the client and IP hashes of likes and ratings let new submissions skip the repository duplicate lookup.")
+        boolean dedupFilterEnabled() default true;
+
+        @AttributeDefinition(
+                name = "Dedup filters size (KB)",
+                description = "Maximum memory used by the dedup filters of likes, and separately of ratings. 0 disables them.")
+        int dedupFilterMaxSizeKb() default 4096;
+
+        @AttributeDefinition(
+                name = "Enable write executor",
+                description = "If enabled, comments, likes and ratings are written by a bounded executor instead of the request thread, "
+                        + "and submissions beyond its queue are refused.")
+        boolean writeExecutorEnabled() default true;
+
+        @AttributeDefinition(
+                name = "Use virtual threads",
+                description = "If enabled and the JVM supports them (Java 21+), writes run on virtual threads, otherwise on a platform thread pool.")
+        boolean writeExecutorVirtualThreads() default true;
+
+        @AttributeDefinition(
+                name = "Concurrent writes",
+                description = "Maximum number of blog writes running at once, which is also the size of the platform thread pool.")
+        int writeExecutorThreads() default 16;
+
+        @AttributeDefinition(
+                name = "Write queue size",
+                description = "Maximum number of blog writes waiting for their turn before new ones are refused.")
+        int writeExecutorQueueSize() default 500;
+
+        @AttributeDefinition(
+                name = "Enable trending",
+                description = "If enabled, likes, first ratings and comments feed a time-decayed score per post used to rank trending posts.")
+        boolean trendingEnabled() default true;
+
+        @AttributeDefinition(
+                name = "Trending half-life (hours)",
+                description = "Time after which the contribution of an interaction to the trending score of a post is halved.")
+        int trendingHalfLifeHours() default 24;
+
+        @AttributeDefinition(
+                name = "Trending posts per site",
+                description = "Number of trending posts kept ranked per site, which is also the maximum limit of the trending query.")
+        int trendingTopSize() default 50;
+
+        @AttributeDefinition(
+                name = "Trending checkpoint interval (minutes)",
+                description = "Interval between two checkpoints of the trending scores to the repository, restored when the module starts.")
+        int trendingCheckpointIntervalMinutes() default 5;
+
+        @AttributeDefinition(
+                name = "Cluster invalidation delay (ms)",
+                description = "Time during which the UGC changes made by other cluster nodes are collected per post before the local caches are invalidated.")
+        int clusterInvalidationDelayMs() default 500;
+
+        @AttributeDefinition(
+                name = "Enable engagement properties",
+                description = "If enabled, the comment, rating and like counts of a post are copied to the jsblogmix:engagementStats properties "
+                        + "of its UGC folder after each change, for templates and search facets.")
+        boolean engagementPropertiesEnabled() default true;
+
+        @AttributeDefinition(
+                name = "Engagement properties on post",
+                description = "If enabled, the engagement properties are also written on the blog post node in LIVE, "
+                        + "declared as live properties so they survive a new publication of the post.")
+        boolean engagementPropertiesOnPost() default false;
+
+        @AttributeDefinition(
+                name = "Engagement properties delay (ms)",
+                description = "Time during which the changes of the UGC of a post are collected before its engagement properties are written.")
+        int engagementPropertiesDelayMs() default 1000;
     }
 }
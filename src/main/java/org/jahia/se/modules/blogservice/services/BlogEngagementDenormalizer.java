@@ -0,0 +1,278 @@
+package org.jahia.se.modules.blogservice.services;
+
+import org.apache.jackrabbit.api.observation.JackrabbitEvent;
+import org.jahia.api.Constants;
+import org.jahia.services.content.DefaultEventListener;
+import org.jahia.services.content.JCRCallback;
+import org.jahia.services.content.JCRNodeWrapper;
+import org.jahia.services.content.JCRSessionWrapper;
+import org.jahia.services.content.JCRTemplate;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Reference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.jcr.InvalidItemStateException;
+import javax.jcr.ItemNotFoundException;
+import javax.jcr.PathNotFoundException;
+import javax.jcr.RepositoryException;
+import javax.jcr.Value;
+import javax.jcr.observation.Event;
+import javax.jcr.observation.EventIterator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Copies the comment, rating and like counts of blog posts to the {@code jsblogmix:engagementStats} properties of
+ * their UGC folder, and optionally of the post node in LIVE, so templates and search facets read them without
+ * touching the UGC folders. On the post node they are declared as live properties, so publishing the post again
+ * from EDIT keeps them. Posts are marked when an event shows a change below their comments, likes or ratings
+ * folders, whichever path made it (submission, moderation, purge), then written together every
+ * {@code engagementPropertiesDelayMs}. Values are always recomputed from the counters maintained on the folders,
+ * so a missed or failed write is repaired by the next change of the post. Only the events of this cluster node
+ * are handled, each post being written by the node that changed it.
+ */
+@Component(service = {BlogEngagementDenormalizer.class, DefaultEventListener.class}, immediate = true)
+public class BlogEngagementDenormalizer extends DefaultEventListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(BlogEngagementDenormalizer.class);
+
+    static final String ENGAGEMENT_MIXIN = "jsblogmix:engagementStats";
+    static final String PROP_COMMENT_COUNT = "commentCount";
+    static final String PROP_RATING_AVG = "ratingAvg";
+    static final String PROP_RATING_COUNT = "ratingCount";
+    static final String PROP_LIKE_COUNT = "likeCount";
+
+    /** Properties of the LIVE post node that are kept when the post is published again from EDIT */
+    private static final String LIVE_PROPERTIES_MIXIN = "jmix:liveProperties";
+    private static final String PROP_LIVE_PROPERTIES = "j:liveProperties";
+    private static final List<String> ENGAGEMENT_PROPERTIES =
+            Arrays.asList(PROP_COMMENT_COUNT, PROP_RATING_AVG, PROP_RATING_COUNT, PROP_LIKE_COUNT);
+
+    /** Only changes inside the UGC folders of a post count, so writing the properties does not trigger itself */
+    private static final Pattern UGC_PATH = Pattern.compile(
+            "^/sites/[^/]+/contents/ugc/blogs/([0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12})"
+                    + "/(?:comments|likes|likesByIp|ratings|ratingsByIp)(?:/|$)");
+    private static final long STOP_TIMEOUT_MILLIS = 5000L;
+
+    @Reference
+    private BlogConfigurationService configurationService;
+
+    @Reference
+    private BlogEngagementService engagementService;
+
+    @Reference
+    private BlogPostResolver postResolver;
+
+    @Reference
+    private BlogMetrics metrics;
+
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private ScheduledExecutorService executor;
+
+    public BlogEngagementDenormalizer() {
+        setWorkspace(Constants.LIVE_WORKSPACE);
+    }
+
+    @Activate
+    protected void activate() {
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "blog-engagement-properties");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Deactivate
+    protected void deactivate() {
+        // Posts still pending get their properties on their next change
+        executor.shutdownNow();
+        try {
+            executor.awaitTermination(STOP_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public int getEventTypes() {
+        return Event.NODE_ADDED | Event.NODE_REMOVED | Event.PROPERTY_ADDED | Event.PROPERTY_CHANGED;
+    }
+
+    @Override
+    public String getPath() {
+        return "/sites";
+    }
+
+    @Override
+    public void onEvent(EventIterator events) {
+        if (!configurationService.isEngagementPropertiesEnabled()) {
+            return;
+        }
+        boolean added = false;
+        while (events.hasNext()) {
+            Event event = events.nextEvent();
+            if (event instanceof JackrabbitEvent && ((JackrabbitEvent) event).isExternal()) {
+                continue;
+            }
+            try {
+                Matcher matcher = UGC_PATH.matcher(event.getPath());
+                if (matcher.find()) {
+                    added |= pending.add(matcher.group(1));
+                }
+            } catch (RepositoryException e) {
+                logger.debug("Unable to read the path of event {}", event, e);
+            }
+        }
+        if (added) {
+            schedule();
+        }
+    }
+
+    /**
+     * Marks posts whose counters were changed in bulk, for instance by the purge, so their properties are written
+     * with the next run without waiting for the events of the change
+     */
+    void markChanged(Collection<String> blogPostIds) {
+        if (!configurationService.isEngagementPropertiesEnabled() || blogPostIds.isEmpty()) {
+            return;
+        }
+        pending.addAll(blogPostIds);
+        schedule();
+    }
+
+    private void schedule() {
+        if (scheduled.compareAndSet(false, true)) {
+            try {
+                executor.schedule(this::writePending, configurationService.getEngagementPropertiesDelayMs(),
+                        TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                scheduled.set(false);
+            }
+        }
+    }
+
+    /**
+     * Writes the properties of the posts marked since the previous run, at most
+     * {@link BlogEngagementService#MAX_POSTS} per save. Posts whose save conflicted are written again on the next run.
+     */
+    private void writePending() {
+        scheduled.set(false);
+        List<String> batch = new ArrayList<>(BlogEngagementService.MAX_POSTS);
+        for (Iterator<String> it = pending.iterator(); it.hasNext(); ) {
+            batch.add(it.next());
+            it.remove();
+            if (batch.size() == BlogEngagementService.MAX_POSTS || !it.hasNext()) {
+                writeBatch(batch);
+                batch = new ArrayList<>(BlogEngagementService.MAX_POSTS);
+            }
+        }
+    }
+
+    private void writeBatch(List<String> blogPostIds) {
+        long start = metrics.start();
+        String resultCode = BlogMetrics.RESULT_ERROR;
+        try {
+            JCRTemplate.getInstance().doExecuteWithSystemSessionAsUser(null, Constants.LIVE_WORKSPACE, null,
+                    (JCRCallback<Void>) session -> {
+                        write(session, engagementService.retrieveEngagement(session, blogPostIds));
+                        return null;
+                    });
+            resultCode = BlogMetrics.RESULT_OK;
+        } catch (InvalidItemStateException e) {
+            resultCode = BlogMetrics.RESULT_CONFLICT;
+            logger.debug("Engagement properties of {} posts conflicted with a concurrent write, retrying", blogPostIds.size());
+            pending.addAll(blogPostIds);
+            schedule();
+        } catch (RepositoryException | RuntimeException e) {
+            logger.error("Unable to write the engagement properties of {} posts", blogPostIds.size(), e);
+        } finally {
+            metrics.record(BlogMetrics.ENGAGEMENT_PROPERTIES, resultCode, start);
+        }
+    }
+
+    private void write(JCRSessionWrapper session, Map<String, EngagementStats> engagement) throws RepositoryException {
+        boolean onPost = configurationService.isEngagementPropertiesOnPost();
+        for (EngagementStats stats : engagement.values()) {
+            BlogPostResolver.PostLocation location;
+            try {
+                location = postResolver.resolve(session, stats.getBlogPostId());
+            } catch (ItemNotFoundException e) {
+                continue;
+            }
+            JCRNodeWrapper ugcFolder = postResolver.getExistingFolder(session, location.getUgcPath());
+            if (ugcFolder != null) {
+                setProperties(ugcFolder, stats);
+            }
+            if (onPost) {
+                try {
+                    JCRNodeWrapper postNode = session.getNode(location.getPostNodePath());
+                    declareLiveProperties(postNode);
+                    setProperties(postNode, stats);
+                } catch (PathNotFoundException e) {
+                    logger.debug("Blog post {} is no longer published, skipping its engagement properties",
+                            stats.getBlogPostId());
+                }
+            }
+        }
+        session.save();
+    }
+
+    /**
+     * Only changed values are set, so a post whose counts did not move is not modified
+     */
+    private static void setProperties(JCRNodeWrapper node, EngagementStats stats) throws RepositoryException {
+        if (!node.isNodeType(ENGAGEMENT_MIXIN)) {
+            node.addMixin(ENGAGEMENT_MIXIN);
+        }
+        setIfChanged(node, PROP_COMMENT_COUNT, stats.getApprovedCommentCount());
+        setIfChanged(node, PROP_RATING_COUNT, stats.getRatingCount());
+        setIfChanged(node, PROP_LIKE_COUNT, stats.getLikeCount());
+        if (!node.hasProperty(PROP_RATING_AVG)
+                || node.getProperty(PROP_RATING_AVG).getDouble() != stats.getAverageRating()) {
+            node.setProperty(PROP_RATING_AVG, stats.getAverageRating());
+        }
+    }
+
+    /**
+     * The post node is published from EDIT, which does not have the engagement properties: they are declared as
+     * live properties so a new publication of the post does not drop them until its next UGC change.
+     */
+    private static void declareLiveProperties(JCRNodeWrapper postNode) throws RepositoryException {
+        if (!postNode.isNodeType(LIVE_PROPERTIES_MIXIN)) {
+            postNode.addMixin(LIVE_PROPERTIES_MIXIN);
+        }
+        Set<String> declared = new LinkedHashSet<>();
+        if (postNode.hasProperty(PROP_LIVE_PROPERTIES)) {
+            for (Value value : postNode.getProperty(PROP_LIVE_PROPERTIES).getValues()) {
+                declared.add(value.getString());
+            }
+        }
+        if (declared.addAll(ENGAGEMENT_PROPERTIES)) {
+            postNode.setProperty(PROP_LIVE_PROPERTIES, declared.toArray(new String[0]));
+        }
+    }
+
+    private static void setIfChanged(JCRNodeWrapper node, String name, long value) throws RepositoryException {
+        if (!node.hasProperty(name) || node.getProperty(name).getLong() != value) {
+            node.setProperty(name, value);
+        }
+    }
+}
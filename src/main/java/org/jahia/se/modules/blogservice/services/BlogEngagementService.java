@@ -0,0 +1,215 @@
+package org.jahia.se.modules.blogservice.services;
+
+import org.jahia.api.Constants;
+import org.jahia.services.content.JCRCallback;
+import org.jahia.services.content.JCRNodeWrapper;
+import org.jahia.services.content.JCRSessionWrapper;
+import org.jahia.services.content.JCRTemplate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.jcr.InvalidItemStateException;
+import javax.jcr.ItemExistsException;
+import javax.jcr.ItemNotFoundException;
+import javax.jcr.RepositoryException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads the engagement aggregates of several blog posts at once, for listing pages. All posts are read in a
+ * single system session from the counters persisted on their comments, likes and ratings folders, so the cost
+ * does not depend on the number of interactions. Also persists a like, a rating and a comment submitted together
+ * with a single save.
+ */
+@Component(service = BlogEngagementService.class, immediate = true)
+public class BlogEngagementService {
+
+    private static final Logger logger = LoggerFactory.getLogger(BlogEngagementService.class);
+
+    public static final int MAX_POSTS = 100;
+
+    private static final int MAX_SAVE_ATTEMPTS = 3;
+
+    @Reference
+    private BlogPostResolver postResolver;
+
+    @Reference
+    private BlogMetrics metrics;
+
+    @Reference
+    private BlogLikeService likeService;
+
+    @Reference
+    private BlogRatingService ratingService;
+
+    @Reference
+    private BlogCommentService commentService;
+
+    /**
+     * Get the engagement aggregates of blog posts
+     * @param blogPostIds The blog post UUIDs, at most {@link #MAX_POSTS}
+     * @return The aggregates keyed by post UUID, in request order; posts that do not exist are left out
+     * @throws BlogServiceException if retrieval fails or too many posts are requested
+     */
+    public Map<String, EngagementStats> getEngagement(Collection<String> blogPostIds) throws BlogServiceException {
+        LinkedHashSet<String> ids = new LinkedHashSet<>(blogPostIds);
+        if (ids.size() > MAX_POSTS) {
+            throw new BlogServiceException("At most " + MAX_POSTS + " posts can be requested at once");
+        }
+        if (ids.isEmpty()) {
+            return new LinkedHashMap<>();
+        }
+        long start = metrics.start();
+        String resultCode = BlogMetrics.RESULT_ERROR;
+        try {
+            Map<String, EngagementStats> engagement = JCRTemplate.getInstance().doExecuteWithSystemSessionAsUser(null,
+                    Constants.LIVE_WORKSPACE, null,
+                    (JCRCallback<Map<String, EngagementStats>>) session -> retrieveEngagement(session, ids));
+            resultCode = BlogMetrics.RESULT_OK;
+            return engagement;
+        } catch (RepositoryException e) {
+            logger.error("Failed to retrieve engagement for {} posts", ids.size(), e);
+            throw new BlogServiceException("Unable to retrieve engagement", e);
+        } finally {
+            metrics.record(BlogMetrics.ENGAGEMENT_GET, resultCode, start);
+        }
+    }
+
+    /**
+     * Submit a like, a rating and a comment on a blog post at once. The parts are staged in one system session and
+     * persisted with a single save, so they are written together or not at all; a like or comment rejected as a
+     * duplicate does not prevent the other parts from being saved. The like is always written synchronously, the
+     * like buffer is not used.
+     * @param request The engagement request, with at least one part
+     * @return The result of each submitted part
+     * @throws BlogServiceException if the request is empty or the persistence fails
+     */
+    public EngagementResult submit(EngagementRequest request) throws BlogServiceException {
+        if (request.isEmpty()) {
+            throw new BlogServiceException("At least one of like, rating or comment must be submitted");
+        }
+        long start = metrics.start();
+        String resultCode = BlogMetrics.RESULT_ERROR;
+        try {
+            // The like and rating aggregates live on their folders, so concurrent interactions on the same post
+            // conflict on save. Retry with a fresh session so all parts are re-applied on top of the latest state.
+            for (int attempt = 1; ; attempt++) {
+                try {
+                    // Legacy folders are migrated beforehand in their own sessions, as the migration saves as it
+                    // goes and would persist part of the engagement early
+                    if (request.getLike() != null) {
+                        likeService.migrateFolder(request.getBlogPostId());
+                    }
+                    if (request.getRating() != null) {
+                        ratingService.migrateFolder(request.getBlogPostId());
+                    }
+                    EngagementResult result = JCRTemplate.getInstance().doExecuteWithSystemSessionAsUser(null,
+                            Constants.LIVE_WORKSPACE, null,
+                            (JCRCallback<EngagementResult>) session -> executeSubmit(session, request));
+                    resultCode = BlogMetrics.RESULT_OK;
+                    return result;
+                } catch (InvalidItemStateException | ItemExistsException e) {
+                    if (attempt >= MAX_SAVE_ATTEMPTS) {
+                        throw e;
+                    }
+                    logger.debug("Concurrent engagement update for blogPost={}, retrying (attempt {})",
+                            request.getBlogPostId(), attempt);
+                }
+            }
+        } catch (ItemNotFoundException e) {
+            resultCode = BlogMetrics.RESULT_NOT_FOUND;
+            throw new BlogServiceException("Blog post not found: " + request.getBlogPostId(), e);
+        } catch (RepositoryException e) {
+            logger.error("Engagement persistence failed for blogPost={}", request.getBlogPostId(), e);
+            throw new BlogServiceException("Unable to execute engagement persistence", e);
+        } finally {
+            metrics.record(BlogMetrics.ENGAGEMENT_SUBMIT, resultCode, start);
+        }
+    }
+
+    private EngagementResult executeSubmit(JCRSessionWrapper session, EngagementRequest request)
+            throws RepositoryException {
+        List<Runnable> afterSave = new ArrayList<>(3);
+        LikeResult like = request.getLike() != null ? likeService.stage(session, request.getLike(), afterSave) : null;
+        RatingResult rating = request.getRating() != null
+                ? ratingService.stage(session, request.getRating(), afterSave) : null;
+        CommentResult comment = request.getComment() != null
+                ? commentService.stage(session, request.getComment(), afterSave) : null;
+
+        if (session.hasPendingChanges()) {
+            metrics.save(session, BlogMetrics.ENGAGEMENT_SUBMIT);
+            afterSave.forEach(Runnable::run);
+        }
+
+        if (logger.isInfoEnabled()) {
+            logger.info("Engagement persisted for blogPost={} like={} rating={} comment={}", request.getBlogPostId(),
+                    like != null ? like.getCode() : null, rating != null ? rating.getCode() : null,
+                    comment != null ? comment.getCode() : null);
+        }
+        return new EngagementResult(request.getBlogPostId(), like, rating, comment);
+    }
+
+    /**
+     * Reads the aggregates of posts in a session, initialising and saving the counters of folders that had none
+     */
+    Map<String, EngagementStats> retrieveEngagement(JCRSessionWrapper session, Collection<String> blogPostIds)
+            throws RepositoryException {
+        Map<String, EngagementStats> result = new LinkedHashMap<>();
+        boolean initialised = false;
+        for (String blogPostId : blogPostIds) {
+            BlogPostResolver.PostLocation location;
+            try {
+                location = postResolver.resolve(session, blogPostId);
+            } catch (ItemNotFoundException e) {
+                logger.debug("Skipping engagement of missing blogPost={}", blogPostId);
+                continue;
+            }
+
+            double averageRating = 0.0;
+            int ratingCount = 0;
+            JCRNodeWrapper ratingsFolder = postResolver.getExistingFolder(session, location.getRatingsPath());
+            if (ratingsFolder != null) {
+                initialised |= !ratingsFolder.hasProperty(BlogRatingService.PROP_RATING_COUNT)
+                        || !ratingsFolder.hasProperty(BlogRatingService.PROP_RATING_SUM);
+                BlogRatingService.RatingStats stats = BlogRatingService.readRatingStats(ratingsFolder);
+                averageRating = stats.getAverageRating();
+                ratingCount = stats.getRatingCount();
+            }
+
+            long likeCount = 0;
+            JCRNodeWrapper likesFolder = postResolver.getExistingFolder(session, location.getLikesPath());
+            if (likesFolder != null) {
+                initialised |= !likesFolder.hasProperty(BlogLikeService.PROP_LIKE_COUNT);
+                likeCount = BlogLikeService.readLikeCount(likesFolder);
+            }
+
+            long commentCount = 0;
+            long pendingCommentCount = 0;
+            JCRNodeWrapper commentsFolder = postResolver.getExistingFolder(session, location.getCommentsPath());
+            if (commentsFolder != null) {
+                initialised |= CommentCounters.ensure(commentsFolder);
+                commentCount = CommentCounters.get(commentsFolder, CommentCounters.STATUS_APPROVED);
+                pendingCommentCount = CommentCounters.get(commentsFolder, CommentCounters.STATUS_PENDING);
+            }
+
+            result.put(blogPostId, new EngagementStats(blogPostId, averageRating, ratingCount, likeCount, commentCount,
+                    pendingCommentCount));
+        }
+
+        if (initialised) {
+            try {
+                session.save();
+            } catch (InvalidItemStateException e) {
+                // A concurrent write initialised the same aggregates first, the values read are still valid
+                session.refresh(false);
+            }
+        }
+        return result;
+    }
+}
@@ -6,15 +6,23 @@ import org.jahia.services.content.JCRCallback;
 import org.jahia.services.content.JCRNodeWrapper;
 import org.jahia.services.content.JCRSessionWrapper;
 import org.jahia.services.content.JCRTemplate;
-import org.jahia.services.content.decorator.JCRSiteNode;
+import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Reference;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import javax.jcr.NodeIterator;
+import javax.jcr.InvalidItemStateException;
+import javax.jcr.ItemExistsException;
+import javax.jcr.ItemNotFoundException;
 import javax.jcr.RepositoryException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 /**
@@ -25,15 +33,97 @@ public class BlogLikeService {
 
     private static final Logger logger = LoggerFactory.getLogger(BlogLikeService.class);
 
+    static final String PROP_LIKE_COUNT = "likeCount";
+
+    private static final String LIKE_PREFIX = "l-";
+    private static final int MAX_SAVE_ATTEMPTS = 3;
+    private static final long DRAIN_TIMEOUT_MILLIS = 30000L;
+
+    @Reference
+    private BlogConfigurationService configurationService;
+
+    @Reference
+    private BlogPostResolver postResolver;
+
+    @Reference
+    private BlogMetrics metrics;
+
+    @Reference
+    private BlogTrendingService trendingService;
+
+    private LikeWriteBuffer writeBuffer;
+    private DedupFilters dedupFilters;
+
+    @Activate
+    protected void activate() {
+        dedupFilters = new DedupFilters("likes", configurationService);
+        writeBuffer = new LikeWriteBuffer(configurationService, this::persistBatch);
+        writeBuffer.start();
+    }
+
+    @Deactivate
+    protected void deactivate() {
+        writeBuffer.stop(DRAIN_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Submit a like for a blog post. When the like buffer is enabled the like is only queued and the result is
+     * provisional: {@link LikeResult#CODE_ACCEPTED}, or {@link LikeResult#CODE_QUEUE_FULL} when the buffer
+     * cannot take more likes. A like that turns out to be a duplicate of a persisted one is dropped at flush time.
+     * @param request The like request
+     * @return The like result
+     * @throws BlogServiceException if the like is persisted synchronously and the persistence fails
+     */
     public LikeResult submit(LikeRequest request) throws BlogServiceException {
+        long start = metrics.start();
+        String resultCode = BlogMetrics.RESULT_ERROR;
+        try {
+            LikeResult result = queueOrPersist(request);
+            resultCode = result.getCode();
+            return result;
+        } finally {
+            metrics.record(BlogMetrics.LIKE_SUBMIT, resultCode, start);
+        }
+    }
+
+    private LikeResult queueOrPersist(LikeRequest request) throws BlogServiceException {
+        if (configurationService.isLikeBufferEnabled()) {
+            String code = writeBuffer.offer(request);
+            if (LikeResult.CODE_QUEUE_FULL.equals(code)) {
+                logger.warn("Like buffer is full, rejected like for blogPost={}", request.getBlogPostId());
+            }
+            // No code when the buffer is stopping: the like is persisted right away instead of being stranded
+            if (code != null) {
+                return new LikeResult(LikeResult.CODE_ACCEPTED.equals(code), code);
+            }
+        }
+        return persist(request);
+    }
+
+    /**
+     * Persists a like with its own session, retrying when the save conflicts with a concurrent like
+     */
+    private LikeResult persist(LikeRequest request) throws BlogServiceException {
         try {
             if (logger.isInfoEnabled()) {
                 logger.info("Submitting like for blogPost={} clientHashPresent={} ipHashPresent={}",
                         request.getBlogPostId(),
                         StringUtils.isNotBlank(request.getClientHash()), StringUtils.isNotBlank(request.getIpHash()));
             }
-            return JCRTemplate.getInstance().doExecuteWithSystemSessionAsUser(null, Constants.LIVE_WORKSPACE,
-                    null, (JCRCallback<LikeResult>) session -> execute(session, request));
+            // The like counter lives on the likes folder, so concurrent likes on the same post conflict on save.
+            // Retry with a fresh session so the like is re-applied on top of the latest persisted state.
+            for (int attempt = 1; ; attempt++) {
+                try {
+                    return JCRTemplate.getInstance().doExecuteWithSystemSessionAsUser(null, Constants.LIVE_WORKSPACE,
+                            null, (JCRCallback<LikeResult>) session -> execute(session, request));
+                } catch (InvalidItemStateException | ItemExistsException e) {
+                    if (attempt >= MAX_SAVE_ATTEMPTS) {
+                        throw e;
+                    }
+                    logger.debug("Concurrent like update for blogPost={}, retrying (attempt {})",
+                            request.getBlogPostId(), attempt);
+                }
+            }
         } catch (RepositoryException e) {
             logger.error("Like persistence failed for blogPost={}", request.getBlogPostId(), e);
             throw new BlogServiceException("Unable to execute like persistence", e);
@@ -41,30 +131,334 @@ public class BlogLikeService {
     }
 
     private LikeResult execute(JCRSessionWrapper session, LikeRequest request) throws RepositoryException {
-        JCRNodeWrapper blogPost = session.getNodeByUUID(request.getBlogPostId());
+        List<Runnable> afterSave = new ArrayList<>(1);
+        LikeResult result = stage(session, request, afterSave, true);
+        if (!result.isSuccess()) {
+            return result;
+        }
+
+        try {
+            metrics.save(session, BlogMetrics.LIKE_SUBMIT);
+        } catch (ItemExistsException | InvalidItemStateException e) {
+            // A concurrent submission from the same client persisted the same node name first
+            session.refresh(false);
+            LikeFolders folders = openFolders(session, request.getBlogPostId());
+            if (isDuplicateLike(folders, request)) {
+                logger.info("Rejected concurrent duplicate like for blogPost={}", request.getBlogPostId());
+                return new LikeResult(false, LikeResult.CODE_ALREADY_LIKED, readLikeCount(folders.likesFolder));
+            }
+            throw e;
+        }
+        afterSave.forEach(Runnable::run);
+
+        if (logger.isInfoEnabled()) {
+            logger.info("Like persisted for blogPost={} likeCount={}", request.getBlogPostId(), result.getLikeCount());
+        }
+
+        return result;
+    }
+
+    /**
+     * Adds a like and its counter update to the session without saving it, so it can be persisted together with
+     * other interactions.
+     * @param afterSave Receives the actions to run once the session was saved
+     * @return the result the like will have once saved, or {@link LikeResult#CODE_ALREADY_LIKED} if nothing was staged
+     */
+    LikeResult stage(JCRSessionWrapper session, LikeRequest request, List<Runnable> afterSave) throws RepositoryException {
+        return stage(session, request, afterSave, false);
+    }
+
+    /**
+     * @param migrate Whether a legacy likes folder may be migrated, which saves the session; when false such a
+     *                folder is refused instead
+     */
+    private LikeResult stage(JCRSessionWrapper session, LikeRequest request, List<Runnable> afterSave,
+                             boolean migrate) throws RepositoryException {
+        LikeFolders folders = openFolders(session, request.getBlogPostId(), migrate);
+
+        if (isDuplicateLike(folders, request)) {
+            logger.info("Rejected duplicate like for blogPost={}", request.getBlogPostId());
+            return new LikeResult(false, LikeResult.CODE_ALREADY_LIKED, readLikeCount(folders.likesFolder));
+        }
+
+        JCRNodeWrapper likeNode = addLike(folders, request);
+        if (likeNode == null) {
+            logger.info("Rejected concurrent duplicate like for blogPost={}", request.getBlogPostId());
+            return new LikeResult(false, LikeResult.CODE_ALREADY_LIKED, readLikeCount(folders.likesFolder));
+        }
+        long likeCount = adjustLikeCount(folders.likesFolder, 1);
+        afterSave.add(() -> {
+            dedupFilters.saved(request.getBlogPostId(), folders.persistedCount, likeCount);
+            trendingService.record(folders.siteKey, request.getBlogPostId(), BlogTrendingService.Signal.LIKE, 1);
+        });
+        return new LikeResult(true, LikeResult.CODE_OK, likeCount);
+    }
+
+    /**
+     * Get the number of likes of a blog post, read from the counter maintained on its likes folder
+     * @param blogPostId The blog post UUID
+     * @return The like count
+     * @throws BlogServiceException if retrieval fails
+     */
+    public long getLikeCount(String blogPostId) throws BlogServiceException {
+        try {
+            return JCRTemplate.getInstance().doExecuteWithSystemSessionAsUser(null, Constants.LIVE_WORKSPACE,
+                    null, (JCRCallback<Long>) session -> {
+                        String basePath = postResolver.resolve(session, blogPostId).getLikesPath();
+                        JCRNodeWrapper likesFolder = postResolver.getExistingFolder(session, basePath);
+                        if (likesFolder == null) {
+                            return 0L;
+                        }
+                        boolean initialised = likesFolder.hasProperty(PROP_LIKE_COUNT);
+                        long count = readLikeCount(likesFolder);
+                        if (!initialised) {
+                            session.save();
+                        }
+                        return count;
+                    });
+        } catch (RepositoryException e) {
+            logger.error("Failed to retrieve like count for blogPost={}", blogPostId, e);
+            throw new BlogServiceException("Unable to retrieve like count", e);
+        }
+    }
+
+    /**
+     * Recount the likes of a blog post and store the result as its counter.
+     * Meant as a repair path when the counter is suspected to have drifted.
+     * @param blogPostId The blog post UUID
+     * @return The like count after the rebuild
+     * @throws BlogServiceException if the rebuild fails
+     */
+    public long rebuildLikeCount(String blogPostId) throws BlogServiceException {
+        try {
+            return JCRTemplate.getInstance().doExecuteWithSystemSessionAsUser(null, Constants.LIVE_WORKSPACE,
+                    null, (JCRCallback<Long>) session -> {
+                        String basePath = postResolver.resolve(session, blogPostId).getLikesPath();
+                        JCRNodeWrapper likesFolder = postResolver.getExistingFolder(session, basePath);
+                        if (likesFolder == null) {
+                            return 0L;
+                        }
+                        long count = countLikes(likesFolder);
+                        session.save();
+                        logger.info("Rebuilt like counter for blogPost={} count={}", blogPostId, count);
+                        return count;
+                    });
+        } catch (RepositoryException e) {
+            logger.error("Failed to rebuild like count for blogPost={}", blogPostId, e);
+            throw new BlogServiceException("Unable to rebuild like count", e);
+        }
+    }
+
+    /**
+     * Persists a batch of buffered likes in one session with a single save. If the group commit conflicts with
+     * a concurrent write, the session is reset and the likes are persisted one by one; if the group commit fails
+     * altogether, each like is persisted with its own session, so one faulty like does not drop the batch.
+     */
+    private void persistBatch(List<LikeRequest> batch) throws RepositoryException {
+        Map<String, List<LikeRequest>> byPost = new LinkedHashMap<>();
+        for (LikeRequest request : batch) {
+            byPost.computeIfAbsent(request.getBlogPostId(), id -> new ArrayList<>()).add(request);
+        }
+
+        long start = metrics.start();
+        String resultCode = BlogMetrics.RESULT_ERROR;
+        try {
+            flush(batch, byPost);
+            resultCode = BlogMetrics.RESULT_OK;
+        } catch (RepositoryException e) {
+            logger.warn("Group commit of {} buffered likes failed, persisting them one at a time", batch.size(), e);
+            persistDirectly(batch);
+        } finally {
+            metrics.record(BlogMetrics.LIKE_FLUSH, resultCode, start);
+        }
+    }
 
-        JCRSiteNode site = blogPost.getResolveSite();
-        if (site == null) {
-            throw new RepositoryException("Unable to resolve site for blog post " + request.getBlogPostId());
+    private void persistDirectly(List<LikeRequest> batch) {
+        for (LikeRequest request : batch) {
+            try {
+                persist(request);
+            } catch (BlogServiceException e) {
+                logger.error("Dropping buffered like for blogPost={}", request.getBlogPostId(), e);
+            }
         }
+    }
+
+    private void flush(List<LikeRequest> batch, Map<String, List<LikeRequest>> byPost) throws RepositoryException {
+        // Legacy folders are migrated beforehand in their own sessions, as the migration saves as it goes and would
+        // persist the likes staged for the previous posts outside of the conflict handling
+        for (String blogPostId : byPost.keySet()) {
+            try {
+                migrateFolder(blogPostId);
+            } catch (ItemNotFoundException e) {
+                // Reported when its likes are dropped below
+            }
+        }
+        JCRTemplate.getInstance().doExecuteWithSystemSessionAsUser(null, Constants.LIVE_WORKSPACE,
+                null, (JCRCallback<Void>) session -> {
+                    int persisted = 0;
+                    List<LikeFolders> touched = new ArrayList<>(byPost.size());
+                    for (Map.Entry<String, List<LikeRequest>> entry : byPost.entrySet()) {
+                        LikeFolders folders;
+                        try {
+                            folders = openFolders(session, entry.getKey(), false);
+                        } catch (ItemNotFoundException e) {
+                            logger.warn("Dropping {} buffered likes for missing blogPost={}", entry.getValue().size(), entry.getKey());
+                            continue;
+                        }
+                        touched.add(folders);
+                        for (LikeRequest request : entry.getValue()) {
+                            if (!isDuplicateLike(folders, request) && addLike(folders, request) != null) {
+                                adjustLikeCount(folders.likesFolder, 1);
+                                persisted++;
+                            }
+                        }
+                    }
+
+                    try {
+                        metrics.save(session, BlogMetrics.LIKE_FLUSH);
+                        for (LikeFolders folders : touched) {
+                            long likeCount = readLikeCount(folders.likesFolder);
+                            dedupFilters.saved(folders.blogPostId, folders.persistedCount, likeCount);
+                            trendingService.record(folders.siteKey, folders.blogPostId, BlogTrendingService.Signal.LIKE,
+                                    (int) (likeCount - folders.persistedCount));
+                        }
+                    } catch (ItemExistsException | InvalidItemStateException e) {
+                        logger.info("Group commit of {} likes conflicted with a concurrent write, persisting them one by one",
+                                batch.size());
+                        session.refresh(false);
+                        persistOneByOne(session, batch);
+                        return null;
+                    }
 
-        String basePath = "/sites/" + site.getName() + "/contents/ugc/blogs/" + request.getBlogPostId() + "/likes";
+                    if (logger.isInfoEnabled()) {
+                        logger.info("Flushed {} buffered likes on {} posts, {} persisted", batch.size(), byPost.size(), persisted);
+                    }
+                    return null;
+                });
+    }
+
+    private void persistOneByOne(JCRSessionWrapper session, List<LikeRequest> batch) {
+        for (LikeRequest request : batch) {
+            try {
+                execute(session, request);
+            } catch (RepositoryException e) {
+                logger.error("Unable to persist buffered like for blogPost={}", request.getBlogPostId(), e);
+                try {
+                    session.refresh(false);
+                } catch (RepositoryException refreshError) {
+                    logger.debug("Unable to reset session after failed like", refreshError);
+                }
+            }
+        }
+    }
+
+    /**
+     * Migrates the likes folder of a post to the keyed layout in a session of its own. The migration saves page by
+     * page, so it must be done before {@link #stage} is called on a session that holds other changes.
+     * @throws ItemNotFoundException if the blog post does not exist
+     */
+    void migrateFolder(String blogPostId) throws RepositoryException {
+        JCRTemplate.getInstance().doExecuteWithSystemSessionAsUser(null, Constants.LIVE_WORKSPACE, null,
+                (JCRCallback<Void>) session -> {
+                    String basePath = postResolver.resolve(session, blogPostId).getLikesPath();
+                    JCRNodeWrapper likesFolder = postResolver.getExistingFolder(session, basePath);
+                    if (likesFolder != null && KeyedUgcNodes.needsMigration(likesFolder)) {
+                        openFolders(session, blogPostId);
+                        session.save();
+                    }
+                    return null;
+                });
+    }
+
+    private LikeFolders openFolders(JCRSessionWrapper session, String blogPostId) throws RepositoryException {
+        return openFolders(session, blogPostId, true);
+    }
+
+    /**
+     * @param migrate Whether a legacy likes folder may be migrated, which saves the session; when false such a
+     *                folder is refused instead
+     */
+    private LikeFolders openFolders(JCRSessionWrapper session, String blogPostId, boolean migrate)
+            throws RepositoryException {
+        BlogPostResolver.PostLocation location = postResolver.resolve(session, blogPostId);
+        String basePath = location.getLikesPath();
         if (logger.isDebugEnabled()) {
             logger.debug("Using likes base path {}", basePath);
         }
-        JCRNodeWrapper likesFolder = getOrCreateLikesFolder(session, basePath);
+        UgcFolderLayout layout = configurationService.getUgcFolderLayout();
+        JCRNodeWrapper likesFolder = postResolver.getOrCreateFolder(session, basePath, "jsblognt:likesFolder");
+        JCRNodeWrapper ipIndex = postResolver.getOrCreateFolder(session, location.getLikesIndexPath(), KeyedUgcNodes.INDEX_FOLDER_TYPE);
         if (logger.isDebugEnabled()) {
             logger.debug("Likes folder primary type={} mixins={}", likesFolder.getPrimaryNodeTypeName(),
                     Arrays.toString(likesFolder.getMixinNodeTypes()));
         }
 
-        if (isDuplicateLike(likesFolder, request)) {
-            logger.info("Rejected duplicate like for blogPost={}", request.getBlogPostId());
-            return new LikeResult(false, LikeResult.CODE_ALREADY_LIKED);
+        boolean legacy = KeyedUgcNodes.needsMigration(likesFolder);
+        if (legacy && !migrate) {
+            throw new InvalidItemStateException("Likes folder " + basePath + " is not migrated to the keyed layout");
+        }
+        if (legacy
+                && KeyedUgcNodes.migrate(session, likesFolder, ipIndex, LIKE_PREFIX, "jsblognt:like", layout,
+                configurationService.getUgcMigrationBatchSize()) > 0) {
+            // Duplicate likes were dropped by the migration, the counter no longer matches
+            countLikes(likesFolder);
         }
+        // Make sure the counter is initialised before any like is added to the session
+        long persistedCount = readLikeCount(likesFolder);
+        return new LikeFolders(blogPostId, location.getSiteKey(), likesFolder, ipIndex, layout, persistedCount);
+    }
 
-        String likeNodeName = "l-" + UUID.randomUUID();
-        JCRNodeWrapper likeNode = likesFolder.addNode(likeNodeName, "jsblognt:like");
+    /**
+     * Reads the like counter of a likes folder. Folders created before the counter existed are counted once;
+     * the caller is responsible for saving the session.
+     */
+    static long readLikeCount(JCRNodeWrapper likesFolder) throws RepositoryException {
+        if (!likesFolder.hasProperty(PROP_LIKE_COUNT)) {
+            logger.info("Initialising like counter for {}", likesFolder.getPath());
+            return countLikes(likesFolder);
+        }
+        return likesFolder.getProperty(PROP_LIKE_COUNT).getLong();
+    }
+
+    /**
+     * Recounts the like nodes of a folder and stores the result as its counter. The caller is responsible for
+     * saving the session.
+     */
+    static long countLikes(JCRNodeWrapper likesFolder) throws RepositoryException {
+        long count = 0;
+        UgcNodeIterator iterator = new UgcNodeIterator(likesFolder, "jsblognt:like");
+        while (iterator.hasNext()) {
+            iterator.next();
+            count++;
+        }
+        likesFolder.setProperty(PROP_LIKE_COUNT, count);
+        return count;
+    }
+
+    /**
+     * Adds a delta to the like counter of a folder. The caller is responsible for saving the session.
+     */
+    static long adjustLikeCount(JCRNodeWrapper likesFolder, long delta) throws RepositoryException {
+        long count = Math.max(0L, readLikeCount(likesFolder) + delta);
+        likesFolder.setProperty(PROP_LIKE_COUNT, count);
+        return count;
+    }
+
+    /**
+     * Adds the like node and its IP index entry to the session, without saving.
+     * @return the like node, or null if a node with the same keyed name already exists
+     */
+    private JCRNodeWrapper addLike(LikeFolders folders, LikeRequest request) throws RepositoryException {
+        String likeNodeName = KeyedUgcNodes.nodeName(LIKE_PREFIX, request.getClientHash(), request.getIpHash());
+        if (likeNodeName == null) {
+            likeNodeName = LIKE_PREFIX + UUID.randomUUID();
+        }
+        JCRNodeWrapper likeNode;
+        try {
+            likeNode = KeyedUgcNodes.add(folders.likesFolder, folders.layout, likeNodeName, "jsblognt:like");
+        } catch (ItemExistsException e) {
+            return null;
+        }
 
         likeNode.setProperty("blogPostId", request.getBlogPostId());
 
@@ -85,60 +479,59 @@ public class BlogLikeService {
             likeNode.setProperty("ts", timestamp);
         }
 
-        session.save();
-        
-        if (logger.isInfoEnabled()) {
-            logger.info("Like persisted for blogPost={} node={}", request.getBlogPostId(), likeNode.getPath());
-        }
-        
-        return new LikeResult(true, LikeResult.CODE_OK);
+        KeyedUgcNodes.index(folders.ipIndex, folders.layout, request.getIpHash(), likeNodeName);
+        dedupFilters.added(folders.blogPostId, request.getClientHash(), request.getIpHash());
+        return likeNode;
     }
 
-    private boolean isDuplicateLike(JCRNodeWrapper likesFolder, LikeRequest request) throws RepositoryException {
-        if (!likesFolder.hasNodes()) {
+    /**
+     * Checks the dedup filter of the post first, and only looks the like up in the repository on a possible match
+     */
+    private boolean isDuplicateLike(LikeFolders folders, LikeRequest request) throws RepositoryException {
+        if (dedupFilters.isDefinitelyNew(folders.blogPostId, folders.persistedCount,
+                sink -> KeyedUgcNodes.collectKeys(folders.likesFolder, LIKE_PREFIX, "jsblognt:like", sink),
+                request.getClientHash(), request.getIpHash())) {
             return false;
         }
+        boolean found = KeyedUgcNodes.find(folders.likesFolder, folders.ipIndex, LIKE_PREFIX, request.getClientHash(),
+                request.getIpHash()) != null;
+        dedupFilters.recordLookup(found);
+        return found;
+    }
 
-        NodeIterator nodes = likesFolder.getNodes();
-        while (nodes.hasNext()) {
-            JCRNodeWrapper like = (JCRNodeWrapper) nodes.nextNode();
-            if (StringUtils.isNotBlank(request.getClientHash()) && like.hasProperty("clientHash")
-                    && request.getClientHash().equals(like.getProperty("clientHash").getString())) {
-                return true;
-            }
-            if (StringUtils.isNotBlank(request.getIpHash()) && like.hasProperty("ipHash")
-                    && request.getIpHash().equals(like.getProperty("ipHash").getString())) {
-                return true;
-            }
-        }
-        return false;
+    /**
+     * @return the statistics of the per-post filters that short-circuit the duplicate like check
+     */
+    public DedupFilterStats getDedupFilterStats() {
+        return dedupFilters.getStats();
     }
 
-    private JCRNodeWrapper getOrCreateLikesFolder(JCRSessionWrapper session, String basePath) throws RepositoryException {
-        if (session.nodeExists(basePath)) {
-            return session.getNode(basePath);
-        }
+    /**
+     * Drops the dedup filter of a post whose likes were changed by another cluster node, so it is rebuilt on next use
+     */
+    void invalidateDedupFilter(String blogPostId) {
+        dedupFilters.invalidate(blogPostId);
+    }
 
-        String[] segments = StringUtils.split(basePath, '/');
-        JCRNodeWrapper current = session.getRootNode();
-        for (int i = 0; i < segments.length; i++) {
-            String segment = segments[i];
-            if (StringUtils.isBlank(segment)) {
-                continue;
-            }
-            if (current.hasNode(segment)) {
-                current = current.getNode(segment);
-            } else {
-                String nodeType = (i == segments.length - 1) ? "jsblognt:likesFolder" : "jnt:contentFolder";
-                if (logger.isDebugEnabled()) {
-                    logger.debug("Creating node {} of type {} under {}", segment, nodeType, current.getPath());
-                }
-                current = current.addNode(segment, nodeType);
-            }
-        }
-        if (logger.isInfoEnabled()) {
-            logger.info("Created likes folder structure at {}", current.getPath());
+    /**
+     * Likes folder of a post with its IP hash index and the like count it had when opened
+     */
+    private static final class LikeFolders {
+        private final String blogPostId;
+        private final String siteKey;
+        private final JCRNodeWrapper likesFolder;
+        private final JCRNodeWrapper ipIndex;
+        private final UgcFolderLayout layout;
+        private final long persistedCount;
+
+        private LikeFolders(String blogPostId, String siteKey, JCRNodeWrapper likesFolder, JCRNodeWrapper ipIndex,
+                            UgcFolderLayout layout, long persistedCount) {
+            this.blogPostId = blogPostId;
+            this.siteKey = siteKey;
+            this.likesFolder = likesFolder;
+            this.ipIndex = ipIndex;
+            this.layout = layout;
+            this.persistedCount = persistedCount;
         }
-        return current;
     }
 }
@@ -0,0 +1,177 @@
+package org.jahia.se.modules.blogservice.services;
+
+import org.jahia.se.modules.blogservice.util.LatencyHistogram;
+import org.jahia.services.content.JCRSessionWrapper;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.jcr.InvalidItemStateException;
+import javax.jcr.ItemExistsException;
+import javax.jcr.RepositoryException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Call counts per result code and latency histograms of the blog service operations. Recording only touches
+ * striped counters, so it can stay enabled under load. The metrics are exposed over JMX as
+ * {@value #OBJECT_NAME} and through the {@code blog.metrics} GraphQL query.
+ */
+@Component(service = BlogMetrics.class, immediate = true)
+public class BlogMetrics implements BlogMetricsMXBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(BlogMetrics.class);
+
+    public static final String OBJECT_NAME = "org.jahia.se.modules.blogservice:type=BlogMetrics";
+
+    public static final String COMMENT_SUBMIT = "comment.submit";
+    public static final String COMMENT_GET = "comment.getComments";
+    public static final String COMMENT_UPDATE_STATUS = "comment.updateStatus";
+    public static final String COMMENT_DELETE = "comment.delete";
+    public static final String COMMENT_BATCH = "comment.batch";
+    public static final String LIKE_SUBMIT = "like.submit";
+    public static final String LIKE_FLUSH = "like.flush";
+    public static final String RATING_SUBMIT = "rating.submit";
+    public static final String RATING_GET = "rating.getRatingStats";
+    public static final String ENGAGEMENT_GET = "engagement.get";
+    public static final String ENGAGEMENT_SUBMIT = "engagement.submit";
+    public static final String TRENDING_GET = "trending.get";
+    public static final String UGC_INVALIDATE = "ugc.invalidate";
+    public static final String ENGAGEMENT_PROPERTIES = "engagement.properties";
+    public static final String UGC_EXPORT = "ugc.export";
+
+    public static final String RESULT_OK = "OK";
+    public static final String RESULT_ERROR = "ERROR";
+    public static final String RESULT_NOT_FOUND = "NOT_FOUND";
+    public static final String RESULT_CACHE_HIT = "CACHE_HIT";
+    public static final String RESULT_CONFLICT = "CONFLICT";
+    public static final String RESULT_RATE_LIMITED = "RATE_LIMITED";
+    public static final String RESULT_REJECTED = "REJECTED";
+
+    private static final String SAVE_SUFFIX = ".save";
+
+    private final Map<String, OperationMetrics> operations = new ConcurrentHashMap<>();
+    private ObjectName objectName;
+
+    @Activate
+    protected void activate() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            objectName = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(objectName)) {
+                // Left behind by a previous instance of the bundle that did not stop cleanly
+                server.unregisterMBean(objectName);
+            }
+            server.registerMBean(this, objectName);
+        } catch (JMException e) {
+            logger.warn("Unable to register blog metrics over JMX", e);
+            objectName = null;
+        }
+    }
+
+    @Deactivate
+    protected void deactivate() {
+        if (objectName == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (JMException e) {
+            logger.warn("Unable to unregister blog metrics from JMX", e);
+        }
+    }
+
+    /**
+     * @return the start time to pass to {@link #record(String, String, long)}
+     */
+    public long start() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Records one call of an operation
+     * @param operation The operation name, one of the constants of this class
+     * @param result The result code of the call
+     * @param startNanos The value returned by {@link #start()} when the call began
+     */
+    public void record(String operation, String result, long startNanos) {
+        OperationMetrics metrics = operations.get(operation);
+        if (metrics == null) {
+            metrics = operations.computeIfAbsent(operation, name -> new OperationMetrics());
+        }
+        metrics.record(result, System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Saves a session and records the save as {@code <operation>.save}, with a CONFLICT result when the save
+     * lost a race with a concurrent writer
+     */
+    public void save(JCRSessionWrapper session, String operation) throws RepositoryException {
+        long start = start();
+        String result = RESULT_ERROR;
+        try {
+            session.save();
+            result = RESULT_OK;
+        } catch (InvalidItemStateException | ItemExistsException e) {
+            result = RESULT_CONFLICT;
+            throw e;
+        } finally {
+            record(operation + SAVE_SUFFIX, result, start);
+        }
+    }
+
+    @Override
+    public List<OperationStats> getOperations() {
+        List<OperationStats> stats = new ArrayList<>();
+        new TreeMap<>(operations).forEach((name, metrics) -> stats.add(metrics.toStats(name)));
+        return stats;
+    }
+
+    @Override
+    public void reset() {
+        operations.values().forEach(OperationMetrics::reset);
+    }
+
+    private static long toMicros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+
+    private static final class OperationMetrics {
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final Map<String, LongAdder> results = new ConcurrentHashMap<>();
+
+        void record(String result, long nanos) {
+            latency.record(nanos);
+            LongAdder counter = results.get(result);
+            if (counter == null) {
+                counter = results.computeIfAbsent(result, code -> new LongAdder());
+            }
+            counter.increment();
+        }
+
+        void reset() {
+            latency.reset();
+            results.values().forEach(LongAdder::reset);
+        }
+
+        OperationStats toStats(String name) {
+            LatencyHistogram.Snapshot snapshot = latency.snapshot();
+            Map<String, Long> counts = new TreeMap<>();
+            results.forEach((code, counter) -> counts.put(code, counter.sum()));
+            return new OperationStats(name, snapshot.getCount(), snapshot.getMean() / 1000.0,
+                    toMicros(snapshot.getPercentile(50)), toMicros(snapshot.getPercentile(90)),
+                    toMicros(snapshot.getPercentile(99)), toMicros(snapshot.getMax()), counts);
+        }
+    }
+}
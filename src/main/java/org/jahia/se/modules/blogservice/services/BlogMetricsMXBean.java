@@ -0,0 +1,13 @@
+package org.jahia.se.modules.blogservice.services;
+
+import java.util.List;
+
+/**
+ * JMX view of the blog service metrics, registered as {@value BlogMetrics#OBJECT_NAME}
+ */
+public interface BlogMetricsMXBean {
+
+    List<OperationStats> getOperations();
+
+    void reset();
+}
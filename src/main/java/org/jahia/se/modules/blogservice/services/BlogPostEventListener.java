@@ -0,0 +1,71 @@
+package org.jahia.se.modules.blogservice.services;
+
+import org.jahia.api.Constants;
+import org.jahia.services.content.DefaultEventListener;
+import org.jahia.services.content.ExternalEventListener;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.jcr.RepositoryException;
+import javax.jcr.observation.Event;
+import javax.jcr.observation.EventIterator;
+import java.util.regex.Pattern;
+
+/**
+ * Listens to node removals and moves below {@code /sites} in LIVE and drops the matching entries of the
+ * {@link BlogPostResolver} caches, so a moved, unpublished or deleted post is resolved again on next use.
+ * Removed posts are also dropped from the trending ranking. Events of the other cluster nodes are received as well.
+ * Events below the UGC folders are ignored: they are not posts, and a removed UGC folder is forgotten by the
+ * resolver on its next lookup.
+ */
+@Component(service = DefaultEventListener.class, immediate = true)
+public class BlogPostEventListener extends DefaultEventListener implements ExternalEventListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(BlogPostEventListener.class);
+
+    private static final Pattern UGC_PATH = Pattern.compile("^/sites/[^/]+/contents/ugc(?:/|$)");
+
+    @Reference
+    private BlogPostResolver postResolver;
+
+    @Reference
+    private BlogTrendingService trendingService;
+
+    public BlogPostEventListener() {
+        setWorkspace(Constants.LIVE_WORKSPACE);
+    }
+
+    @Override
+    public int getEventTypes() {
+        return Event.NODE_REMOVED | Event.NODE_MOVED;
+    }
+
+    @Override
+    public String getPath() {
+        return "/sites";
+    }
+
+    @Override
+    public void onEvent(EventIterator events) {
+        while (events.hasNext()) {
+            Event event = events.nextEvent();
+            try {
+                if (UGC_PATH.matcher(event.getPath()).find()) {
+                    continue;
+                }
+                if (event.getType() == Event.NODE_MOVED) {
+                    Object source = event.getInfo().get("srcAbsPath");
+                    postResolver.invalidate(event.getIdentifier(), source != null ? source.toString() : null);
+                } else {
+                    postResolver.invalidate(event.getIdentifier(), event.getPath());
+                    trendingService.remove(event.getIdentifier());
+                }
+            } catch (RepositoryException e) {
+                logger.warn("Unable to process event {}, clearing blog post caches", event, e);
+                postResolver.invalidateAll();
+            }
+        }
+    }
+}
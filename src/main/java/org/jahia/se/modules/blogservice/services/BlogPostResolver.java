@@ -0,0 +1,242 @@
+package org.jahia.se.modules.blogservice.services;
+
+import org.jahia.api.Constants;
+import org.jahia.services.content.JCRCallback;
+import org.jahia.services.content.JCRNodeWrapper;
+import org.jahia.services.content.JCRSessionWrapper;
+import org.jahia.services.content.JCRTemplate;
+import org.jahia.services.content.decorator.JCRSiteNode;
+import org.jahia.se.modules.blogservice.util.WeightedLruCache;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.jcr.ItemNotFoundException;
+import javax.jcr.PathNotFoundException;
+import javax.jcr.RepositoryException;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resolves a blog post UUID to its site and UGC folder paths, and remembers which UGC folders already exist.
+ * Both caches are bounded; entries are dropped by {@link BlogPostEventListener} when a post or one of its
+ * ancestors is moved or removed, and expire after an hour as a safety net. Cached posts are also indexed by path,
+ * so removing a subtree only touches the posts below it instead of scanning the cache.
+ */
+@Component(service = BlogPostResolver.class, immediate = true)
+public class BlogPostResolver {
+
+    private static final Logger logger = LoggerFactory.getLogger(BlogPostResolver.class);
+
+    private static final long TTL_MILLIS = TimeUnit.HOURS.toMillis(1);
+    private static final int FOLDERS_PER_POST = 5;
+    private static final String[] UGC_FOLDER_NAMES = {"comments", "likes", "likesByIp", "ratings", "ratingsByIp"};
+
+    @Reference
+    private BlogConfigurationService configurationService;
+
+    private final WeightedLruCache<String, PostLocation> locations = new WeightedLruCache<>(0, 0, location -> 1L);
+    private final WeightedLruCache<String, Boolean> knownFolders = new WeightedLruCache<>(0, 0, known -> 1L);
+    /** Post node path to post UUID of the resolved posts; may keep posts evicted from the cache until trimmed */
+    private final NavigableMap<String, String> postsByPath = new ConcurrentSkipListMap<>();
+
+    /**
+     * Resolves the location of a blog post, loading it from the repository on a cache miss
+     * @param session The session used on a cache miss
+     * @param blogPostId The UUID of the blog post
+     * @return The site and UGC paths of the post
+     * @throws RepositoryException if the post does not exist or is not part of a site
+     */
+    public PostLocation resolve(JCRSessionWrapper session, String blogPostId) throws RepositoryException {
+        applyLimits();
+        PostLocation location = locations.get(blogPostId);
+        if (location != null) {
+            return location;
+        }
+
+        long loadToken = locations.loadToken();
+        JCRNodeWrapper blogPost = session.getNodeByUUID(blogPostId);
+        JCRSiteNode site = blogPost.getResolveSite();
+        if (site == null) {
+            logger.error("Unable to resolve site for blog post {}", blogPostId);
+            throw new RepositoryException("Unable to resolve site for blog post " + blogPostId);
+        }
+        location = new PostLocation(blogPostId, site.getName(), blogPost.getPath());
+        locations.putIfNotInvalidated(blogPostId, location, loadToken);
+        postsByPath.put(location.getPostNodePath(), blogPostId);
+        return location;
+    }
+
+    /**
+     * Resolves the site of a blog post in LIVE, for the permission checks made before calling a service
+     * @param blogPostId The UUID of the blog post
+     * @return The site key, or null if the post does not exist
+     * @throws BlogServiceException if the post is not part of a site or the session fails
+     */
+    public String getSiteKey(String blogPostId) throws BlogServiceException {
+        try {
+            return JCRTemplate.getInstance().doExecuteWithSystemSessionAsUser(null, Constants.LIVE_WORKSPACE, null,
+                    (JCRCallback<String>) session -> {
+                        try {
+                            return resolve(session, blogPostId).getSiteKey();
+                        } catch (ItemNotFoundException e) {
+                            return null;
+                        }
+                    });
+        } catch (RepositoryException e) {
+            throw new BlogServiceException("Unable to resolve the site of blog post " + blogPostId, e);
+        }
+    }
+
+    /**
+     * Returns a UGC folder, creating it and its missing ancestors when needed. Folders already seen in the
+     * repository are fetched directly, without an existence check.
+     */
+    JCRNodeWrapper getOrCreateFolder(JCRSessionWrapper session, String path, String folderType) throws RepositoryException {
+        JCRNodeWrapper folder = getExistingFolder(session, path);
+        return folder != null ? folder : UgcFolders.getOrCreateFolder(session, path, folderType);
+    }
+
+    /**
+     * Returns a UGC folder if it exists in the repository, null otherwise.
+     */
+    JCRNodeWrapper getExistingFolder(JCRSessionWrapper session, String path) throws RepositoryException {
+        applyLimits();
+        if (knownFolders.get(path) != null) {
+            try {
+                return session.getNode(path);
+            } catch (PathNotFoundException e) {
+                knownFolders.invalidate(path);
+            }
+        }
+        // Only folders found in the repository are remembered: a folder created by a session that is
+        // not saved yet may never exist
+        long loadToken = knownFolders.loadToken();
+        if (!session.nodeExists(path)) {
+            return null;
+        }
+        knownFolders.putIfNotInvalidated(path, Boolean.TRUE, loadToken);
+        return session.getNode(path);
+    }
+
+    /**
+     * Drops the cached location of a removed or moved node: the post itself when the identifier is a post, and
+     * every post at or below the path, found through the path index.
+     */
+    void invalidate(String identifier, String path) {
+        if (identifier != null) {
+            locations.invalidate(identifier);
+        }
+        if (path != null) {
+            String blogPostId = postsByPath.remove(path);
+            if (blogPostId != null) {
+                locations.invalidate(blogPostId);
+            }
+            // Keys below the path sort between "<path>/" and "<path>0", '0' being the character after '/'
+            Map<String, String> below = postsByPath.subMap(path + "/", path + "0");
+            for (String id : below.values()) {
+                locations.invalidate(id);
+            }
+            below.clear();
+        }
+    }
+
+    /**
+     * Forgets the UGC folders of a post whose UGC folder was removed
+     */
+    void invalidateUgcFolder(String ugcPath) {
+        knownFolders.invalidate(ugcPath);
+        for (String folderName : UGC_FOLDER_NAMES) {
+            knownFolders.invalidate(ugcPath + "/" + folderName);
+        }
+    }
+
+    void invalidateAll() {
+        locations.invalidateAll();
+        knownFolders.invalidateAll();
+        postsByPath.clear();
+    }
+
+    private void applyLimits() {
+        int size = configurationService.getPostCacheSize();
+        locations.setLimits(size, TTL_MILLIS);
+        knownFolders.setLimits((long) size * FOLDERS_PER_POST, TTL_MILLIS);
+        if (postsByPath.size() > 2L * size) {
+            // Rebuilt from the cache, which dropped the evicted and expired posts
+            postsByPath.clear();
+            locations.forEachValue(location -> postsByPath.put(location.getPostNodePath(), location.getBlogPostId()));
+        }
+    }
+
+    /**
+     * Site and UGC folder paths of a blog post
+     */
+    public static final class PostLocation {
+        private final String blogPostId;
+        private final String siteKey;
+        private final String postNodePath;
+        private final String ugcPath;
+        private final String commentsPath;
+        private final String likesPath;
+        private final String likesIndexPath;
+        private final String ratingsPath;
+        private final String ratingsIndexPath;
+
+        PostLocation(String blogPostId, String siteKey, String postNodePath) {
+            this.blogPostId = blogPostId;
+            this.siteKey = siteKey;
+            this.postNodePath = postNodePath;
+            this.ugcPath = "/sites/" + siteKey + "/contents/ugc/blogs/" + blogPostId;
+            this.commentsPath = ugcPath + "/comments";
+            this.likesPath = ugcPath + "/likes";
+            this.likesIndexPath = ugcPath + "/likesByIp";
+            this.ratingsPath = ugcPath + "/ratings";
+            this.ratingsIndexPath = ugcPath + "/ratingsByIp";
+        }
+
+        public String getBlogPostId() {
+            return blogPostId;
+        }
+
+        public String getSiteKey() {
+            return siteKey;
+        }
+
+        /**
+         * @return The path of the blog post node itself
+         */
+        public String getPostNodePath() {
+            return postNodePath;
+        }
+
+        /**
+         * @return The path of the UGC folder of the post, {@code /sites/<site>/contents/ugc/blogs/<postId>}
+         */
+        public String getUgcPath() {
+            return ugcPath;
+        }
+
+        public String getCommentsPath() {
+            return commentsPath;
+        }
+
+        public String getLikesPath() {
+            return likesPath;
+        }
+
+        public String getLikesIndexPath() {
+            return likesIndexPath;
+        }
+
+        public String getRatingsPath() {
+            return ratingsPath;
+        }
+
+        public String getRatingsIndexPath() {
+            return ratingsIndexPath;
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package org.jahia.se.modules.blogservice.services;
+
+import org.apache.commons.lang3.StringUtils;
+import org.jahia.se.modules.blogservice.util.HashUtils;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-client throttling of the public blog mutations. Each client identifier and each truncated IP gets, per
+ * operation, a token bucket holding the configured number of calls per minute and refilled continuously. Buckets
+ * are tracked with the generic cell rate algorithm: a bucket is a single {@link AtomicLong} holding the time at
+ * which it will be full again, updated with a compare-and-set, so concurrent calls never block each other.
+ * <p>
+ * A full bucket carries no information, so idle buckets are swept once a minute. Reaching the configured maximum
+ * number of tracked buckets does not sweep any sooner, so that a flood of distinct keys cannot force a scan per
+ * call: new buckets are refused until the next sweep. The IP bucket is checked first, so a client rotating
+ * its identifier is held by the budget of its IP and never creates a bucket for a refused call. Once the maximum is
+ * reached, a client that cannot be tracked is only limited by its IP, and a call whose IP cannot be tracked
+ * either is refused.
+ */
+@Component(service = BlogRateLimiter.class, immediate = true)
+public class BlogRateLimiter {
+
+    private static final Logger logger = LoggerFactory.getLogger(BlogRateLimiter.class);
+
+    private static final long WINDOW_NANOS = TimeUnit.MINUTES.toNanos(1);
+    private static final long SWEEP_INTERVAL_NANOS = TimeUnit.MINUTES.toNanos(1);
+    private static final String KEY_SALT = "rate-limit";
+    /** Returned by {@link #take} when the bucket does not exist and the limiter is full */
+    private static final long UNTRACKED = -1L;
+
+    /**
+     * The rate-limited operations, each with its own budget
+     */
+    public enum Operation {
+        COMMENT("c:", BlogMetrics.COMMENT_SUBMIT),
+        LIKE("l:", BlogMetrics.LIKE_SUBMIT),
+        RATING("r:", BlogMetrics.RATING_SUBMIT);
+
+        private final String prefix;
+        private final String metric;
+
+        Operation(String prefix, String metric) {
+            this.prefix = prefix;
+            this.metric = metric;
+        }
+    }
+
+    @Reference
+    private BlogConfigurationService configurationService;
+
+    @Reference
+    private BlogMetrics metrics;
+
+    private final Map<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+    private final AtomicBoolean sweeping = new AtomicBoolean();
+    private final AtomicLong nextSweep = new AtomicLong(System.nanoTime() + SWEEP_INTERVAL_NANOS);
+
+    /**
+     * Takes a token from the buckets of the IP and of the client. Nothing is taken when either bucket is empty.
+     * @param operation The operation being called
+     * @param clientIdentifier The raw client identifier, or null if the client sent none
+     * @param truncatedIp The truncated IP of the client, or null if unknown
+     * @return 0 if the call is allowed, otherwise the number of milliseconds after which it would be
+     */
+    public long acquire(Operation operation, String clientIdentifier, String truncatedIp) {
+        if (!configurationService.isRateLimitEnabled()) {
+            return 0;
+        }
+        int perMinute = configurationService.getRateLimitPerMinute(operation);
+        if (perMinute <= 0) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        sweepIfDue(now);
+
+        long interval = WINDOW_NANOS / perMinute;
+        String ipKey = null;
+        long ipInterval = 0;
+        long wait = 0;
+        if (StringUtils.isNotBlank(truncatedIp)) {
+            int ipPerMinute = perMinute * configurationService.getRateLimitIpFactor();
+            ipInterval = WINDOW_NANOS / ipPerMinute;
+            ipKey = key(operation, truncatedIp);
+            wait = take(ipKey, now, ipInterval, ipInterval * ipPerMinute);
+            if (wait == UNTRACKED) {
+                // Neither the IP nor, as the limiter is full, a new client could be accounted for
+                wait = ipInterval;
+            }
+        }
+        if (wait == 0 && StringUtils.isNotBlank(clientIdentifier)) {
+            wait = take(key(operation, clientIdentifier), now, interval, interval * perMinute);
+            if (wait == UNTRACKED) {
+                // Limited by its IP only, or refused when the IP is unknown
+                wait = ipKey != null ? 0 : interval;
+            } else if (wait > 0 && ipKey != null) {
+                giveBack(ipKey, ipInterval);
+            }
+        }
+        if (wait == 0) {
+            return 0;
+        }
+        metrics.record(operation.metric, BlogMetrics.RESULT_RATE_LIMITED, now);
+        return Math.max(1L, TimeUnit.NANOSECONDS.toMillis(wait));
+    }
+
+    /**
+     * @return the number of buckets currently tracked
+     */
+    public int getTrackedClients() {
+        return buckets.size();
+    }
+
+    /**
+     * Keys are hashed so the raw client identifiers and IPs are never kept in memory
+     */
+    private static String key(Operation operation, String identifier) {
+        return operation.prefix + HashUtils.sha256(KEY_SALT, identifier);
+    }
+
+    /**
+     * @return 0 if a token was taken, the time until one is available in nanoseconds, or {@link #UNTRACKED} if the
+     * bucket does not exist and no more buckets can be tracked
+     */
+    private long take(String key, long now, long interval, long capacity) {
+        AtomicLong bucket = buckets.get(key);
+        if (bucket == null) {
+            if (buckets.size() >= configurationService.getRateLimitMaxClients()) {
+                // Sweeping on every new key would make a flood of distinct clients cost a full scan per call
+                sweepIfDue(System.nanoTime());
+                if (buckets.size() >= configurationService.getRateLimitMaxClients()) {
+                    logger.debug("Rate limiter is tracking too many clients, unable to track {}", key);
+                    return UNTRACKED;
+                }
+            }
+            AtomicLong created = new AtomicLong(now);
+            bucket = buckets.putIfAbsent(key, created);
+            if (bucket == null) {
+                bucket = created;
+            }
+        }
+        while (true) {
+            long fullAt = bucket.get();
+            long next = (fullAt - now > 0 ? fullAt : now) + interval;
+            long excess = next - now - capacity;
+            if (excess > 0) {
+                return excess;
+            }
+            if (bucket.compareAndSet(fullAt, next)) {
+                return 0;
+            }
+        }
+    }
+
+    private void giveBack(String key, long interval) {
+        AtomicLong bucket = buckets.get(key);
+        if (bucket != null) {
+            bucket.addAndGet(-interval);
+        }
+    }
+
+    private void sweepIfDue(long now) {
+        long due = nextSweep.get();
+        if (now - due >= 0 && nextSweep.compareAndSet(due, now + SWEEP_INTERVAL_NANOS)) {
+            sweep(now);
+        }
+    }
+
+    /**
+     * Drops the full buckets. A call racing with the removal may update a dropped bucket, in which case its
+     * token is forgotten: the limiter errs on the side of letting clients through.
+     */
+    private void sweep(long now) {
+        if (!sweeping.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            int removed = 0;
+            for (Iterator<Map.Entry<String, AtomicLong>> it = buckets.entrySet().iterator(); it.hasNext(); ) {
+                if (it.next().getValue().get() - now <= 0) {
+                    it.remove();
+                    removed++;
+                }
+            }
+            logger.debug("Rate limiter swept {} idle buckets, {} remaining", removed, buckets.size());
+        } finally {
+            sweeping.set(false);
+        }
+    }
+}
@@ -6,15 +6,20 @@ import org.jahia.services.content.JCRCallback;
 import org.jahia.services.content.JCRNodeWrapper;
 import org.jahia.services.content.JCRSessionWrapper;
 import org.jahia.services.content.JCRTemplate;
-import org.jahia.services.content.decorator.JCRSiteNode;
+import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import javax.jcr.NodeIterator;
+import javax.jcr.InvalidItemStateException;
+import javax.jcr.ItemExistsException;
+import javax.jcr.ItemNotFoundException;
 import javax.jcr.RepositoryException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
+import java.util.List;
 import java.util.UUID;
 
 /**
@@ -25,6 +30,32 @@ public class BlogRatingService {
 
     private static final Logger logger = LoggerFactory.getLogger(BlogRatingService.class);
 
+    static final String PROP_RATING_SUM = "ratingSum";
+    static final String PROP_RATING_COUNT = "ratingCount";
+    static final String PROP_RATING_AVERAGE = "ratingAverage";
+
+    private static final String RATING_PREFIX = "r-";
+    private static final int MAX_SAVE_ATTEMPTS = 3;
+
+    @Reference
+    private BlogConfigurationService configurationService;
+
+    @Reference
+    private BlogPostResolver postResolver;
+
+    @Reference
+    private BlogMetrics metrics;
+
+    @Reference
+    private BlogTrendingService trendingService;
+
+    private DedupFilters dedupFilters;
+
+    @Activate
+    protected void activate() {
+        dedupFilters = new DedupFilters("ratings", configurationService);
+    }
+
     /**
      * Submit a rating for a blog post
      * @param request The rating request
@@ -32,14 +63,39 @@ public class BlogRatingService {
      * @throws BlogServiceException if submission fails
      */
     public RatingResult submit(RatingRequest request) throws BlogServiceException {
+        long start = metrics.start();
+        String resultCode = BlogMetrics.RESULT_ERROR;
+        try {
+            RatingResult result = persist(request);
+            resultCode = BlogMetrics.RESULT_OK;
+            return result;
+        } finally {
+            metrics.record(BlogMetrics.RATING_SUBMIT, resultCode, start);
+        }
+    }
+
+    private RatingResult persist(RatingRequest request) throws BlogServiceException {
         try {
             if (logger.isInfoEnabled()) {
                 logger.info("Submitting rating {} for blogPost={} clientHashPresent={} ipHashPresent={}",
                         request.getRating(), request.getBlogPostId(),
                         StringUtils.isNotBlank(request.getClientHash()), StringUtils.isNotBlank(request.getIpHash()));
             }
-            return JCRTemplate.getInstance().doExecuteWithSystemSessionAsUser(null, Constants.LIVE_WORKSPACE,
-                    null, (JCRCallback<RatingResult>) session -> execute(session, request));
+            // The aggregate lives on the ratings folder, so concurrent votes on the same post conflict on save,
+            // and two first votes from the same client collide on the keyed node name. Retry with a fresh
+            // session so the vote is re-applied on top of the latest persisted state.
+            for (int attempt = 1; ; attempt++) {
+                try {
+                    return JCRTemplate.getInstance().doExecuteWithSystemSessionAsUser(null, Constants.LIVE_WORKSPACE,
+                            null, (JCRCallback<RatingResult>) session -> execute(session, request));
+                } catch (InvalidItemStateException | ItemExistsException e) {
+                    if (attempt >= MAX_SAVE_ATTEMPTS) {
+                        throw e;
+                    }
+                    logger.debug("Concurrent rating update for blogPost={}, retrying (attempt {})",
+                            request.getBlogPostId(), attempt);
+                }
+            }
         } catch (RepositoryException e) {
             logger.error("Rating persistence failed for blogPost={}", request.getBlogPostId(), e);
             throw new BlogServiceException("Unable to execute rating persistence", e);
@@ -47,32 +103,89 @@ public class BlogRatingService {
     }
 
     private RatingResult execute(JCRSessionWrapper session, RatingRequest request) throws RepositoryException {
-        JCRNodeWrapper blogPost = session.getNodeByUUID(request.getBlogPostId());
+        List<Runnable> afterSave = new ArrayList<>(1);
+        RatingResult result = stage(session, request, afterSave, true);
+        metrics.save(session, BlogMetrics.RATING_SUBMIT);
+        afterSave.forEach(Runnable::run);
+        return result;
+    }
 
-        JCRSiteNode site = blogPost.getResolveSite();
-        if (site == null) {
-            throw new RepositoryException("Unable to resolve site for blog post " + request.getBlogPostId());
-        }
+    /**
+     * Adds or updates the vote of the client and the aggregate in the session without saving it, so it can be
+     * persisted together with other interactions.
+     * @param afterSave Receives the actions to run once the session was saved
+     * @return the result the vote will have once saved
+     */
+    RatingResult stage(JCRSessionWrapper session, RatingRequest request, List<Runnable> afterSave) throws RepositoryException {
+        return stage(session, request, afterSave, false);
+    }
 
-        String basePath = "/sites/" + site.getName() + "/contents/ugc/blogs/" + request.getBlogPostId() + "/ratings";
+    /**
+     * Migrates the ratings folder of a post to the keyed layout in a session of its own. The migration saves page
+     * by page, so it must be done before {@link #stage} is called on a session that holds other changes.
+     * @throws ItemNotFoundException if the blog post does not exist
+     */
+    void migrateFolder(String blogPostId) throws RepositoryException {
+        JCRTemplate.getInstance().doExecuteWithSystemSessionAsUser(null, Constants.LIVE_WORKSPACE, null,
+                (JCRCallback<Void>) session -> {
+                    BlogPostResolver.PostLocation location = postResolver.resolve(session, blogPostId);
+                    JCRNodeWrapper ratingsFolder = postResolver.getExistingFolder(session, location.getRatingsPath());
+                    if (ratingsFolder != null && KeyedUgcNodes.needsMigration(ratingsFolder)) {
+                        JCRNodeWrapper ipIndex = postResolver.getOrCreateFolder(session,
+                                location.getRatingsIndexPath(), KeyedUgcNodes.INDEX_FOLDER_TYPE);
+                        migrate(session, ratingsFolder, ipIndex);
+                        session.save();
+                    }
+                    return null;
+                });
+    }
+
+    /**
+     * @param migrate Whether a legacy ratings folder may be migrated, which saves the session; when false such a
+     *                folder is refused instead
+     */
+    private RatingResult stage(JCRSessionWrapper session, RatingRequest request, List<Runnable> afterSave,
+                               boolean migrate) throws RepositoryException {
+        BlogPostResolver.PostLocation location = postResolver.resolve(session, request.getBlogPostId());
+        String basePath = location.getRatingsPath();
         if (logger.isDebugEnabled()) {
             logger.debug("Using ratings base path {}", basePath);
         }
-        JCRNodeWrapper ratingsFolder = getOrCreateRatingsFolder(session, basePath);
+        UgcFolderLayout layout = configurationService.getUgcFolderLayout();
+        JCRNodeWrapper ratingsFolder = postResolver.getOrCreateFolder(session, basePath, "jsblognt:ratingsFolder");
+        JCRNodeWrapper ipIndex = postResolver.getOrCreateFolder(session, location.getRatingsIndexPath(), KeyedUgcNodes.INDEX_FOLDER_TYPE);
         if (logger.isDebugEnabled()) {
             logger.debug("Ratings folder primary type={} mixins={}", ratingsFolder.getPrimaryNodeTypeName(),
                     Arrays.toString(ratingsFolder.getMixinNodeTypes()));
         }
 
+        if (KeyedUgcNodes.needsMigration(ratingsFolder)) {
+            if (!migrate) {
+                throw new InvalidItemStateException("Ratings folder " + basePath + " is not migrated to the keyed layout");
+            }
+            migrate(session, ratingsFolder, ipIndex);
+        }
+
+        // Make sure the aggregate is initialised before applying a delta to it
+        readRatingStats(ratingsFolder);
+        long sum = ratingsFolder.getProperty(PROP_RATING_SUM).getLong();
+        long count = ratingsFolder.getProperty(PROP_RATING_COUNT).getLong();
+        long persistedCount = count;
+
         // Check for existing rating and update or create new
-        JCRNodeWrapper existingRating = findExistingRating(ratingsFolder, request);
+        JCRNodeWrapper existingRating = findExistingRating(ratingsFolder, ipIndex, persistedCount, request);
+        String code = existingRating != null ? RatingResult.CODE_UPDATED : RatingResult.CODE_OK;
         if (existingRating != null) {
             logger.info("Updating existing rating for blogPost={}", request.getBlogPostId());
+            sum += request.getRating() - existingRating.getProperty("rating").getLong();
             existingRating.setProperty("rating", request.getRating());
             existingRating.setProperty("ts", Calendar.getInstance());
         } else {
-            String ratingNodeName = "r-" + UUID.randomUUID();
-            JCRNodeWrapper ratingNode = ratingsFolder.addNode(ratingNodeName, "jsblognt:rating");
+            String ratingNodeName = KeyedUgcNodes.nodeName(RATING_PREFIX, request.getClientHash(), request.getIpHash());
+            if (ratingNodeName == null) {
+                ratingNodeName = RATING_PREFIX + UUID.randomUUID();
+            }
+            JCRNodeWrapper ratingNode = KeyedUgcNodes.add(ratingsFolder, layout, ratingNodeName, "jsblognt:rating");
 
             ratingNode.setProperty("blogPostId", request.getBlogPostId());
             ratingNode.setProperty("rating", request.getRating());
@@ -90,85 +203,111 @@ public class BlogRatingService {
             }
 
             ratingNode.setProperty("ts", Calendar.getInstance());
+            KeyedUgcNodes.index(ipIndex, layout, request.getIpHash(), ratingNodeName);
+            dedupFilters.added(request.getBlogPostId(), request.getClientHash(), request.getIpHash());
+            sum += request.getRating();
+            count++;
 
             logger.info("Created new rating node {} for blogPost={}", ratingNode.getPath(), request.getBlogPostId());
         }
 
-        session.save();
+        RatingStats stats = writeRatingStats(ratingsFolder, sum, count);
+        long savedCount = count;
+        afterSave.add(() -> {
+            dedupFilters.saved(request.getBlogPostId(), persistedCount, savedCount);
+            // Changing a vote is not new engagement
+            if (existingRating == null) {
+                trendingService.record(location.getSiteKey(), request.getBlogPostId(), BlogTrendingService.Signal.RATING, 1);
+            }
+        });
 
-        // Calculate average and count
-        RatingStats stats = calculateRatingStats(ratingsFolder);
+        return new RatingResult(request.getBlogPostId(), stats.getAverageRating(), stats.getRatingCount(), code);
+    }
 
-        return new RatingResult(request.getBlogPostId(), stats.getAverageRating(), stats.getRatingCount());
+    private void migrate(JCRSessionWrapper session, JCRNodeWrapper ratingsFolder, JCRNodeWrapper ipIndex)
+            throws RepositoryException {
+        if (KeyedUgcNodes.migrate(session, ratingsFolder, ipIndex, RATING_PREFIX, "jsblognt:rating",
+                configurationService.getUgcFolderLayout(), configurationService.getUgcMigrationBatchSize()) > 0) {
+            // Duplicate votes were dropped by the migration, the aggregate no longer matches
+            calculateRatingStats(ratingsFolder);
+        }
     }
 
-    private JCRNodeWrapper findExistingRating(JCRNodeWrapper ratingsFolder, RatingRequest request) throws RepositoryException {
-        NodeIterator iterator = ratingsFolder.getNodes();
-        while (iterator.hasNext()) {
-            JCRNodeWrapper node = (JCRNodeWrapper) iterator.nextNode();
-            if (node.isNodeType("jsblognt:rating")) {
-                boolean clientMatch = false;
-                boolean ipMatch = false;
+    /**
+     * Looks up the previous vote of the client, skipping the repository lookup when the dedup filter of the post
+     * rules it out
+     */
+    private JCRNodeWrapper findExistingRating(JCRNodeWrapper ratingsFolder, JCRNodeWrapper ipIndex, long persistedCount,
+                                              RatingRequest request) throws RepositoryException {
+        if (dedupFilters.isDefinitelyNew(request.getBlogPostId(), persistedCount,
+                sink -> KeyedUgcNodes.collectKeys(ratingsFolder, RATING_PREFIX, "jsblognt:rating", sink),
+                request.getClientHash(), request.getIpHash())) {
+            return null;
+        }
+        JCRNodeWrapper existing = KeyedUgcNodes.find(ratingsFolder, ipIndex, RATING_PREFIX,
+                request.getClientHash(), request.getIpHash());
+        dedupFilters.recordLookup(existing != null);
+        return existing;
+    }
 
-                if (StringUtils.isNotBlank(request.getClientHash()) && node.hasProperty("clientHash")) {
-                    clientMatch = request.getClientHash().equals(node.getProperty("clientHash").getString());
-                }
+    /**
+     * @return the statistics of the per-post filters that short-circuit the lookup of the previous vote
+     */
+    public DedupFilterStats getDedupFilterStats() {
+        return dedupFilters.getStats();
+    }
 
-                if (StringUtils.isNotBlank(request.getIpHash()) && node.hasProperty("ipHash")) {
-                    ipMatch = request.getIpHash().equals(node.getProperty("ipHash").getString());
-                }
+    /**
+     * Drops the dedup filter of a post whose ratings were changed by another cluster node, so it is rebuilt on next use
+     */
+    void invalidateDedupFilter(String blogPostId) {
+        dedupFilters.invalidate(blogPostId);
+    }
 
-                if (clientMatch || ipMatch) {
-                    return node;
-                }
-            }
+    /**
+     * Reads the persisted aggregate of a ratings folder. Folders created before the aggregate existed are
+     * rebuilt from their rating nodes once; the caller is responsible for saving the session.
+     */
+    static RatingStats readRatingStats(JCRNodeWrapper ratingsFolder) throws RepositoryException {
+        if (!ratingsFolder.hasProperty(PROP_RATING_COUNT) || !ratingsFolder.hasProperty(PROP_RATING_SUM)) {
+            logger.info("Initialising rating aggregate for {}", ratingsFolder.getPath());
+            return calculateRatingStats(ratingsFolder);
         }
-        return null;
+        long sum = ratingsFolder.getProperty(PROP_RATING_SUM).getLong();
+        long count = ratingsFolder.getProperty(PROP_RATING_COUNT).getLong();
+        return new RatingStats(average(sum, count), (int) count);
     }
 
-    private RatingStats calculateRatingStats(JCRNodeWrapper ratingsFolder) throws RepositoryException {
-        NodeIterator iterator = ratingsFolder.getNodes();
+    /**
+     * Rebuilds the aggregate of a ratings folder from its rating nodes and stores it on the folder.
+     * The caller is responsible for saving the session.
+     */
+    static RatingStats calculateRatingStats(JCRNodeWrapper ratingsFolder) throws RepositoryException {
+        UgcNodeIterator iterator = new UgcNodeIterator(ratingsFolder, "jsblognt:rating");
         long totalRating = 0;
-        int count = 0;
+        long count = 0;
 
         while (iterator.hasNext()) {
-            JCRNodeWrapper node = (JCRNodeWrapper) iterator.nextNode();
-            if (node.isNodeType("jsblognt:rating") && node.hasProperty("rating")) {
+            JCRNodeWrapper node = iterator.next();
+            if (node.hasProperty("rating")) {
                 totalRating += node.getProperty("rating").getLong();
                 count++;
             }
         }
 
-        double average = count > 0 ? (double) totalRating / count : 0.0;
-        return new RatingStats(average, count);
+        return writeRatingStats(ratingsFolder, totalRating, count);
     }
 
-    private JCRNodeWrapper getOrCreateRatingsFolder(JCRSessionWrapper session, String basePath) throws RepositoryException {
-        if (session.nodeExists(basePath)) {
-            return session.getNode(basePath);
-        }
+    private static RatingStats writeRatingStats(JCRNodeWrapper ratingsFolder, long sum, long count) throws RepositoryException {
+        double average = average(sum, count);
+        ratingsFolder.setProperty(PROP_RATING_SUM, sum);
+        ratingsFolder.setProperty(PROP_RATING_COUNT, count);
+        ratingsFolder.setProperty(PROP_RATING_AVERAGE, average);
+        return new RatingStats(average, (int) count);
+    }
 
-        String[] segments = StringUtils.split(basePath, '/');
-        JCRNodeWrapper current = session.getRootNode();
-        for (int i = 0; i < segments.length; i++) {
-            String segment = segments[i];
-            if (StringUtils.isBlank(segment)) {
-                continue;
-            }
-            if (current.hasNode(segment)) {
-                current = current.getNode(segment);
-            } else {
-                String nodeType = (i == segments.length - 1) ? "jsblognt:ratingsFolder" : "jnt:contentFolder";
-                if (logger.isDebugEnabled()) {
-                    logger.debug("Creating node {} of type {} under {}", segment, nodeType, current.getPath());
-                }
-                current = current.addNode(segment, nodeType);
-            }
-        }
-        if (logger.isInfoEnabled()) {
-            logger.info("Created ratings folder structure at {}", current.getPath());
-        }
-        return current;
+    private static double average(long sum, long count) {
+        return count > 0 ? (double) sum / count : 0.0;
     }
 
     /**
@@ -178,28 +317,63 @@ public class BlogRatingService {
      * @throws BlogServiceException if retrieval fails
      */
     public RatingStats getRatingStats(String blogPostId) throws BlogServiceException {
+        long start = metrics.start();
+        String resultCode = BlogMetrics.RESULT_ERROR;
         try {
-            return JCRTemplate.getInstance().doExecuteWithSystemSessionAsUser(null, Constants.LIVE_WORKSPACE,
+            RatingStats stats = JCRTemplate.getInstance().doExecuteWithSystemSessionAsUser(null, Constants.LIVE_WORKSPACE,
                     null, (JCRCallback<RatingStats>) session -> retrieveRatingStats(session, blogPostId));
+            resultCode = BlogMetrics.RESULT_OK;
+            return stats;
         } catch (RepositoryException e) {
             logger.error("Failed to retrieve rating stats for blogPost={}", blogPostId, e);
             throw new BlogServiceException("Unable to retrieve rating stats", e);
+        } finally {
+            metrics.record(BlogMetrics.RATING_GET, resultCode, start);
         }
     }
 
     private RatingStats retrieveRatingStats(JCRSessionWrapper session, String blogPostId) throws RepositoryException {
-        JCRNodeWrapper blogPost = session.getNodeByUUID(blogPostId);
-        JCRSiteNode site = blogPost.getResolveSite();
-
-        String basePath = String.format("/sites/%s/contents/ugc/blogs/%s/ratings", site.getName(), blogPostId);
-
-        if (!session.nodeExists(basePath)) {
+        String basePath = postResolver.resolve(session, blogPostId).getRatingsPath();
+        JCRNodeWrapper ratingsFolder = postResolver.getExistingFolder(session, basePath);
+        if (ratingsFolder == null) {
             logger.debug("No ratings folder exists for blogPost={}", blogPostId);
             return new RatingStats(0.0, 0);
         }
 
-        JCRNodeWrapper ratingsFolder = session.getNode(basePath);
-        return calculateRatingStats(ratingsFolder);
+        boolean initialised = ratingsFolder.hasProperty(PROP_RATING_COUNT) && ratingsFolder.hasProperty(PROP_RATING_SUM);
+        RatingStats stats = readRatingStats(ratingsFolder);
+        if (!initialised) {
+            session.save();
+        }
+        return stats;
+    }
+
+    /**
+     * Rebuild the persisted rating aggregate of a blog post from its rating nodes.
+     * Meant as a repair path when the aggregate is suspected to have drifted.
+     * @param blogPostId The blog post UUID
+     * @return Rating statistics after the rebuild
+     * @throws BlogServiceException if the rebuild fails
+     */
+    public RatingStats rebuildRatingStats(String blogPostId) throws BlogServiceException {
+        try {
+            return JCRTemplate.getInstance().doExecuteWithSystemSessionAsUser(null, Constants.LIVE_WORKSPACE,
+                    null, (JCRCallback<RatingStats>) session -> {
+                        String basePath = postResolver.resolve(session, blogPostId).getRatingsPath();
+                        JCRNodeWrapper ratingsFolder = postResolver.getExistingFolder(session, basePath);
+                        if (ratingsFolder == null) {
+                            return new RatingStats(0.0, 0);
+                        }
+                        RatingStats stats = calculateRatingStats(ratingsFolder);
+                        session.save();
+                        logger.info("Rebuilt rating aggregate for blogPost={} average={} count={}",
+                                blogPostId, stats.getAverageRating(), stats.getRatingCount());
+                        return stats;
+                    });
+        } catch (RepositoryException e) {
+            logger.error("Failed to rebuild rating stats for blogPost={}", blogPostId, e);
+            throw new BlogServiceException("Unable to rebuild rating stats", e);
+        }
     }
 
     /**
@@ -0,0 +1,455 @@
+package org.jahia.se.modules.blogservice.services;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.jackrabbit.util.Text;
+import org.jahia.api.Constants;
+import org.jahia.services.content.JCRCallback;
+import org.jahia.services.content.JCRNodeWrapper;
+import org.jahia.services.content.JCRSessionWrapper;
+import org.jahia.services.content.JCRTemplate;
+import org.jahia.settings.SettingsBean;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Reference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.jcr.NodeIterator;
+import javax.jcr.RepositoryException;
+import javax.jcr.Value;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-memory ranking of the trending blog posts of each site. Every like, first rating and comment adds its weight to
+ * the score of its post, and the contribution of an interaction is halved every {@code trendingHalfLifeHours}.
+ * <p>
+ * Scores use forward decay: an interaction at time {@code t} adds {@code weight * e^(rate * (t - landmark))}, so
+ * stored scores never have to be decayed one by one and the relative order of the posts only changes when one of them
+ * gets an interaction. Each site therefore keeps its top posts exactly with a short sorted list updated on write, and
+ * publishes it as an immutable snapshot that reads only have to scale by {@code e^(-rate * (now - landmark))}.
+ * Stored scores are rebased on the current time before they could overflow, when the configuration changes, and
+ * when too many posts are tracked, which also drops the posts whose score decayed to nothing.
+ * <p>
+ * Scores only reflect the interactions written by this cluster node. Each cluster node checkpoints them every
+ * {@code trendingCheckpointIntervalMinutes} and when the module stops, in a {@code trending-<serverId>} node of its
+ * own below the UGC root of each site, and merges its own checkpoint back when it starts.
+ */
+@Component(service = BlogTrendingService.class, immediate = true)
+public class BlogTrendingService {
+
+    private static final Logger logger = LoggerFactory.getLogger(BlogTrendingService.class);
+
+    static final String TRENDING_STATE_MIXIN = "jsblogmix:trendingState";
+    static final String CHECKPOINT_NODE_TYPE = "jsblognt:trendingCheckpoint";
+    static final String CHECKPOINT_NODE_PREFIX = "trending-";
+    static final String PROP_SCORES = "trendingScores";
+    static final String PROP_CHECKPOINT = "trendingCheckpoint";
+
+    private static final int MAX_TRACKED_POSTS = 10000;
+    private static final int MAX_CHECKPOINT_POSTS = 1000;
+    private static final double MIN_SCORE = 0.01;
+    /** Forward-decayed scores grow by a factor e every 1/rate; rebase long before they could overflow a double */
+    private static final double MAX_EXPONENT = 200;
+    private static final long CHECK_INTERVAL_MINUTES = 1;
+    private static final long STOP_TIMEOUT_MILLIS = 30000L;
+
+    /**
+     * The interactions feeding the scores, with their weight
+     */
+    public enum Signal {
+        LIKE(1.0),
+        RATING(2.0),
+        COMMENT(3.0);
+
+        private final double weight;
+
+        Signal(double weight) {
+            this.weight = weight;
+        }
+    }
+
+    @Reference
+    private BlogConfigurationService configurationService;
+
+    @Reference
+    private BlogMetrics metrics;
+
+    private final Map<String, SiteScores> sites = new ConcurrentHashMap<>();
+    private ScheduledExecutorService executor;
+    private volatile long lastCheckpoint;
+    /** Name of the checkpoint node of this cluster node below the UGC root of each site */
+    private String checkpointNodeName;
+
+    @Activate
+    protected void activate() {
+        lastCheckpoint = System.currentTimeMillis();
+        String serverId = SettingsBean.getInstance().getPropertiesFile().getProperty("cluster.node.serverId");
+        checkpointNodeName = CHECKPOINT_NODE_PREFIX
+                + Text.escapeIllegalJcrChars(StringUtils.defaultIfBlank(serverId, "default"));
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "blog-trending-checkpoint");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.execute(this::restore);
+        executor.scheduleWithFixedDelay(this::checkpointIfDue, CHECK_INTERVAL_MINUTES, CHECK_INTERVAL_MINUTES,
+                TimeUnit.MINUTES);
+    }
+
+    @Deactivate
+    protected void deactivate() {
+        // Queued behind a running checkpoint, so the last interactions are not lost on restart
+        executor.execute(this::checkpoint);
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(STOP_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                logger.warn("Trending checkpoint did not complete within {} ms", STOP_TIMEOUT_MILLIS);
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Adds interactions to the score of a post. Called once they were saved.
+     * @param siteKey The site of the post
+     * @param blogPostId The blog post UUID
+     * @param signal The kind of interaction
+     * @param count The number of interactions of that kind
+     */
+    public void record(String siteKey, String blogPostId, Signal signal, int count) {
+        if (!configurationService.isTrendingEnabled() || count <= 0) {
+            return;
+        }
+        sites.computeIfAbsent(siteKey, key -> new SiteScores())
+                .add(blogPostId, signal.weight * count, System.currentTimeMillis(), decayRate(),
+                        configurationService.getTrendingTopSize());
+    }
+
+    /**
+     * Stops ranking a post, typically because it was deleted
+     */
+    public void remove(String blogPostId) {
+        for (SiteScores site : sites.values()) {
+            site.remove(blogPostId);
+        }
+    }
+
+    /**
+     * Get the trending posts of a site, read from the published ranking without locking
+     * @param siteKey The site key
+     * @param limit The maximum number of posts, capped by {@code trendingTopSize}
+     * @return The posts by decreasing score
+     */
+    public List<TrendingPost> getTrending(String siteKey, int limit) {
+        long start = metrics.start();
+        SiteScores site = sites.get(siteKey);
+        List<TrendingPost> trending = site != null ? site.ranking.top(limit, System.currentTimeMillis())
+                : Collections.emptyList();
+        metrics.record(BlogMetrics.TRENDING_GET, BlogMetrics.RESULT_OK, start);
+        return trending;
+    }
+
+    private double decayRate() {
+        return Math.log(2) / TimeUnit.HOURS.toMillis(configurationService.getTrendingHalfLifeHours());
+    }
+
+    private void checkpointIfDue() {
+        if (System.currentTimeMillis() - lastCheckpoint
+                < TimeUnit.MINUTES.toMillis(configurationService.getTrendingCheckpointIntervalMinutes())) {
+            return;
+        }
+        try {
+            checkpoint();
+        } catch (RuntimeException e) {
+            // Never let an exception cancel the scheduled checkpoints
+            logger.error("Trending checkpoint failed", e);
+        }
+    }
+
+    /**
+     * Writes the current scores of the sites that changed since the last checkpoint
+     */
+    private void checkpoint() {
+        lastCheckpoint = System.currentTimeMillis();
+        for (Map.Entry<String, SiteScores> entry : sites.entrySet()) {
+            SiteScores site = entry.getValue();
+            long now = System.currentTimeMillis();
+            Map<String, Double> scores = site.checkpoint(now, decayRate(), configurationService.getTrendingTopSize());
+            if (scores == null) {
+                continue;
+            }
+            try {
+                write(entry.getKey(), scores, now);
+            } catch (RepositoryException e) {
+                logger.warn("Unable to checkpoint the trending scores of site {}, retrying later", entry.getKey(), e);
+                site.markDirty();
+            }
+        }
+    }
+
+    private void write(String siteKey, Map<String, Double> scores, long now) throws RepositoryException {
+        JCRTemplate.getInstance().doExecuteWithSystemSessionAsUser(null, Constants.LIVE_WORKSPACE, null,
+                (JCRCallback<Void>) session -> {
+                    String rootPath = ugcRootPath(siteKey);
+                    if (!session.nodeExists(rootPath)) {
+                        return null;
+                    }
+                    JCRNodeWrapper root = session.getNode(rootPath);
+                    if (root.isNodeType(TRENDING_STATE_MIXIN)) {
+                        // Checkpoint shared by all cluster nodes in earlier versions, mixing their scores
+                        root.removeMixin(TRENDING_STATE_MIXIN);
+                    }
+                    JCRNodeWrapper state = root.hasNode(checkpointNodeName) ? root.getNode(checkpointNodeName)
+                            : root.addNode(checkpointNodeName, CHECKPOINT_NODE_TYPE);
+                    List<String> values = new ArrayList<>(scores.size());
+                    for (Map.Entry<String, Double> score : scores.entrySet()) {
+                        values.add(score.getKey() + "=" + score.getValue());
+                    }
+                    Calendar checkpoint = Calendar.getInstance();
+                    checkpoint.setTimeInMillis(now);
+                    state.setProperty(PROP_SCORES, values.toArray(new String[0]));
+                    state.setProperty(PROP_CHECKPOINT, checkpoint);
+                    session.save();
+                    logger.debug("Checkpointed {} trending scores of site {}", values.size(), siteKey);
+                    return null;
+                });
+    }
+
+    /**
+     * Merges the last checkpoint of this cluster node for every site into the scores, decayed by the time elapsed
+     * since it was taken
+     */
+    private void restore() {
+        try {
+            JCRTemplate.getInstance().doExecuteWithSystemSessionAsUser(null, Constants.LIVE_WORKSPACE, null,
+                    (JCRCallback<Void>) session -> {
+                        NodeIterator siteNodes = session.getNode("/sites").getNodes();
+                        while (siteNodes.hasNext()) {
+                            JCRNodeWrapper site = (JCRNodeWrapper) siteNodes.nextNode();
+                            if (site.isNodeType("jnt:virtualsite")) {
+                                restore(session, site.getName());
+                            }
+                        }
+                        return null;
+                    });
+        } catch (RepositoryException | RuntimeException e) {
+            logger.error("Unable to restore the trending scores", e);
+        }
+    }
+
+    private void restore(JCRSessionWrapper session, String siteKey) throws RepositoryException {
+        String statePath = ugcRootPath(siteKey) + "/" + checkpointNodeName;
+        if (!session.nodeExists(statePath)) {
+            return;
+        }
+        JCRNodeWrapper state = session.getNode(statePath);
+        if (!state.hasProperty(PROP_SCORES) || !state.hasProperty(PROP_CHECKPOINT)) {
+            return;
+        }
+        long checkpoint = state.getProperty(PROP_CHECKPOINT).getDate().getTimeInMillis();
+        Map<String, Double> scores = new HashMap<>();
+        for (Value value : state.getProperty(PROP_SCORES).getValues()) {
+            String entry = value.getString();
+            int separator = entry.lastIndexOf('=');
+            try {
+                scores.put(entry.substring(0, separator), Double.parseDouble(entry.substring(separator + 1)));
+            } catch (RuntimeException e) {
+                logger.debug("Ignoring malformed trending score {} of site {}", entry, siteKey);
+            }
+        }
+        sites.computeIfAbsent(siteKey, key -> new SiteScores()).merge(scores, checkpoint,
+                System.currentTimeMillis(), decayRate(), configurationService.getTrendingTopSize());
+        logger.info("Restored {} trending scores of site {}", scores.size(), siteKey);
+    }
+
+    private static String ugcRootPath(String siteKey) {
+        return "/sites/" + siteKey + "/contents/ugc/blogs";
+    }
+
+    /**
+     * Forward-decayed scores of the posts of a site, with their top posts kept sorted. Updates are serialised per
+     * site; reads only use the published {@link Ranking}.
+     */
+    private static final class SiteScores {
+        private final Map<String, double[]> scores = new HashMap<>();
+        private final List<String> top = new ArrayList<>();
+        private long landmark = System.currentTimeMillis();
+        private double rate;
+        private int topSize;
+        private boolean dirty;
+        private volatile Ranking ranking = Ranking.EMPTY;
+
+        synchronized void add(String blogPostId, double weight, long now, double currentRate, int currentTopSize) {
+            if (rate != currentRate || topSize != currentTopSize || rate * (now - landmark) > MAX_EXPONENT
+                    || (scores.size() >= MAX_TRACKED_POSTS && !scores.containsKey(blogPostId))) {
+                rebase(now, currentRate, currentTopSize);
+            }
+            double[] score = scores.computeIfAbsent(blogPostId, id -> new double[1]);
+            score[0] += weight * Math.exp(rate * (now - landmark));
+            dirty = true;
+            promote(blogPostId, score[0]);
+        }
+
+        synchronized void remove(String blogPostId) {
+            if (scores.remove(blogPostId) != null) {
+                dirty = true;
+                if (top.contains(blogPostId)) {
+                    // The best post outside the top takes the freed place
+                    rebuildTop();
+                }
+            }
+        }
+
+        /**
+         * @return the current score of the best posts, or null if nothing changed since the last checkpoint
+         */
+        synchronized Map<String, Double> checkpoint(long now, double currentRate, int currentTopSize) {
+            if (!dirty) {
+                return null;
+            }
+            rebase(now, currentRate, currentTopSize);
+            dirty = false;
+            Map<String, Double> result = new LinkedHashMap<>();
+            for (Map.Entry<String, double[]> entry : sorted()) {
+                if (result.size() >= MAX_CHECKPOINT_POSTS) {
+                    break;
+                }
+                result.put(entry.getKey(), entry.getValue()[0]);
+            }
+            return result;
+        }
+
+        synchronized void markDirty() {
+            dirty = true;
+        }
+
+        synchronized void merge(Map<String, Double> restored, long checkpoint, long now, double currentRate,
+                                int currentTopSize) {
+            rebase(now, currentRate, currentTopSize);
+            double decay = Math.exp(-rate * Math.max(0, now - checkpoint));
+            for (Map.Entry<String, Double> entry : restored.entrySet()) {
+                scores.computeIfAbsent(entry.getKey(), id -> new double[1])[0] += entry.getValue() * decay;
+            }
+            rebuildTop();
+        }
+
+        /**
+         * Makes now the landmark, so stored scores become the current scores, and drops the posts that no longer
+         * count. A post whose score only grows cannot leave the top between two rebases, so the top is kept exact
+         * by {@link #promote} alone.
+         */
+        private void rebase(long now, double currentRate, int currentTopSize) {
+            double decay = Math.exp(-rate * (now - landmark));
+            for (Iterator<double[]> it = scores.values().iterator(); it.hasNext(); ) {
+                double[] score = it.next();
+                score[0] *= decay;
+                if (score[0] < MIN_SCORE) {
+                    it.remove();
+                }
+            }
+            if (scores.size() > MAX_TRACKED_POSTS * 3 / 4) {
+                List<Map.Entry<String, double[]>> entries = sorted();
+                for (Map.Entry<String, double[]> entry : entries.subList(MAX_TRACKED_POSTS * 3 / 4, entries.size())) {
+                    scores.remove(entry.getKey());
+                }
+            }
+            landmark = now;
+            rate = currentRate;
+            topSize = currentTopSize;
+            rebuildTop();
+        }
+
+        private void promote(String blogPostId, double score) {
+            int index = top.indexOf(blogPostId);
+            if (index < 0) {
+                if (top.size() >= topSize) {
+                    if (score <= scores.get(top.get(top.size() - 1))[0]) {
+                        return;
+                    }
+                    top.remove(top.size() - 1);
+                }
+                top.add(blogPostId);
+                index = top.size() - 1;
+            }
+            while (index > 0 && scores.get(top.get(index - 1))[0] < score) {
+                Collections.swap(top, index, index - 1);
+                index--;
+            }
+            publish();
+        }
+
+        private void rebuildTop() {
+            top.clear();
+            for (Map.Entry<String, double[]> entry : sorted()) {
+                if (top.size() >= topSize) {
+                    break;
+                }
+                top.add(entry.getKey());
+            }
+            publish();
+        }
+
+        private List<Map.Entry<String, double[]>> sorted() {
+            List<Map.Entry<String, double[]>> entries = new ArrayList<>(scores.entrySet());
+            entries.sort((a, b) -> Double.compare(b.getValue()[0], a.getValue()[0]));
+            return entries;
+        }
+
+        private void publish() {
+            String[] ids = top.toArray(new String[0]);
+            double[] values = new double[ids.length];
+            for (int i = 0; i < ids.length; i++) {
+                values[i] = scores.get(ids[i])[0];
+            }
+            ranking = new Ranking(ids, values, landmark, rate);
+        }
+    }
+
+    /**
+     * Immutable snapshot of the top posts of a site, with their forward-decayed scores
+     */
+    private static final class Ranking {
+        private static final Ranking EMPTY = new Ranking(new String[0], new double[0], 0, 0);
+
+        private final String[] ids;
+        private final double[] scores;
+        private final long landmark;
+        private final double rate;
+
+        private Ranking(String[] ids, double[] scores, long landmark, double rate) {
+            this.ids = ids;
+            this.scores = scores;
+            this.landmark = landmark;
+            this.rate = rate;
+        }
+
+        List<TrendingPost> top(int limit, long now) {
+            double decay = Math.exp(-rate * (now - landmark));
+            int size = Math.min(Math.max(0, limit), ids.length);
+            List<TrendingPost> result = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                double score = scores[i] * decay;
+                if (score < MIN_SCORE) {
+                    break;
+                }
+                result.add(new TrendingPost(ids[i], score));
+            }
+            return result;
+        }
+    }
+}
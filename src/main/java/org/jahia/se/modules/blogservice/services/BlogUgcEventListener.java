@@ -0,0 +1,184 @@
+package org.jahia.se.modules.blogservice.services;
+
+import org.apache.jackrabbit.api.observation.JackrabbitEvent;
+import org.jahia.api.Constants;
+import org.jahia.services.content.DefaultEventListener;
+import org.jahia.services.content.ExternalEventListener;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Reference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.jcr.RepositoryException;
+import javax.jcr.observation.Event;
+import javax.jcr.observation.EventIterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Keeps the in-memory caches of this cluster node coherent with the comments, likes and ratings written by the
+ * other nodes. Events below the UGC folders in LIVE that originate from another node are collected per post for
+ * {@code clusterInvalidationDelayMs}, then the comment pages and dedup filters of the changed posts are dropped.
+ * Local writes are not handled here, the write paths invalidate the caches themselves.
+ * <p>
+ * The other blog caches are left out on purpose. Remote post moves and removals reach the {@link BlogPostResolver}
+ * through {@link BlogPostEventListener}, which receives the events of all cluster nodes, and a UGC folder removed
+ * elsewhere is forgotten by the resolver on its next lookup. The {@link BlogTrendingService} scores and the
+ * {@link BlogRateLimiter} buckets are node-local by design: each cluster node ranks and throttles the requests it
+ * served.
+ */
+@Component(service = DefaultEventListener.class, immediate = true)
+public class BlogUgcEventListener extends DefaultEventListener implements ExternalEventListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(BlogUgcEventListener.class);
+
+    private static final Pattern UGC_PATH = Pattern.compile(
+            "^/sites/[^/]+/contents/ugc/blogs/([0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12})(?:/([^/]+))?");
+    private static final int COMMENTS = 1;
+    private static final int LIKES = 2;
+    private static final int RATINGS = 4;
+    private static final int ALL = COMMENTS | LIKES | RATINGS;
+    private static final long STOP_TIMEOUT_MILLIS = 5000L;
+
+    @Reference
+    private BlogConfigurationService configurationService;
+
+    @Reference
+    private BlogCommentService commentService;
+
+    @Reference
+    private BlogLikeService likeService;
+
+    @Reference
+    private BlogRatingService ratingService;
+
+    @Reference
+    private BlogMetrics metrics;
+
+    /** Changed posts with the kinds of UGC that changed, as a bit set */
+    private final Map<String, Integer> pending = new ConcurrentHashMap<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private ScheduledExecutorService executor;
+
+    public BlogUgcEventListener() {
+        setWorkspace(Constants.LIVE_WORKSPACE);
+    }
+
+    @Activate
+    protected void activate() {
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "blog-ugc-invalidation");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Deactivate
+    protected void deactivate() {
+        executor.shutdownNow();
+        try {
+            executor.awaitTermination(STOP_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public int getEventTypes() {
+        return Event.NODE_ADDED | Event.NODE_REMOVED | Event.NODE_MOVED | Event.PROPERTY_ADDED
+                | Event.PROPERTY_CHANGED | Event.PROPERTY_REMOVED;
+    }
+
+    @Override
+    public String getPath() {
+        return "/sites";
+    }
+
+    @Override
+    public void onEvent(EventIterator events) {
+        boolean added = false;
+        while (events.hasNext()) {
+            Event event = events.nextEvent();
+            if (!(event instanceof JackrabbitEvent) || !((JackrabbitEvent) event).isExternal()) {
+                continue;
+            }
+            try {
+                Matcher matcher = UGC_PATH.matcher(event.getPath());
+                if (matcher.find()) {
+                    pending.merge(matcher.group(1), kindOf(matcher.group(2)), (a, b) -> a | b);
+                    added = true;
+                }
+            } catch (RepositoryException e) {
+                logger.warn("Unable to read the path of event {}, clearing the comment cache", event, e);
+                commentService.invalidateComments(null);
+            }
+        }
+        if (added && scheduled.compareAndSet(false, true)) {
+            try {
+                executor.schedule(this::publish, configurationService.getClusterInvalidationDelayMs(),
+                        TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                scheduled.set(false);
+            }
+        }
+    }
+
+    /**
+     * Invalidates the caches of the posts collected since the previous run. Posts changed while it runs are
+     * collected for the next one.
+     */
+    private void publish() {
+        scheduled.set(false);
+        long start = metrics.start();
+        int posts = 0;
+        for (String blogPostId : pending.keySet()) {
+            // Removed by key, so kinds merged since the iteration reached the post are not lost
+            Integer kinds = pending.remove(blogPostId);
+            if (kinds == null) {
+                continue;
+            }
+            if ((kinds & COMMENTS) != 0) {
+                commentService.invalidateComments(blogPostId);
+            }
+            if ((kinds & LIKES) != 0) {
+                likeService.invalidateDedupFilter(blogPostId);
+            }
+            if ((kinds & RATINGS) != 0) {
+                ratingService.invalidateDedupFilter(blogPostId);
+            }
+            posts++;
+        }
+        metrics.record(BlogMetrics.UGC_INVALIDATE, BlogMetrics.RESULT_OK, start);
+        logger.debug("Invalidated the caches of {} posts changed by other cluster nodes", posts);
+    }
+
+    /**
+     * @param folder The name of the UGC folder of the post the event is in, null for the post folder itself
+     */
+    private static int kindOf(String folder) {
+        if (folder == null) {
+            return ALL;
+        }
+        switch (folder) {
+            case "comments":
+                return COMMENTS;
+            case "likes":
+            case "likesByIp":
+                return LIKES;
+            case "ratings":
+            case "ratingsByIp":
+                return RATINGS;
+            default:
+                return ALL;
+        }
+    }
+}
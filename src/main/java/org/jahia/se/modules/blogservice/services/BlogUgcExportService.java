@@ -0,0 +1,227 @@
+package org.jahia.se.modules.blogservice.services;
+
+import org.jahia.api.Constants;
+import org.jahia.se.modules.blogservice.util.NdjsonWriter;
+import org.jahia.services.content.JCRCallback;
+import org.jahia.services.content.JCRNodeWrapper;
+import org.jahia.services.content.JCRSessionWrapper;
+import org.jahia.services.content.JCRTemplate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.jcr.NodeIterator;
+import javax.jcr.RepositoryException;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Calendar;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Streams the comments, likes and ratings of a site, or of a single post, as newline-delimited JSON: one object
+ * per UGC node, with all its stored fields. Post folders are walked one at a time with {@link UgcNodeIterator}
+ * and every record is written as soon as it is read, so memory does not depend on the amount of UGC exported.
+ * A {@code since} date restricts the export to the nodes created or modified from then on, for incremental
+ * exports; every record carries its {@code modified} date so the next export can start from the last one seen.
+ */
+@Component(service = BlogUgcExportService.class)
+public class BlogUgcExportService {
+
+    private static final Logger logger = LoggerFactory.getLogger(BlogUgcExportService.class);
+
+    public static final String TYPE_COMMENT = "comment";
+    public static final String TYPE_LIKE = "like";
+    public static final String TYPE_RATING = "rating";
+
+    /** Number of nodes read between two refreshes of the session */
+    private static final int REFRESH_INTERVAL = 500;
+    private static final Pattern POST_FOLDER_NAME =
+            Pattern.compile("[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12}");
+    private static final Pattern SITE_KEY = Pattern.compile("[^/\\[\\]*|:]+");
+
+    @Reference
+    private BlogMetrics metrics;
+
+    /**
+     * Write the UGC of a site, or of one of its posts, to a stream. The stream is flushed but not closed.
+     * @param siteKey    The site key
+     * @param blogPostId The blog post UUID, or null for all the posts of the site
+     * @param since      Only export the nodes modified at or after this date, or null for all of them
+     * @param out        The stream to write UTF-8 encoded records to
+     * @return the number of records written
+     * @throws IOException if the stream could not be written, typically because the client went away
+     */
+    public long export(String siteKey, String blogPostId, Calendar since, OutputStream out)
+            throws BlogServiceException, IOException {
+        if (siteKey == null || !SITE_KEY.matcher(siteKey).matches()) {
+            throw new BlogServiceException("Invalid site key: " + siteKey);
+        }
+        if (blogPostId != null && !POST_FOLDER_NAME.matcher(blogPostId).matches()) {
+            throw new BlogServiceException("Invalid blog post id: " + blogPostId);
+        }
+        long start = metrics.start();
+        String resultCode = BlogMetrics.RESULT_ERROR;
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        try {
+            long records = JCRTemplate.getInstance().doExecuteWithSystemSessionAsUser(null, Constants.LIVE_WORKSPACE,
+                    null, (JCRCallback<Long>) session -> {
+                        try {
+                            return new ExportPass(session, since, new NdjsonWriter(writer)).run(siteKey, blogPostId);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    });
+            writer.flush();
+            resultCode = BlogMetrics.RESULT_OK;
+            logger.info("Exported {} UGC records of site={} post={} since={}", records, siteKey, blogPostId,
+                    since != null ? since.toInstant() : null);
+            return records;
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } catch (RepositoryException e) {
+            throw new BlogServiceException("Failed to export UGC of site " + siteKey, e);
+        } finally {
+            metrics.record(BlogMetrics.UGC_EXPORT, resultCode, start);
+        }
+    }
+
+    /**
+     * Write the UGC of a site, or of one of its posts, to a file. Records are written to a temporary file next to
+     * the target, which is only replaced once the export completed.
+     * @param gzip Whether to gzip-compress the file
+     * @return the number of records written
+     */
+    public long exportToFile(String siteKey, String blogPostId, Calendar since, Path file, boolean gzip)
+            throws BlogServiceException, IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        long records;
+        try {
+            try (OutputStream out = gzip ? new GZIPOutputStream(Files.newOutputStream(tmp))
+                    : Files.newOutputStream(tmp)) {
+                records = export(siteKey, blogPostId, since, out);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        return records;
+    }
+
+    /**
+     * Last modification of a UGC node: comments change on moderation and ratings on a new vote
+     */
+    private static Calendar modifiedOf(JCRNodeWrapper node) throws RepositoryException {
+        if (node.hasProperty("jcr:lastModified")) {
+            return node.getProperty("jcr:lastModified").getDate();
+        }
+        if (node.hasProperty("ts")) {
+            return node.getProperty("ts").getDate();
+        }
+        return node.hasProperty("jcr:created") ? node.getProperty("jcr:created").getDate() : null;
+    }
+
+    private static String stringOf(JCRNodeWrapper node, String name) throws RepositoryException {
+        return node.hasProperty(name) ? node.getProperty(name).getString() : null;
+    }
+
+    /**
+     * One export of a site. Nodes already written are dropped from the session regularly, as the walk only goes
+     * forward.
+     */
+    private static final class ExportPass {
+        private final JCRSessionWrapper session;
+        private final Calendar since;
+        private final NdjsonWriter writer;
+        private long records;
+        private int readSinceRefresh;
+
+        ExportPass(JCRSessionWrapper session, Calendar since, NdjsonWriter writer) {
+            this.session = session;
+            this.since = since;
+            this.writer = writer;
+        }
+
+        long run(String siteKey, String blogPostId) throws RepositoryException, IOException {
+            String rootPath = "/sites/" + siteKey + "/contents/ugc/blogs";
+            if (blogPostId != null) {
+                String postPath = rootPath + "/" + blogPostId;
+                if (session.nodeExists(postPath)) {
+                    exportPost(session.getNode(postPath));
+                }
+                return records;
+            }
+            if (!session.nodeExists(rootPath)) {
+                return 0;
+            }
+            NodeIterator posts = session.getNode(rootPath).getNodes();
+            while (posts.hasNext()) {
+                JCRNodeWrapper postFolder = (JCRNodeWrapper) posts.nextNode();
+                if (POST_FOLDER_NAME.matcher(postFolder.getName()).matches()) {
+                    exportPost(postFolder);
+                }
+            }
+            return records;
+        }
+
+        private void exportPost(JCRNodeWrapper postFolder) throws RepositoryException, IOException {
+            String blogPostId = postFolder.getName();
+            exportFolder(postFolder, blogPostId, "comments", "jsblognt:comment", TYPE_COMMENT);
+            exportFolder(postFolder, blogPostId, "likes", "jsblognt:like", TYPE_LIKE);
+            exportFolder(postFolder, blogPostId, "ratings", "jsblognt:rating", TYPE_RATING);
+        }
+
+        private void exportFolder(JCRNodeWrapper postFolder, String blogPostId, String folderName, String nodeType,
+                                  String type) throws RepositoryException, IOException {
+            if (!postFolder.hasNode(folderName)) {
+                return;
+            }
+            UgcNodeIterator nodes = new UgcNodeIterator(postFolder.getNode(folderName), nodeType);
+            while (nodes.hasNext()) {
+                JCRNodeWrapper node = nodes.next();
+                Calendar modified = modifiedOf(node);
+                if (since == null || modified == null || !modified.before(since)) {
+                    write(node, blogPostId, type, modified);
+                }
+                if (++readSinceRefresh >= REFRESH_INTERVAL) {
+                    // Drop the nodes loaded so far, so that the session does not grow with the size of the site
+                    session.refresh(false);
+                    readSinceRefresh = 0;
+                }
+            }
+        }
+
+        private void write(JCRNodeWrapper node, String blogPostId, String type, Calendar modified)
+                throws RepositoryException, IOException {
+            writer.beginRecord()
+                    .field("type", type)
+                    .field("id", node.getIdentifier())
+                    .field("name", node.getName())
+                    .field("blogPostId", blogPostId);
+            if (TYPE_COMMENT.equals(type)) {
+                writer.field("status", CommentCounters.statusOf(node))
+                        .field("author", stringOf(node, "author"))
+                        .field("authorEmail", stringOf(node, "authorEmail"))
+                        .field("comment", stringOf(node, "comment"));
+            } else if (TYPE_RATING.equals(type) && node.hasProperty("rating")) {
+                writer.field("rating", node.getProperty("rating").getLong());
+            }
+            writer.field("clientHash", stringOf(node, "clientHash"))
+                    .field("ipHash", stringOf(node, "ipHash"))
+                    .field("ua", stringOf(node, "ua"))
+                    .field("ts", node.hasProperty("ts") ? node.getProperty("ts").getDate() : null)
+                    .field("modified", modified)
+                    .endRecord();
+            records++;
+        }
+    }
+}
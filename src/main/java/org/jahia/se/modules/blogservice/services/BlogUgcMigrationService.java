@@ -0,0 +1,132 @@
+package org.jahia.se.modules.blogservice.services;
+
+import org.jahia.api.Constants;
+import org.jahia.services.content.JCRCallback;
+import org.jahia.services.content.JCRNodeWrapper;
+import org.jahia.services.content.JCRSessionWrapper;
+import org.jahia.services.content.JCRTemplate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.jcr.NodeIterator;
+import javax.jcr.RepositoryException;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+
+/**
+ * Moves the UGC nodes of existing blog posts into the buckets of the configured {@link UgcFolderLayout}.
+ * Nodes are moved in bounded batches with a save after each batch, so the migration can run on posts with
+ * very large flat folders.
+ */
+@Component(service = BlogUgcMigrationService.class, immediate = true)
+public class BlogUgcMigrationService {
+
+    private static final Logger logger = LoggerFactory.getLogger(BlogUgcMigrationService.class);
+
+    @Reference
+    private BlogConfigurationService configurationService;
+
+    @Reference
+    private BlogRatingService ratingService;
+
+    /**
+     * Migrate all blog posts UGC folders of a site to the configured layout
+     * @param siteKey The site key
+     * @return Number of post folders that were processed
+     * @throws BlogServiceException if the migration fails
+     */
+    public int migrateSite(String siteKey) throws BlogServiceException {
+        UgcFolderLayout layout = configurationService.getUgcFolderLayout();
+        int batchSize = configurationService.getUgcMigrationBatchSize();
+        List<String> ratingsToRebuild = new ArrayList<>();
+        try {
+            int processed = JCRTemplate.getInstance().doExecuteWithSystemSessionAsUser(null, Constants.LIVE_WORKSPACE,
+                    null, (JCRCallback<Integer>) session -> {
+                        String rootPath = "/sites/" + siteKey + "/contents/ugc/blogs";
+                        if (!session.nodeExists(rootPath)) {
+                            return 0;
+                        }
+                        int count = 0;
+                        NodeIterator posts = session.getNode(rootPath).getNodes();
+                        while (posts.hasNext()) {
+                            JCRNodeWrapper postFolder = (JCRNodeWrapper) posts.nextNode();
+                            if (migratePost(session, postFolder, layout, batchSize)) {
+                                ratingsToRebuild.add(postFolder.getName());
+                            }
+                            count++;
+                        }
+                        return count;
+                    });
+            for (String blogPostId : ratingsToRebuild) {
+                ratingService.rebuildRatingStats(blogPostId);
+            }
+            logger.info("Migrated {} blog post UGC folders of site {} to {} layout", processed, siteKey, layout);
+            return processed;
+        } catch (RepositoryException e) {
+            logger.error("UGC layout migration failed for site={}", siteKey, e);
+            throw new BlogServiceException("Unable to migrate UGC layout", e);
+        }
+    }
+
+    /**
+     * @return true if duplicate ratings were dropped and the rating aggregate must be rebuilt
+     */
+    private boolean migratePost(JCRSessionWrapper session, JCRNodeWrapper postFolder, UgcFolderLayout layout,
+                                int batchSize) throws RepositoryException {
+        if (postFolder.hasNode("comments")) {
+            relayout(session, postFolder.getNode("comments"), "jsblognt:comment", layout, batchSize, true);
+        }
+        JCRNodeWrapper likesByIp = postFolder.hasNode("likesByIp") ? postFolder.getNode("likesByIp") : null;
+        JCRNodeWrapper ratingsByIp = postFolder.hasNode("ratingsByIp") ? postFolder.getNode("ratingsByIp") : null;
+        if (likesByIp != null) {
+            relayout(session, likesByIp, KeyedUgcNodes.INDEX_ENTRY_TYPE, layout, batchSize, false);
+        }
+        if (ratingsByIp != null) {
+            relayout(session, ratingsByIp, KeyedUgcNodes.INDEX_ENTRY_TYPE, layout, batchSize, false);
+        }
+        if (postFolder.hasNode("likes")) {
+            KeyedUgcNodes.migrate(session, postFolder.getNode("likes"), likesByIp, "l-", "jsblognt:like",
+                    layout, batchSize);
+        }
+        return postFolder.hasNode("ratings") && KeyedUgcNodes.migrate(session, postFolder.getNode("ratings"),
+                ratingsByIp, "r-", "jsblognt:rating", layout, batchSize) > 0;
+    }
+
+    /**
+     * Moves the direct children of a folder into their bucket, one batch at a time. Only one batch of
+     * names is held in memory: moved nodes leave the direct children, so each pass picks up the next ones.
+     */
+    private void relayout(JCRSessionWrapper session, JCRNodeWrapper folder, String nodeType, UgcFolderLayout layout,
+                          int batchSize, boolean dated) throws RepositoryException {
+        if (layout == UgcFolderLayout.FLAT) {
+            return;
+        }
+        int moved = 0;
+        List<String> batch = new ArrayList<>(batchSize);
+        do {
+            batch.clear();
+            NodeIterator children = folder.getNodes();
+            while (children.hasNext() && batch.size() < batchSize) {
+                JCRNodeWrapper child = (JCRNodeWrapper) children.nextNode();
+                if (child.isNodeType(nodeType)) {
+                    batch.add(child.getName());
+                }
+            }
+            for (String name : batch) {
+                JCRNodeWrapper node = folder.getNode(name);
+                Calendar timestamp = dated && node.hasProperty("ts") ? node.getProperty("ts").getDate() : null;
+                JCRNodeWrapper parent = UgcFolders.getOrCreateParent(folder, layout, name, timestamp);
+                session.move(node.getPath(), parent.getPath() + "/" + name);
+                moved++;
+            }
+            session.save();
+        } while (batch.size() == batchSize);
+
+        if (moved > 0 && logger.isInfoEnabled()) {
+            logger.info("Moved {} nodes of {} into {} buckets", moved, folder.getPath(), layout);
+        }
+    }
+}
@@ -0,0 +1,451 @@
+package org.jahia.se.modules.blogservice.services;
+
+import org.jahia.api.Constants;
+import org.jahia.services.content.JCRCallback;
+import org.jahia.services.content.JCRNodeWrapper;
+import org.jahia.services.content.JCRSessionWrapper;
+import org.jahia.services.content.JCRTemplate;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Reference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.jcr.InvalidItemStateException;
+import javax.jcr.ItemNotFoundException;
+import javax.jcr.NodeIterator;
+import javax.jcr.RepositoryException;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Pattern;
+
+/**
+ * Scheduled purge of the UGC that is no longer needed: rejected comments, likes older than the retention window
+ * and the UGC folders of deleted blog posts. Sites are walked one post folder at a time with
+ * {@link UgcNodeIterator}, nodes are removed in bounded batches with a save and a pause after each batch, and
+ * the last completed post folder is stored on the UGC root of the site so that an interrupted pass resumes
+ * where it stopped.
+ */
+@Component(service = BlogUgcPurgeService.class, immediate = true)
+public class BlogUgcPurgeService {
+
+    private static final Logger logger = LoggerFactory.getLogger(BlogUgcPurgeService.class);
+
+    static final String PURGE_STATE_MIXIN = "jsblogmix:ugcPurgeState";
+    static final String PROP_CHECKPOINT = "purgeCheckpoint";
+    static final String PROP_LAST_RUN = "purgeLastRun";
+
+    private static final long INITIAL_DELAY_MINUTES = 5;
+    private static final long CHECK_INTERVAL_MINUTES = 10;
+    private static final long STOP_TIMEOUT_MILLIS = 30000L;
+    private static final String[] UGC_FOLDERS = {"comments", "likes", "likesByIp", "ratings", "ratingsByIp"};
+    private static final Pattern POST_FOLDER_NAME =
+            Pattern.compile("[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12}");
+
+    @Reference
+    private BlogConfigurationService configurationService;
+
+    @Reference
+    private BlogPostResolver postResolver;
+
+    @Reference
+    private BlogLikeService likeService;
+
+    @Reference
+    private BlogEngagementDenormalizer engagementDenormalizer;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    private volatile boolean stopping;
+    private volatile UgcPurgeReport report;
+    private ScheduledExecutorService executor;
+
+    @Activate
+    protected void activate() {
+        stopping = false;
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "blog-ugc-purge");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Passes interrupted by a restart are resumed by the first check, the others run once their interval elapsed
+        executor.scheduleWithFixedDelay(this::runScheduled, INITIAL_DELAY_MINUTES, CHECK_INTERVAL_MINUTES,
+                TimeUnit.MINUTES);
+    }
+
+    @Deactivate
+    protected void deactivate() {
+        stopping = true;
+        executor.shutdownNow();
+        try {
+            if (!executor.awaitTermination(STOP_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                logger.warn("UGC purge did not stop within {} ms", STOP_TIMEOUT_MILLIS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Start a purge pass of a site in the background, whether or not the site is due
+     * @param siteKey The site key
+     * @return false if a purge is already running
+     */
+    public boolean requestPurge(String siteKey) {
+        if (stopping || !running.compareAndSet(false, true)) {
+            return false;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    purge(Collections.singletonList(siteKey), true);
+                } finally {
+                    running.set(false);
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            running.set(false);
+            return false;
+        }
+    }
+
+    public boolean isRunning() {
+        return running.get();
+    }
+
+    /**
+     * @return the report of the running purge, or of the last one since the module started; null if none ran yet
+     */
+    public UgcPurgeReport getReport() {
+        return report;
+    }
+
+    private void runScheduled() {
+        if (!configurationService.isPurgeEnabled() || !running.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            purge(listSites(), false);
+        } catch (RepositoryException e) {
+            logger.error("Unable to list the sites to purge", e);
+        } catch (RuntimeException e) {
+            // Never let an exception cancel the scheduled checks
+            logger.error("UGC purge failed", e);
+        } finally {
+            running.set(false);
+        }
+    }
+
+    private void purge(List<String> siteKeys, boolean force) {
+        UgcPurgeReport current = new UgcPurgeReport();
+        report = current;
+        for (String siteKey : siteKeys) {
+            if (isStopping()) {
+                break;
+            }
+            current.startSite(siteKey);
+            try {
+                JCRTemplate.getInstance().doExecuteWithSystemSessionAsUser(null, Constants.LIVE_WORKSPACE, null,
+                        (JCRCallback<Object>) session -> JCRTemplate.getInstance().doExecuteWithSystemSessionAsUser(
+                                null, Constants.EDIT_WORKSPACE, null, (JCRCallback<Object>) editSession -> {
+                                    new SitePass(session, editSession, current).run(siteKey, force);
+                                    return null;
+                                }));
+            } catch (RepositoryException e) {
+                logger.error("UGC purge failed for site={}", siteKey, e);
+            }
+        }
+        current.finish();
+        logger.info("UGC purge finished: {}", current);
+    }
+
+    private List<String> listSites() throws RepositoryException {
+        return JCRTemplate.getInstance().doExecuteWithSystemSessionAsUser(null, Constants.LIVE_WORKSPACE, null,
+                (JCRCallback<List<String>>) session -> {
+                    List<String> siteKeys = new ArrayList<>();
+                    NodeIterator sites = session.getNode("/sites").getNodes();
+                    while (sites.hasNext()) {
+                        JCRNodeWrapper site = (JCRNodeWrapper) sites.nextNode();
+                        if (site.isNodeType("jnt:virtualsite")) {
+                            siteKeys.add(site.getName());
+                        }
+                    }
+                    return siteKeys;
+                });
+    }
+
+    private boolean isStopping() {
+        return stopping || Thread.currentThread().isInterrupted();
+    }
+
+    private static Calendar cutoff(int days) {
+        Calendar cutoff = Calendar.getInstance();
+        cutoff.add(Calendar.DAY_OF_MONTH, -days);
+        return cutoff;
+    }
+
+    private static boolean isOlderThan(JCRNodeWrapper node, Calendar cutoff, boolean whenUnknown) throws RepositoryException {
+        if (!node.hasProperty("ts")) {
+            return whenUnknown;
+        }
+        return node.getProperty("ts").getDate().before(cutoff);
+    }
+
+    private static boolean exists(JCRSessionWrapper session, String identifier) throws RepositoryException {
+        try {
+            session.getNodeByIdentifier(identifier);
+            return true;
+        } catch (ItemNotFoundException e) {
+            return false;
+        }
+    }
+
+    /**
+     * One purge pass over the UGC root of a site. Removals are accumulated in the session and saved together
+     * with the checkpoint every batch.
+     */
+    private final class SitePass {
+        private final JCRSessionWrapper session;
+        private final JCRSessionWrapper editSession;
+        private final UgcPurgeReport report;
+        private final int batchSize = configurationService.getPurgeBatchSize();
+        private final long pauseMillis = configurationService.getPurgeBatchPauseMs();
+        private final boolean purgeOrphans = configurationService.isPurgeOrphanedFolders();
+        private final Calendar rejectedCutoff;
+        private final Calendar likesCutoff;
+
+        private JCRNodeWrapper root;
+        private String checkpoint;
+        private int pendingNodes;
+        private int pendingComments;
+        private int pendingLikes;
+        private int pendingFolders;
+        private int scannedSinceSave;
+        /** Posts whose like count changed in the current batch */
+        private final Set<String> purgedLikePosts = new LinkedHashSet<>();
+
+        SitePass(JCRSessionWrapper session, JCRSessionWrapper editSession, UgcPurgeReport report) {
+            this.session = session;
+            this.editSession = editSession;
+            this.report = report;
+            int rejectedDays = configurationService.getPurgeRejectedCommentsAfterDays();
+            int likeDays = configurationService.getPurgeLikesAfterDays();
+            this.rejectedCutoff = rejectedDays >= 0 ? cutoff(rejectedDays) : null;
+            this.likesCutoff = likeDays > 0 ? cutoff(likeDays) : null;
+        }
+
+        void run(String siteKey, boolean force) throws RepositoryException {
+            String rootPath = "/sites/" + siteKey + "/contents/ugc/blogs";
+            if (!session.nodeExists(rootPath)) {
+                return;
+            }
+            root = session.getNode(rootPath);
+            String resumeAfter = root.hasProperty(PROP_CHECKPOINT) ? root.getProperty(PROP_CHECKPOINT).getString() : null;
+            if (resumeAfter != null && !root.hasNode(resumeAfter)) {
+                logger.info("UGC purge checkpoint {} of site {} no longer exists, restarting the pass", resumeAfter, siteKey);
+                resumeAfter = null;
+            }
+            if (resumeAfter == null && !force && !isDue()) {
+                return;
+            }
+
+            NodeIterator posts = root.getNodes();
+            if (resumeAfter != null) {
+                logger.info("Resuming UGC purge of site {} after post folder {}", siteKey, resumeAfter);
+                // Skip the post folders completed before the interruption
+                while (posts.hasNext()) {
+                    if (posts.nextNode().getName().equals(resumeAfter)) {
+                        break;
+                    }
+                }
+                checkpoint = resumeAfter;
+            }
+
+            while (posts.hasNext()) {
+                if (isStopping()) {
+                    flush();
+                    logger.info("UGC purge of site {} stopped after post folder {}", siteKey, checkpoint);
+                    return;
+                }
+                JCRNodeWrapper postFolder = (JCRNodeWrapper) posts.nextNode();
+                String blogPostId = postFolder.getName();
+                if (!POST_FOLDER_NAME.matcher(blogPostId).matches()) {
+                    continue;
+                }
+                report.postFolderScanned();
+                // A post that is only unpublished still exists in the default workspace and keeps its UGC
+                if (!exists(session, blogPostId) && !exists(editSession, blogPostId)) {
+                    if (purgeOrphans) {
+                        // The checkpoint stays on the previous folder, as this one is about to disappear
+                        removeOrphan(postFolder);
+                        continue;
+                    }
+                } else {
+                    purgeComments(postFolder);
+                    purgeLikes(postFolder);
+                }
+                if (isStopping()) {
+                    continue;
+                }
+                checkpoint = blogPostId;
+                if (++scannedSinceSave >= batchSize) {
+                    flush();
+                }
+            }
+
+            if (!root.isNodeType(PURGE_STATE_MIXIN)) {
+                root.addMixin(PURGE_STATE_MIXIN);
+            }
+            checkpoint = null;
+            if (root.hasProperty(PROP_CHECKPOINT)) {
+                root.getProperty(PROP_CHECKPOINT).remove();
+            }
+            root.setProperty(PROP_LAST_RUN, Calendar.getInstance());
+            flush();
+            logger.info("UGC purge of site {} completed: {}", siteKey, report);
+        }
+
+        private boolean isDue() throws RepositoryException {
+            if (!root.hasProperty(PROP_LAST_RUN)) {
+                return true;
+            }
+            long intervalMillis = TimeUnit.HOURS.toMillis(configurationService.getPurgeIntervalHours());
+            return root.getProperty(PROP_LAST_RUN).getDate().getTimeInMillis() + intervalMillis <= System.currentTimeMillis();
+        }
+
+        private void purgeComments(JCRNodeWrapper postFolder) throws RepositoryException {
+            if (rejectedCutoff == null || !postFolder.hasNode("comments")) {
+                return;
+            }
+            JCRNodeWrapper commentsFolder = postFolder.getNode("comments");
+            // Initialise the counters before removing anything, a later recount would miss the removed comments
+            CommentCounters.ensure(commentsFolder);
+            UgcNodeIterator comments = new UgcNodeIterator(commentsFolder, "jsblognt:comment");
+            while (!isStopping() && comments.hasNext()) {
+                JCRNodeWrapper comment = comments.next();
+                // Legacy comments without a timestamp are purged as soon as they are rejected
+                if (CommentCounters.STATUS_REJECTED.equals(CommentCounters.statusOf(comment))
+                        && isOlderThan(comment, rejectedCutoff, true)) {
+                    comment.remove();
+                    CommentCounters.adjust(commentsFolder, CommentCounters.STATUS_REJECTED, -1);
+                    pendingComments++;
+                    removed();
+                }
+            }
+        }
+
+        private void purgeLikes(JCRNodeWrapper postFolder) throws RepositoryException {
+            if (likesCutoff == null || !postFolder.hasNode("likes")) {
+                return;
+            }
+            JCRNodeWrapper likesFolder = postFolder.getNode("likes");
+            JCRNodeWrapper ipIndex = postFolder.hasNode("likesByIp") ? postFolder.getNode("likesByIp") : null;
+            BlogLikeService.readLikeCount(likesFolder);
+            UgcNodeIterator likes = new UgcNodeIterator(likesFolder, "jsblognt:like");
+            while (!isStopping() && likes.hasNext()) {
+                JCRNodeWrapper like = likes.next();
+                if (isOlderThan(like, likesCutoff, false)) {
+                    KeyedUgcNodes.unindex(ipIndex, like.getPropertyAsString("ipHash"), like.getName());
+                    like.remove();
+                    BlogLikeService.adjustLikeCount(likesFolder, -1);
+                    purgedLikePosts.add(postFolder.getName());
+                    pendingLikes++;
+                    removed();
+                }
+            }
+        }
+
+        /**
+         * Removes the UGC of a deleted post in batches before removing its folders, so that a post with a lot of
+         * UGC is never removed in a single save.
+         */
+        private void removeOrphan(JCRNodeWrapper postFolder) throws RepositoryException {
+            String path = postFolder.getPath();
+            for (String folderName : UGC_FOLDERS) {
+                if (!postFolder.hasNode(folderName)) {
+                    continue;
+                }
+                UgcNodeIterator nodes = new UgcNodeIterator(postFolder.getNode(folderName), "jnt:content");
+                while (!isStopping() && nodes.hasNext()) {
+                    nodes.next().remove();
+                    removed();
+                }
+            }
+            if (isStopping()) {
+                return;
+            }
+            postFolder.remove();
+            pendingFolders++;
+            if (flush()) {
+                postResolver.invalidateUgcFolder(path);
+                logger.info("Removed UGC folder {} of a deleted blog post", path);
+            }
+        }
+
+        private void removed() throws RepositoryException {
+            if (++pendingNodes >= batchSize) {
+                flush();
+            }
+        }
+
+        /**
+         * Saves the pending removals together with the checkpoint, then pauses to leave room to the other writers.
+         * @return false if the batch was discarded because of a concurrent change
+         */
+        private boolean flush() throws RepositoryException {
+            boolean removals = pendingNodes > 0 || pendingFolders > 0;
+            if (checkpoint != null) {
+                if (!root.isNodeType(PURGE_STATE_MIXIN)) {
+                    root.addMixin(PURGE_STATE_MIXIN);
+                }
+                root.setProperty(PROP_CHECKPOINT, checkpoint);
+            }
+            boolean saved;
+            try {
+                session.save();
+                report.saved(pendingComments, pendingLikes, pendingFolders);
+                saved = true;
+                // Same refresh as after a like write: the dedup filters and the engagement properties follow the
+                // like counts
+                for (String blogPostId : purgedLikePosts) {
+                    likeService.invalidateDedupFilter(blogPostId);
+                }
+                engagementDenormalizer.markChanged(purgedLikePosts);
+            } catch (InvalidItemStateException e) {
+                // A like or moderation action changed a counter of the same post, the discarded nodes are
+                // picked up by the next pass
+                logger.warn("UGC purge batch discarded after a concurrent change: {}", e.getMessage());
+                report.saveConflict();
+                saved = false;
+            }
+            // Drop the nodes loaded so far, so that the sessions do not grow with the size of the site
+            session.refresh(false);
+            editSession.refresh(false);
+            pendingNodes = 0;
+            pendingComments = 0;
+            pendingLikes = 0;
+            pendingFolders = 0;
+            scannedSinceSave = 0;
+            purgedLikePosts.clear();
+
+            if (removals && pauseMillis > 0 && !isStopping()) {
+                try {
+                    Thread.sleep(pauseMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return saved;
+        }
+    }
+}
@@ -0,0 +1,333 @@
+package org.jahia.se.modules.blogservice.services;
+
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Reference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded executor running the repository writes of the blog mutations off the request thread. At most
+ * {@code writeExecutorThreads} writes run at once and at most {@code writeExecutorQueueSize} wait for their turn;
+ * beyond that submissions are rejected immediately instead of piling up on {@code session.save()}. Writes run on
+ * virtual threads when the JVM provides them (JDK 21+) and {@code writeExecutorVirtualThreads} is set, otherwise on
+ * a fixed pool of platform threads. When the executor is disabled, tasks run on the calling thread.
+ */
+@Component(service = BlogWriteExecutor.class, immediate = true)
+public class BlogWriteExecutor {
+
+    private static final Logger logger = LoggerFactory.getLogger(BlogWriteExecutor.class);
+
+    private static final String QUEUE_SUFFIX = ".queue";
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 30000L;
+
+    @Reference
+    private BlogConfigurationService configurationService;
+
+    @Reference
+    private BlogMetrics metrics;
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    private volatile Pool pool;
+    private volatile boolean stopped;
+
+    @Deactivate
+    protected synchronized void deactivate() {
+        stopped = true;
+        if (pool != null) {
+            pool.shutdown(SHUTDOWN_TIMEOUT_MILLIS);
+            pool = null;
+        }
+    }
+
+    /**
+     * Runs a write on the executor
+     * @param operation The operation name, one of the {@link BlogMetrics} constants; the time spent waiting is
+     *                  recorded as {@code <operation>.queue}
+     * @param task The write; the HTTP request must not be accessed from it
+     * @return a future completed with the result of the task, or with the exception it threw
+     * @throws RejectedExecutionException if the executor is saturated
+     */
+    public <T> CompletableFuture<T> submit(String operation, Callable<T> task) {
+        Pool current = currentPool();
+        CompletableFuture<T> future = new CompletableFuture<>();
+        if (current == null) {
+            submitted.increment();
+            run(future, task);
+            return future;
+        }
+        long enqueuedAt = metrics.start();
+        try {
+            current.execute(() -> {
+                metrics.record(operation + QUEUE_SUFFIX, BlogMetrics.RESULT_OK, enqueuedAt);
+                run(future, task);
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            metrics.record(operation, BlogMetrics.RESULT_REJECTED, enqueuedAt);
+            throw e;
+        }
+        submitted.increment();
+        return future;
+    }
+
+    public WriteExecutorStats getStats() {
+        Pool current = pool;
+        Settings settings = Settings.current(configurationService);
+        return new WriteExecutorStats(current != null ? current.getMode() : "DIRECT", settings.threads,
+                settings.queueSize, current != null ? current.getQueued() : 0, current != null ? current.getActive() : 0,
+                submitted.sum(), rejected.sum(), completed.sum(), failed.sum());
+    }
+
+    private <T> void run(CompletableFuture<T> future, Callable<T> task) {
+        try {
+            future.complete(task.call());
+            completed.increment();
+        } catch (Throwable e) {
+            failed.increment();
+            future.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * @return the pool matching the current configuration, rebuilt if the configuration changed; null if disabled
+     */
+    private Pool currentPool() {
+        Settings settings = Settings.current(configurationService);
+        Pool current = pool;
+        if (current != null ? current.settings.equals(settings) : !settings.enabled || stopped) {
+            return current;
+        }
+        synchronized (this) {
+            current = pool;
+            if (current != null ? current.settings.equals(settings) : !settings.enabled || stopped) {
+                return current;
+            }
+            if (current != null) {
+                // Writes already accepted by the previous pool still complete
+                current.shutdown(0);
+            }
+            pool = settings.enabled ? createPool(settings) : null;
+            logger.info("Blog write executor configured: mode={} threads={} queueSize={}",
+                    pool != null ? pool.getMode() : "DIRECT", settings.threads, settings.queueSize);
+            return pool;
+        }
+    }
+
+    private static Pool createPool(Settings settings) {
+        if (settings.virtualThreads) {
+            ExecutorService virtualExecutor = newVirtualThreadExecutor();
+            if (virtualExecutor != null) {
+                return new VirtualThreadPool(settings, virtualExecutor);
+            }
+            logger.info("Virtual threads are not available on this JVM, using a platform thread pool for blog writes");
+        }
+        return new PlatformThreadPool(settings);
+    }
+
+    /**
+     * Looked up reflectively so the bundle still runs on JDK versions without virtual threads
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Executor configuration, compared on every submission to pick up configuration changes
+     */
+    private static final class Settings {
+        private final boolean enabled;
+        private final boolean virtualThreads;
+        private final int threads;
+        private final int queueSize;
+
+        private Settings(boolean enabled, boolean virtualThreads, int threads, int queueSize) {
+            this.enabled = enabled;
+            this.virtualThreads = virtualThreads;
+            this.threads = threads;
+            this.queueSize = queueSize;
+        }
+
+        static Settings current(BlogConfigurationService configurationService) {
+            return new Settings(configurationService.isWriteExecutorEnabled(),
+                    configurationService.isWriteExecutorVirtualThreads(), configurationService.getWriteExecutorThreads(),
+                    configurationService.getWriteExecutorQueueSize());
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Settings)) {
+                return false;
+            }
+            Settings other = (Settings) o;
+            return enabled == other.enabled && virtualThreads == other.virtualThreads && threads == other.threads
+                    && queueSize == other.queueSize;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(enabled, virtualThreads, threads, queueSize);
+        }
+    }
+
+    private abstract static class Pool {
+        final Settings settings;
+
+        Pool(Settings settings) {
+            this.settings = settings;
+        }
+
+        abstract void execute(Runnable task);
+
+        abstract int getQueued();
+
+        abstract int getActive();
+
+        abstract String getMode();
+
+        abstract void shutdown(long timeoutMillis);
+
+        static void shutdown(ExecutorService executor, long timeoutMillis) {
+            executor.shutdown();
+            if (timeoutMillis <= 0) {
+                return;
+            }
+            try {
+                if (!executor.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                    logger.warn("Blog writes still running after {} ms, interrupting them", timeoutMillis);
+                    executor.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * One virtual thread per write; a semaphore caps the writes running at once and a counter caps the waiting ones
+     */
+    private static final class VirtualThreadPool extends Pool {
+        private final ExecutorService executor;
+        private final Semaphore running;
+        private final AtomicInteger admitted = new AtomicInteger();
+
+        VirtualThreadPool(Settings settings, ExecutorService executor) {
+            super(settings);
+            this.executor = executor;
+            this.running = new Semaphore(settings.threads);
+        }
+
+        @Override
+        void execute(Runnable task) {
+            if (admitted.incrementAndGet() > settings.threads + settings.queueSize) {
+                admitted.decrementAndGet();
+                throw new RejectedExecutionException("Blog write queue is full");
+            }
+            try {
+                executor.execute(() -> {
+                    try {
+                        running.acquireUninterruptibly();
+                        try {
+                            task.run();
+                        } finally {
+                            running.release();
+                        }
+                    } finally {
+                        admitted.decrementAndGet();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                admitted.decrementAndGet();
+                throw e;
+            }
+        }
+
+        @Override
+        int getQueued() {
+            return Math.max(0, admitted.get() - getActive());
+        }
+
+        @Override
+        int getActive() {
+            return settings.threads - running.availablePermits();
+        }
+
+        @Override
+        String getMode() {
+            return "VIRTUAL";
+        }
+
+        @Override
+        void shutdown(long timeoutMillis) {
+            shutdown(executor, timeoutMillis);
+        }
+    }
+
+    /**
+     * Fixed pool of daemon platform threads with a bounded queue
+     */
+    private static final class PlatformThreadPool extends Pool {
+        private final ThreadPoolExecutor executor;
+
+        PlatformThreadPool(Settings settings) {
+            super(settings);
+            AtomicInteger threadNumber = new AtomicInteger();
+            executor = new ThreadPoolExecutor(settings.threads, settings.threads, 60, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(settings.queueSize), runnable -> {
+                Thread thread = new Thread(runnable, "blog-write-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }, new ThreadPoolExecutor.AbortPolicy());
+            executor.allowCoreThreadTimeOut(true);
+        }
+
+        @Override
+        void execute(Runnable task) {
+            executor.execute(task);
+        }
+
+        @Override
+        int getQueued() {
+            return executor.getQueue().size();
+        }
+
+        @Override
+        int getActive() {
+            return executor.getActiveCount();
+        }
+
+        @Override
+        String getMode() {
+            return "PLATFORM";
+        }
+
+        @Override
+        void shutdown(long timeoutMillis) {
+            shutdown(executor, timeoutMillis);
+        }
+    }
+}
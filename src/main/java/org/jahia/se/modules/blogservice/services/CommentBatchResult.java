@@ -0,0 +1,31 @@
+package org.jahia.se.modules.blogservice.services;
+
+/**
+ * Outcome of a bulk moderation operation for one comment
+ */
+public class CommentBatchResult {
+
+    public static final String CODE_OK = "OK";
+    public static final String CODE_NOT_FOUND = "NOT_FOUND";
+    public static final String CODE_ERROR = "ERROR";
+
+    private final String commentId;
+    private final String code;
+
+    public CommentBatchResult(String commentId, String code) {
+        this.commentId = commentId;
+        this.code = code;
+    }
+
+    public String getCommentId() {
+        return commentId;
+    }
+
+    public boolean isSuccess() {
+        return CODE_OK.equals(code);
+    }
+
+    public String getCode() {
+        return code;
+    }
+}
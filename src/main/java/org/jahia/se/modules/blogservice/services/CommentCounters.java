@@ -0,0 +1,121 @@
+package org.jahia.se.modules.blogservice.services;
+
+import org.jahia.services.content.JCRNodeWrapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.jcr.RepositoryException;
+
+/**
+ * Per-status comment counters persisted on the comments folder of a blog post, so that totals can be
+ * answered without walking the comments. The caller is responsible for saving the session.
+ */
+final class CommentCounters {
+
+    private static final Logger logger = LoggerFactory.getLogger(CommentCounters.class);
+
+    static final String STATUS_PENDING = "pending";
+    static final String STATUS_APPROVED = "approved";
+    static final String STATUS_REJECTED = "rejected";
+
+    private static final String[] STATUSES = {STATUS_PENDING, STATUS_APPROVED, STATUS_REJECTED};
+
+    private CommentCounters() {
+    }
+
+    static boolean isStatus(String status) {
+        for (String candidate : STATUSES) {
+            if (candidate.equals(status)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the status of a comment, falling back to the approved boolean for comments created before
+     * the status property existed.
+     */
+    static String statusOf(JCRNodeWrapper comment) throws RepositoryException {
+        if (comment.hasProperty("status")) {
+            return comment.getProperty("status").getString();
+        }
+        boolean approved = comment.hasProperty("approved") && comment.getProperty("approved").getBoolean();
+        return approved ? STATUS_APPROVED : STATUS_PENDING;
+    }
+
+    /**
+     * Returns the comments folder a comment belongs to, skipping any bucket folder in between.
+     */
+    static JCRNodeWrapper folderOf(JCRNodeWrapper comment) throws RepositoryException {
+        JCRNodeWrapper parent = comment.getParent();
+        while (UgcFolders.isBucket(parent)) {
+            parent = parent.getParent();
+        }
+        return parent;
+    }
+
+    static long get(JCRNodeWrapper commentsFolder, String status) throws RepositoryException {
+        ensure(commentsFolder);
+        return commentsFolder.getProperty(propertyName(status)).getLong();
+    }
+
+    static void adjust(JCRNodeWrapper commentsFolder, String status, long delta) throws RepositoryException {
+        ensure(commentsFolder);
+        String property = propertyName(status);
+        long value = commentsFolder.getProperty(property).getLong() + delta;
+        commentsFolder.setProperty(property, Math.max(0L, value));
+    }
+
+    /**
+     * Initialises the counters of a folder created before they existed by counting its comments once. Comments
+     * stored without a timestamp get their creation date as {@code ts} on the way, so that the pages, which
+     * are sorted on it, include them.
+     *
+     * @return true if the counters had to be initialised
+     */
+    static boolean ensure(JCRNodeWrapper commentsFolder) throws RepositoryException {
+        if (commentsFolder.hasProperty(propertyName(STATUS_PENDING))
+                && commentsFolder.hasProperty(propertyName(STATUS_APPROVED))
+                && commentsFolder.hasProperty(propertyName(STATUS_REJECTED))) {
+            return false;
+        }
+        rebuild(commentsFolder);
+        return true;
+    }
+
+    static void rebuild(JCRNodeWrapper commentsFolder) throws RepositoryException {
+        long[] counts = new long[STATUSES.length];
+        UgcNodeIterator iterator = new UgcNodeIterator(commentsFolder, "jsblognt:comment");
+        while (iterator.hasNext()) {
+            JCRNodeWrapper comment = iterator.next();
+            if (!comment.hasProperty("ts") && comment.hasProperty("jcr:created")) {
+                comment.setProperty("ts", comment.getProperty("jcr:created").getDate());
+            }
+            String status = statusOf(comment);
+            for (int i = 0; i < STATUSES.length; i++) {
+                if (STATUSES[i].equals(status)) {
+                    counts[i]++;
+                }
+            }
+        }
+        for (int i = 0; i < STATUSES.length; i++) {
+            commentsFolder.setProperty(propertyName(STATUSES[i]), counts[i]);
+        }
+        if (logger.isInfoEnabled()) {
+            logger.info("Initialised comment counters for {}: pending={} approved={} rejected={}",
+                    commentsFolder.getPath(), counts[0], counts[1], counts[2]);
+        }
+    }
+
+    private static String propertyName(String status) {
+        switch (status) {
+            case STATUS_APPROVED:
+                return "approvedCount";
+            case STATUS_REJECTED:
+                return "rejectedCount";
+            default:
+                return "pendingCount";
+        }
+    }
+}
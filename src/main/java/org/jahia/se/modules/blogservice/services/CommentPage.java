@@ -0,0 +1,37 @@
+package org.jahia.se.modules.blogservice.services;
+
+import java.util.List;
+
+/**
+ * One page of approved comments with the cursor needed to fetch the next one.
+ */
+public class CommentPage {
+
+    private final List<BlogCommentService.CommentData> comments;
+    private final long totalCount;
+    private final String endCursor;
+    private final boolean hasNextPage;
+
+    public CommentPage(List<BlogCommentService.CommentData> comments, long totalCount, String endCursor, boolean hasNextPage) {
+        this.comments = comments;
+        this.totalCount = totalCount;
+        this.endCursor = endCursor;
+        this.hasNextPage = hasNextPage;
+    }
+
+    public List<BlogCommentService.CommentData> getComments() {
+        return comments;
+    }
+
+    public long getTotalCount() {
+        return totalCount;
+    }
+
+    public String getEndCursor() {
+        return endCursor;
+    }
+
+    public boolean isHasNextPage() {
+        return hasNextPage;
+    }
+}
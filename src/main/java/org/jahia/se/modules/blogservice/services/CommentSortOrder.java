@@ -0,0 +1,9 @@
+package org.jahia.se.modules.blogservice.services;
+
+/**
+ * Ordering of a page of comments on their creation timestamp.
+ */
+public enum CommentSortOrder {
+    NEWEST_FIRST,
+    OLDEST_FIRST
+}
@@ -0,0 +1,85 @@
+package org.jahia.se.modules.blogservice.services;
+
+/**
+ * Snapshot of the statistics of the per-post duplicate filters of likes or ratings
+ */
+public class DedupFilterStats {
+
+    private final String name;
+    private final int filters;
+    private final long sizeBytes;
+    private final long maxSizeBytes;
+    private final long checks;
+    private final long lookupsSkipped;
+    private final long falsePositives;
+    private final double falsePositiveRate;
+    private final double expectedFalsePositiveRate;
+    private final long staleChecks;
+    private final long rebuilds;
+
+    public DedupFilterStats(String name, int filters, long sizeBytes, long maxSizeBytes, long checks,
+                            long lookupsSkipped, long falsePositives, double falsePositiveRate,
+                            double expectedFalsePositiveRate, long staleChecks, long rebuilds) {
+        this.name = name;
+        this.filters = filters;
+        this.sizeBytes = sizeBytes;
+        this.maxSizeBytes = maxSizeBytes;
+        this.checks = checks;
+        this.lookupsSkipped = lookupsSkipped;
+        this.falsePositives = falsePositives;
+        this.falsePositiveRate = falsePositiveRate;
+        this.expectedFalsePositiveRate = expectedFalsePositiveRate;
+        this.staleChecks = staleChecks;
+        this.rebuilds = rebuilds;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getFilters() {
+        return filters;
+    }
+
+    public long getSizeBytes() {
+        return sizeBytes;
+    }
+
+    public long getMaxSizeBytes() {
+        return maxSizeBytes;
+    }
+
+    public long getChecks() {
+        return checks;
+    }
+
+    public long getLookupsSkipped() {
+        return lookupsSkipped;
+    }
+
+    public long getFalsePositives() {
+        return falsePositives;
+    }
+
+    /**
+     * @return the share of the new submissions for which the filter still required a repository lookup
+     */
+    public double getFalsePositiveRate() {
+        return falsePositiveRate;
+    }
+
+    /**
+     * @return the false-positive rate expected from the current fill of the filters, averaged over the filters
+     */
+    public double getExpectedFalsePositiveRate() {
+        return expectedFalsePositiveRate;
+    }
+
+    public long getStaleChecks() {
+        return staleChecks;
+    }
+
+    public long getRebuilds() {
+        return rebuilds;
+    }
+}
@@ -0,0 +1,204 @@
+package org.jahia.se.modules.blogservice.services;
+
+import org.apache.commons.lang3.StringUtils;
+import org.jahia.se.modules.blogservice.util.BloomFilter;
+import org.jahia.se.modules.blogservice.util.WeightedLruCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.jcr.RepositoryException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Per-post Bloom filters over the client and IP hashes of the likes or ratings of a post, used to skip the
+ * repository duplicate check for submissions that are definitely new. A filter is built lazily from the folder
+ * the first time a post is checked, and only trusted while the persisted counter of the folder matches the
+ * number of items it reflects: items written by another cluster node or removed by the purge make it stale,
+ * in which case the repository lookup is done and the filter is rebuilt, at most every
+ * {@value #STALE_REBUILD_INTERVAL_SECONDS} seconds per post. Filters are kept in an LRU cache bounded by their
+ * total size.
+ */
+final class DedupFilters {
+
+    private static final Logger logger = LoggerFactory.getLogger(DedupFilters.class);
+
+    private static final double FALSE_POSITIVE_RATE = 0.01;
+    private static final int KEYS_PER_ITEM = 2;
+    private static final long MIN_EXPECTED_ENTRIES = 256;
+    private static final long STALE_REBUILD_INTERVAL_SECONDS = 30;
+    private static final long FILTER_TTL_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    /**
+     * Feeds the hashes of every item of a folder to a filter being built
+     */
+    interface Loader {
+        void load(Consumer<String> sink) throws RepositoryException;
+    }
+
+    private final String name;
+    private final BlogConfigurationService configurationService;
+    private final WeightedLruCache<String, PostFilter> filters =
+            new WeightedLruCache<>(0, 0, filter -> filter.bloom.getSizeBytes());
+    private final LongAdder checks = new LongAdder();
+    private final LongAdder lookupsSkipped = new LongAdder();
+    private final LongAdder falsePositives = new LongAdder();
+    private final LongAdder staleChecks = new LongAdder();
+    private final LongAdder rebuilds = new LongAdder();
+
+    DedupFilters(String name, BlogConfigurationService configurationService) {
+        this.name = name;
+        this.configurationService = configurationService;
+    }
+
+    /**
+     * @param postId The blog post UUID
+     * @param persistedCount The persisted counter of the folder, read in the current session before any change
+     * @param loader Reads the hashes of the folder, should the filter need to be built
+     * @return true if no item of the folder has one of the hashes, so the repository lookup can be skipped;
+     * false if the lookup must be done, in which case its outcome is reported with {@link #recordLookup}
+     */
+    boolean isDefinitelyNew(String postId, long persistedCount, Loader loader, String clientHash, String ipHash)
+            throws RepositoryException {
+        int maxSizeKb = configurationService.isDedupFilterEnabled() ? configurationService.getDedupFilterMaxSizeKb() : 0;
+        filters.setLimits(maxSizeKb * 1024L, FILTER_TTL_MILLIS);
+        if (maxSizeKb == 0) {
+            return false;
+        }
+
+        PostFilter filter = filters.get(postId);
+        if (filter == null || filter.isOverfull() || (filter.syncedCount != persistedCount && filter.canRebuild())) {
+            PostFilter previous = filter;
+            filter = build(postId, persistedCount, loader, maxSizeKb * 1024L);
+            if (filter == null && previous != null) {
+                filters.invalidate(postId);
+            }
+        } else if (filter.syncedCount != persistedCount) {
+            staleChecks.increment();
+            return false;
+        }
+
+        if (filter == null) {
+            return false;
+        }
+        checks.increment();
+        if (mightContain(filter, clientHash) || mightContain(filter, ipHash)) {
+            return false;
+        }
+        lookupsSkipped.increment();
+        return true;
+    }
+
+    /**
+     * Reports the outcome of a repository lookup done after {@link #isDefinitelyNew} returned false
+     */
+    void recordLookup(boolean found) {
+        if (!found) {
+            falsePositives.increment();
+        }
+    }
+
+    /**
+     * Adds the hashes of an item added to the session. Called before the save, so a failed save only leaves
+     * false positives behind.
+     */
+    void added(String postId, String clientHash, String ipHash) {
+        PostFilter filter = filters.get(postId);
+        if (filter == null) {
+            return;
+        }
+        put(filter, clientHash);
+        put(filter, ipHash);
+    }
+
+    /**
+     * Records that the items added to the session were saved, moving the persisted counter of the folder from
+     * {@code countBefore} to {@code countAfter}. A filter that was not in sync with {@code countBefore} stays stale.
+     */
+    void saved(String postId, long countBefore, long countAfter) {
+        PostFilter filter = filters.get(postId);
+        if (filter != null) {
+            synchronized (filter) {
+                if (filter.syncedCount == countBefore) {
+                    filter.syncedCount = countAfter;
+                }
+            }
+        }
+    }
+
+    void invalidate(String postId) {
+        filters.invalidate(postId);
+    }
+
+    DedupFilterStats getStats() {
+        long[] sizes = new long[2];
+        double[] expectedRates = new double[1];
+        filters.forEachValue(filter -> {
+            sizes[0]++;
+            sizes[1] += filter.bloom.getSizeBytes();
+            expectedRates[0] += filter.bloom.getExpectedFalsePositiveRate();
+        });
+        long lookupsAvoided = lookupsSkipped.sum();
+        long falsePositiveCount = falsePositives.sum();
+        long negatives = lookupsAvoided + falsePositiveCount;
+        return new DedupFilterStats(name, (int) sizes[0], sizes[1],
+                configurationService.getDedupFilterMaxSizeKb() * 1024L, checks.sum(), lookupsAvoided, falsePositiveCount,
+                negatives > 0 ? (double) falsePositiveCount / negatives : 0.0,
+                sizes[0] > 0 ? expectedRates[0] / sizes[0] : 0.0, staleChecks.sum(), rebuilds.sum());
+    }
+
+    /**
+     * Sizes a filter for twice the current number of items, so it can grow before it has to be rebuilt
+     * @return the filter, or null if it would not fit in the cache
+     */
+    private PostFilter build(String postId, long persistedCount, Loader loader, long maxSizeBytes) throws RepositoryException {
+        long loadToken = filters.loadToken();
+        long expectedEntries = Math.max(MIN_EXPECTED_ENTRIES, persistedCount * KEYS_PER_ITEM * 2);
+        if (BloomFilter.sizeBytes(expectedEntries, FALSE_POSITIVE_RATE) > maxSizeBytes) {
+            logger.debug("The {} dedup filter of blogPost={} would exceed the configured size", name, postId);
+            return null;
+        }
+        PostFilter filter = new PostFilter(BloomFilter.create(expectedEntries, FALSE_POSITIVE_RATE), persistedCount);
+        loader.load(filter.bloom::put);
+        filters.putIfNotInvalidated(postId, filter, loadToken);
+        rebuilds.increment();
+        if (logger.isDebugEnabled()) {
+            logger.debug("Built {} dedup filter for blogPost={} items={} hashes={} bytes={}", name, postId,
+                    persistedCount, filter.bloom.getInsertions(), filter.bloom.getSizeBytes());
+        }
+        return filter;
+    }
+
+    private static boolean mightContain(PostFilter filter, String hash) {
+        return StringUtils.isNotBlank(hash) && filter.bloom.mightContain(hash);
+    }
+
+    private static void put(PostFilter filter, String hash) {
+        if (StringUtils.isNotBlank(hash)) {
+            filter.bloom.put(hash);
+        }
+    }
+
+    /**
+     * Filter of one post, with the folder counter value it reflects
+     */
+    private static final class PostFilter {
+        private final BloomFilter bloom;
+        private final long builtAt = System.nanoTime();
+        private volatile long syncedCount;
+
+        private PostFilter(BloomFilter bloom, long syncedCount) {
+            this.bloom = bloom;
+            this.syncedCount = syncedCount;
+        }
+
+        private boolean isOverfull() {
+            return bloom.getInsertions() > bloom.getExpectedEntries();
+        }
+
+        private boolean canRebuild() {
+            return System.nanoTime() - builtAt >= TimeUnit.SECONDS.toNanos(STALE_REBUILD_INTERVAL_SECONDS);
+        }
+    }
+}
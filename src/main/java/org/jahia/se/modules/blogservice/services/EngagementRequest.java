@@ -0,0 +1,80 @@
+package org.jahia.se.modules.blogservice.services;
+
+/**
+ * Like, rating and comment submitted together on a blog post. Each part is optional, at least one is expected.
+ */
+public class EngagementRequest {
+
+    private final String blogPostId;
+    private final LikeRequest like;
+    private final RatingRequest rating;
+    private final CommentRequest comment;
+
+    private EngagementRequest(Builder builder) {
+        this.blogPostId = builder.blogPostId;
+        this.like = builder.like;
+        this.rating = builder.rating;
+        this.comment = builder.comment;
+    }
+
+    public String getBlogPostId() {
+        return blogPostId;
+    }
+
+    public LikeRequest getLike() {
+        return like;
+    }
+
+    public RatingRequest getRating() {
+        return rating;
+    }
+
+    public CommentRequest getComment() {
+        return comment;
+    }
+
+    public boolean isEmpty() {
+        return like == null && rating == null && comment == null;
+    }
+
+    public static Builder builder(String blogPostId) {
+        return new Builder(blogPostId);
+    }
+
+    public static class Builder {
+        private final String blogPostId;
+        private LikeRequest like;
+        private RatingRequest rating;
+        private CommentRequest comment;
+
+        private Builder(String blogPostId) {
+            this.blogPostId = blogPostId;
+        }
+
+        public Builder withLike(LikeRequest like) {
+            this.like = checkPost(like, like != null ? like.getBlogPostId() : null);
+            return this;
+        }
+
+        public Builder withRating(RatingRequest rating) {
+            this.rating = checkPost(rating, rating != null ? rating.getBlogPostId() : null);
+            return this;
+        }
+
+        public Builder withComment(CommentRequest comment) {
+            this.comment = checkPost(comment, comment != null ? comment.getBlogPostId() : null);
+            return this;
+        }
+
+        public EngagementRequest build() {
+            return new EngagementRequest(this);
+        }
+
+        private <T> T checkPost(T part, String partBlogPostId) {
+            if (part != null && !blogPostId.equals(partBlogPostId)) {
+                throw new IllegalArgumentException("All parts of an engagement must target blogPost=" + blogPostId);
+            }
+            return part;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package org.jahia.se.modules.blogservice.services;
+
+/**
+ * Outcome of an engagement submission, with the result of each submitted part; parts that were not submitted
+ * are null
+ */
+public class EngagementResult {
+
+    private final String blogPostId;
+    private final LikeResult like;
+    private final RatingResult rating;
+    private final CommentResult comment;
+
+    public EngagementResult(String blogPostId, LikeResult like, RatingResult rating, CommentResult comment) {
+        this.blogPostId = blogPostId;
+        this.like = like;
+        this.rating = rating;
+        this.comment = comment;
+    }
+
+    public String getBlogPostId() {
+        return blogPostId;
+    }
+
+    public LikeResult getLike() {
+        return like;
+    }
+
+    public RatingResult getRating() {
+        return rating;
+    }
+
+    public CommentResult getComment() {
+        return comment;
+    }
+
+    /**
+     * @return true if every submitted part was persisted; a like or comment rejected as a duplicate counts as failed
+     */
+    public boolean isSuccess() {
+        return (like == null || like.isSuccess()) && (comment == null || comment.isSuccess());
+    }
+}
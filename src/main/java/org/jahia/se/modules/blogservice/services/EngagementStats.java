@@ -0,0 +1,51 @@
+package org.jahia.se.modules.blogservice.services;
+
+/**
+ * Engagement aggregates of a blog post, read from the counters maintained on its UGC folders
+ */
+public class EngagementStats {
+
+    private final String blogPostId;
+    private final double averageRating;
+    private final int ratingCount;
+    private final long likeCount;
+    private final long approvedCommentCount;
+    private final long pendingCommentCount;
+
+    public EngagementStats(String blogPostId, double averageRating, int ratingCount, long likeCount,
+                           long approvedCommentCount, long pendingCommentCount) {
+        this.blogPostId = blogPostId;
+        this.averageRating = averageRating;
+        this.ratingCount = ratingCount;
+        this.likeCount = likeCount;
+        this.approvedCommentCount = approvedCommentCount;
+        this.pendingCommentCount = pendingCommentCount;
+    }
+
+    public String getBlogPostId() {
+        return blogPostId;
+    }
+
+    public double getAverageRating() {
+        return averageRating;
+    }
+
+    public int getRatingCount() {
+        return ratingCount;
+    }
+
+    public long getLikeCount() {
+        return likeCount;
+    }
+
+    public long getApprovedCommentCount() {
+        return approvedCommentCount;
+    }
+
+    /**
+     * @return the number of comments awaiting moderation
+     */
+    public long getPendingCommentCount() {
+        return pendingCommentCount;
+    }
+}
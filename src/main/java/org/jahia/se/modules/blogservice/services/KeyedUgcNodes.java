@@ -0,0 +1,229 @@
+package org.jahia.se.modules.blogservice.services;
+
+import org.apache.commons.lang3.StringUtils;
+import org.jahia.services.content.JCRNodeWrapper;
+import org.jahia.services.content.JCRSessionWrapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.jcr.NodeIterator;
+import javax.jcr.RepositoryException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Helpers for UGC nodes stored under deterministic names derived from the client hash, with a secondary
+ * index keyed by the IP hash. Duplicate checks become direct lookups instead of folder scans, and two
+ * concurrent submissions from the same client collide on the node name at save time.
+ */
+final class KeyedUgcNodes {
+
+    private static final Logger logger = LoggerFactory.getLogger(KeyedUgcNodes.class);
+
+    static final String INDEX_FOLDER_TYPE = "jsblognt:hashIndexFolder";
+    static final String INDEX_ENTRY_TYPE = "jsblognt:hashIndexEntry";
+    static final String PROP_KEYED = "keyed";
+    static final String PROP_TARGET = "target";
+
+    private KeyedUgcNodes() {
+    }
+
+    /**
+     * Returns the deterministic node name for a submission, or null when neither hash is available.
+     */
+    static String nodeName(String prefix, String clientHash, String ipHash) {
+        if (StringUtils.isNotBlank(clientHash)) {
+            return prefix + clientHash;
+        }
+        if (StringUtils.isNotBlank(ipHash)) {
+            return prefix + ipHash;
+        }
+        return null;
+    }
+
+    /**
+     * Looks up an existing node for the given hashes: first by name, then through the IP hash index.
+     * Both bucketed and flat locations are checked, so lookups do not depend on the configured layout.
+     */
+    static JCRNodeWrapper find(JCRNodeWrapper folder, JCRNodeWrapper ipIndex, String prefix,
+                               String clientHash, String ipHash) throws RepositoryException {
+        if (StringUtils.isNotBlank(clientHash)) {
+            JCRNodeWrapper node = UgcFolders.findKeyed(folder, prefix + clientHash);
+            if (node != null) {
+                return node;
+            }
+        }
+        if (StringUtils.isNotBlank(ipHash)) {
+            JCRNodeWrapper node = UgcFolders.findKeyed(folder, prefix + ipHash);
+            if (node != null) {
+                return node;
+            }
+            JCRNodeWrapper entry = ipIndex != null ? UgcFolders.findKeyed(ipIndex, ipHash) : null;
+            if (entry != null) {
+                String target = entry.getPropertyAsString(PROP_TARGET);
+                if (target != null) {
+                    return UgcFolders.findKeyed(folder, target);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Adds a keyed node at its expected location for the given layout.
+     */
+    static JCRNodeWrapper add(JCRNodeWrapper folder, UgcFolderLayout layout, String name, String nodeType) throws RepositoryException {
+        return UgcFolders.getOrCreateParent(folder, layout, name, null).addNode(name, nodeType);
+    }
+
+    /**
+     * Records the IP hash of a keyed node in the secondary index. Existing entries are left untouched.
+     */
+    static void index(JCRNodeWrapper ipIndex, UgcFolderLayout layout, String ipHash, String targetName) throws RepositoryException {
+        if (ipIndex == null || StringUtils.isBlank(ipHash) || UgcFolders.findKeyed(ipIndex, ipHash) != null) {
+            return;
+        }
+        JCRNodeWrapper entry = add(ipIndex, layout, ipHash, INDEX_ENTRY_TYPE);
+        entry.setProperty(PROP_TARGET, targetName);
+    }
+
+    /**
+     * Removes the IP index entry of a keyed node, if the entry still points to that node.
+     */
+    static void unindex(JCRNodeWrapper ipIndex, String ipHash, String targetName) throws RepositoryException {
+        if (ipIndex == null || StringUtils.isBlank(ipHash)) {
+            return;
+        }
+        JCRNodeWrapper entry = UgcFolders.findKeyed(ipIndex, ipHash);
+        if (entry != null && targetName.equals(entry.getPropertyAsString(PROP_TARGET))) {
+            entry.remove();
+        }
+    }
+
+    /**
+     * Feeds the keys a duplicate check can match to the sink: the hash each node is named after and its IP hash.
+     */
+    static void collectKeys(JCRNodeWrapper folder, String prefix, String nodeType, Consumer<String> sink) throws RepositoryException {
+        UgcNodeIterator iterator = new UgcNodeIterator(folder, nodeType);
+        while (iterator.hasNext()) {
+            JCRNodeWrapper node = iterator.next();
+            String name = node.getName();
+            sink.accept(name.startsWith(prefix) ? name.substring(prefix.length()) : name);
+            String ipHash = node.getPropertyAsString("ipHash");
+            if (StringUtils.isNotBlank(ipHash)) {
+                sink.accept(ipHash);
+            }
+        }
+    }
+
+    static boolean isMigrated(JCRNodeWrapper folder) throws RepositoryException {
+        return folder.hasProperty(PROP_KEYED) && folder.getProperty(PROP_KEYED).getBoolean();
+    }
+
+    /**
+     * Whether a folder still has to go through {@link #migrate}. A folder created by the current session has no
+     * legacy children, so it is flagged as migrated right away and saved with the rest of the session.
+     */
+    static boolean needsMigration(JCRNodeWrapper folder) throws RepositoryException {
+        if (isMigrated(folder)) {
+            return false;
+        }
+        if (folder.isNew()) {
+            folder.setProperty(PROP_KEYED, true);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Moves the direct children of a folder to their deterministic name and location for the given layout,
+     * renaming legacy random-named nodes and filling the IP index on the way. When several nodes map to the same
+     * name, the one with the latest {@code ts} is kept, so a client's newest vote wins, and the others are removed.
+     * Nodes are handled one page of {@code batchSize} names at a time with a save after each page, and the folder
+     * is flagged as migrated at the end.
+     *
+     * @return the number of duplicate nodes that were removed
+     */
+    static int migrate(JCRSessionWrapper session, JCRNodeWrapper folder, JCRNodeWrapper ipIndex, String prefix,
+                       String nodeType, UgcFolderLayout layout, int batchSize) throws RepositoryException {
+        int moved = 0;
+        int removed = 0;
+        // Leading children that need no change, skipped by the next pages: handled nodes are moved to the end of
+        // the folder or into buckets, so the nodes left to handle never move before them
+        long settled = 0;
+        List<String> page = new ArrayList<>(batchSize);
+        do {
+            page.clear();
+            NodeIterator iterator = folder.getNodes();
+            if (settled > iterator.getSize()) {
+                settled = 0;
+            }
+            iterator.skip(settled);
+            while (iterator.hasNext() && page.size() < batchSize) {
+                JCRNodeWrapper node = (JCRNodeWrapper) iterator.nextNode();
+                boolean ugcNode = node.isNodeType(nodeType);
+                if (ugcNode && !isInPlace(node, prefix, layout)) {
+                    page.add(node.getName());
+                    continue;
+                }
+                if (ugcNode) {
+                    index(ipIndex, layout, node.getPropertyAsString("ipHash"), node.getName());
+                }
+                if (page.isEmpty()) {
+                    settled++;
+                }
+            }
+            for (String name : page) {
+                JCRNodeWrapper node = folder.getNode(name);
+                String ipHash = node.getPropertyAsString("ipHash");
+                String keyedName = nodeName(prefix, node.getPropertyAsString("clientHash"), ipHash);
+                JCRNodeWrapper existing = UgcFolders.findKeyed(folder, keyedName);
+                if (existing != null && existing.isSame(node)) {
+                    // Already keyed in a flat folder being laid out again: the lookup finds the node itself
+                    existing = null;
+                }
+                if (existing != null && timestampOf(existing) >= timestampOf(node)) {
+                    node.remove();
+                    removed++;
+                    continue;
+                }
+                if (existing != null) {
+                    if (existing.getParent().isSame(folder)) {
+                        // A flat node before the current page may disappear, the settled count no longer holds
+                        settled = 0;
+                    }
+                    existing.remove();
+                    removed++;
+                }
+                JCRNodeWrapper parent = UgcFolders.getOrCreateParent(folder, layout, keyedName, null);
+                session.move(node.getPath(), parent.getPath() + "/" + keyedName);
+                index(ipIndex, layout, ipHash, keyedName);
+                moved++;
+            }
+            session.save();
+        } while (page.size() == batchSize);
+
+        folder.setProperty(PROP_KEYED, true);
+        session.save();
+
+        if (logger.isInfoEnabled()) {
+            logger.info("Migrated {} to keyed {} layout: moved={} duplicatesRemoved={}", folder.getPath(), layout,
+                    moved, removed);
+        }
+        return removed;
+    }
+
+    /**
+     * A direct child is in place when it already has its keyed name and the layout keeps it below the folder.
+     * Nodes without any hash keep their name.
+     */
+    private static boolean isInPlace(JCRNodeWrapper node, String prefix, UgcFolderLayout layout) throws RepositoryException {
+        String keyedName = nodeName(prefix, node.getPropertyAsString("clientHash"), node.getPropertyAsString("ipHash"));
+        return keyedName == null || UgcFolders.keyedPath(layout, keyedName).equals(node.getName());
+    }
+
+    private static long timestampOf(JCRNodeWrapper node) throws RepositoryException {
+        return node.hasProperty("ts") ? node.getProperty("ts").getDate().getTimeInMillis() : Long.MIN_VALUE;
+    }
+}
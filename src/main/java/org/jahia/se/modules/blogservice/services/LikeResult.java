@@ -4,13 +4,21 @@ public class LikeResult {
 
     public static final String CODE_OK = "OK";
     public static final String CODE_ALREADY_LIKED = "ALREADY_LIKED";
+    public static final String CODE_ACCEPTED = "ACCEPTED";
+    public static final String CODE_QUEUE_FULL = "QUEUE_FULL";
 
     private final boolean success;
     private final String code;
+    private final Long likeCount;
 
     public LikeResult(boolean success, String code) {
+        this(success, code, null);
+    }
+
+    public LikeResult(boolean success, String code, Long likeCount) {
         this.success = success;
         this.code = code;
+        this.likeCount = likeCount;
     }
 
     public boolean isSuccess() {
@@ -20,4 +28,11 @@ public class LikeResult {
     public String getCode() {
         return code;
     }
+
+    /**
+     * @return The persisted like count of the post, or null when the like was only queued
+     */
+    public Long getLikeCount() {
+        return likeCount;
+    }
 }
@@ -0,0 +1,185 @@
+package org.jahia.se.modules.blogservice.services;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Write-behind buffer for likes. Submissions are deduplicated against the likes still waiting in memory and
+ * queued; a single writer thread hands them over to a {@link Flusher} in batches, as soon as the batch is full
+ * or the oldest like waited for the flush interval. The queue is bounded: once full, submissions are refused
+ * instead of being silently dropped or growing the heap.
+ */
+final class LikeWriteBuffer {
+
+    private static final Logger logger = LoggerFactory.getLogger(LikeWriteBuffer.class);
+
+    /**
+     * Persists a batch of buffered likes, ideally with a single save
+     */
+    interface Flusher {
+        void flush(List<LikeRequest> batch) throws Exception;
+    }
+
+    private final BlogConfigurationService configurationService;
+    private final Flusher flusher;
+    private final LinkedBlockingQueue<LikeRequest> queue = new LinkedBlockingQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final Set<String> pendingKeys = ConcurrentHashMap.newKeySet();
+
+    private volatile boolean running;
+    private Thread writer;
+
+    LikeWriteBuffer(BlogConfigurationService configurationService, Flusher flusher) {
+        this.configurationService = configurationService;
+        this.flusher = flusher;
+    }
+
+    synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        writer = new Thread(this::run, "blog-like-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Stops accepting likes and waits for the writer to flush everything that was queued. Likes are only queued
+     * while holding the lock with the buffer running, so once the flag is cleared nothing more is added behind
+     * the writer's back.
+     */
+    void stop(long timeoutMillis) {
+        Thread stopped;
+        synchronized (this) {
+            if (!running) {
+                return;
+            }
+            running = false;
+            stopped = writer;
+            writer = null;
+        }
+        try {
+            stopped.join(timeoutMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (stopped.isAlive()) {
+            logger.warn("Like writer did not drain within {} ms, {} likes still queued", timeoutMillis, size.get());
+        }
+    }
+
+    int getQueueSize() {
+        return size.get();
+    }
+
+    /**
+     * Queues a like for the next flush
+     * @return {@link LikeResult#CODE_ACCEPTED}, {@link LikeResult#CODE_ALREADY_LIKED} when the same client or IP
+     * already has a like waiting, {@link LikeResult#CODE_QUEUE_FULL}, or null when the buffer is stopped and the
+     * like must be persisted directly
+     */
+    String offer(LikeRequest request) {
+        String clientKey = pendingKey(request.getBlogPostId(), "c", request.getClientHash());
+        String ipKey = pendingKey(request.getBlogPostId(), "i", request.getIpHash());
+        if (clientKey != null && !pendingKeys.add(clientKey)) {
+            return LikeResult.CODE_ALREADY_LIKED;
+        }
+        if (ipKey != null && !pendingKeys.add(ipKey)) {
+            release(clientKey, null);
+            return LikeResult.CODE_ALREADY_LIKED;
+        }
+        if (size.incrementAndGet() > configurationService.getLikeBufferCapacity()) {
+            size.decrementAndGet();
+            release(clientKey, ipKey);
+            return LikeResult.CODE_QUEUE_FULL;
+        }
+        synchronized (this) {
+            if (running) {
+                queue.add(request);
+                return LikeResult.CODE_ACCEPTED;
+            }
+        }
+        size.decrementAndGet();
+        release(clientKey, ipKey);
+        return null;
+    }
+
+    private void run() {
+        List<LikeRequest> batch = new ArrayList<>();
+        while (running || !queue.isEmpty()) {
+            try {
+                long intervalNanos = TimeUnit.MILLISECONDS.toNanos(configurationService.getLikeBufferFlushIntervalMs());
+                int flushSize = configurationService.getLikeBufferFlushSize();
+                LikeRequest first = queue.poll(intervalNanos, TimeUnit.NANOSECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + intervalNanos;
+                while (batch.size() < flushSize) {
+                    queue.drainTo(batch, flushSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= flushSize || !running || remaining <= 0) {
+                        break;
+                    }
+                    LikeRequest next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                flush(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                flush(batch);
+                queue.drainTo(batch);
+                flush(batch);
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void flush(List<LikeRequest> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        size.addAndGet(-batch.size());
+        try {
+            flusher.flush(batch);
+        } catch (Exception e) {
+            // The flusher falls back to direct writes itself, only likes it could not write at all end up here
+            logger.error("Unable to persist {} buffered likes", batch.size(), e);
+        } finally {
+            for (LikeRequest request : batch) {
+                release(pendingKey(request.getBlogPostId(), "c", request.getClientHash()),
+                        pendingKey(request.getBlogPostId(), "i", request.getIpHash()));
+            }
+            batch.clear();
+        }
+    }
+
+    private void release(String clientKey, String ipKey) {
+        if (clientKey != null) {
+            pendingKeys.remove(clientKey);
+        }
+        if (ipKey != null) {
+            pendingKeys.remove(ipKey);
+        }
+    }
+
+    private static String pendingKey(String blogPostId, String kind, String hash) {
+        return StringUtils.isBlank(hash) ? null : blogPostId + '/' + kind + '/' + hash;
+    }
+}
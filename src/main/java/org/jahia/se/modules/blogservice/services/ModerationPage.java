@@ -0,0 +1,81 @@
+package org.jahia.se.modules.blogservice.services;
+
+import java.util.List;
+
+/**
+ * One page of the moderation queue of a site: comments grouped by blog post, with the per-status comment
+ * counts of the whole site and the cursor needed to fetch the next page.
+ */
+public class ModerationPage {
+
+    private final List<PostComments> posts;
+    private final long pendingCount;
+    private final long approvedCount;
+    private final long rejectedCount;
+    private final String endCursor;
+    private final boolean hasNextPage;
+
+    public ModerationPage(List<PostComments> posts, long pendingCount, long approvedCount, long rejectedCount,
+                          String endCursor, boolean hasNextPage) {
+        this.posts = posts;
+        this.pendingCount = pendingCount;
+        this.approvedCount = approvedCount;
+        this.rejectedCount = rejectedCount;
+        this.endCursor = endCursor;
+        this.hasNextPage = hasNextPage;
+    }
+
+    public List<PostComments> getPosts() {
+        return posts;
+    }
+
+    public long getPendingCount() {
+        return pendingCount;
+    }
+
+    public long getApprovedCount() {
+        return approvedCount;
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount;
+    }
+
+    public String getEndCursor() {
+        return endCursor;
+    }
+
+    public boolean isHasNextPage() {
+        return hasNextPage;
+    }
+
+    /**
+     * Comments of the page that belong to one blog post
+     */
+    public static class PostComments {
+        private final String blogPostId;
+        private final String postTitle;
+        private final List<BlogCommentService.CommentData> comments;
+
+        public PostComments(String blogPostId, String postTitle, List<BlogCommentService.CommentData> comments) {
+            this.blogPostId = blogPostId;
+            this.postTitle = postTitle;
+            this.comments = comments;
+        }
+
+        public String getBlogPostId() {
+            return blogPostId;
+        }
+
+        /**
+         * @return The display name of the post, or null if the post no longer exists
+         */
+        public String getPostTitle() {
+            return postTitle;
+        }
+
+        public List<BlogCommentService.CommentData> getComments() {
+            return comments;
+        }
+    }
+}
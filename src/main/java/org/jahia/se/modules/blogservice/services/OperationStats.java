@@ -0,0 +1,66 @@
+package org.jahia.se.modules.blogservice.services;
+
+import java.beans.ConstructorProperties;
+import java.util.Map;
+
+/**
+ * Call counts and latency percentiles of one instrumented operation, in microseconds
+ */
+public class OperationStats {
+    private final String operation;
+    private final long count;
+    private final double meanMicros;
+    private final long p50Micros;
+    private final long p90Micros;
+    private final long p99Micros;
+    private final long maxMicros;
+    private final Map<String, Long> results;
+
+    @ConstructorProperties({"operation", "count", "meanMicros", "p50Micros", "p90Micros", "p99Micros", "maxMicros", "results"})
+    public OperationStats(String operation, long count, double meanMicros, long p50Micros, long p90Micros,
+                          long p99Micros, long maxMicros, Map<String, Long> results) {
+        this.operation = operation;
+        this.count = count;
+        this.meanMicros = meanMicros;
+        this.p50Micros = p50Micros;
+        this.p90Micros = p90Micros;
+        this.p99Micros = p99Micros;
+        this.maxMicros = maxMicros;
+        this.results = results;
+    }
+
+    public String getOperation() {
+        return operation;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getMeanMicros() {
+        return meanMicros;
+    }
+
+    public long getP50Micros() {
+        return p50Micros;
+    }
+
+    public long getP90Micros() {
+        return p90Micros;
+    }
+
+    public long getP99Micros() {
+        return p99Micros;
+    }
+
+    public long getMaxMicros() {
+        return maxMicros;
+    }
+
+    /**
+     * @return number of calls per result code, for instance OK, DUPLICATE_COMMENT or ERROR
+     */
+    public Map<String, Long> getResults() {
+        return results;
+    }
+}
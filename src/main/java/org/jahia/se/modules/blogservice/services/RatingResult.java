@@ -4,14 +4,24 @@ package org.jahia.se.modules.blogservice.services;
  * Result of a rating submission with statistics
  */
 public class RatingResult {
+
+    public static final String CODE_OK = "OK";
+    public static final String CODE_UPDATED = "UPDATED";
+
     private final String blogPostId;
     private final double averageRating;
     private final int ratingCount;
+    private final String code;
 
     public RatingResult(String blogPostId, double averageRating, int ratingCount) {
+        this(blogPostId, averageRating, ratingCount, CODE_OK);
+    }
+
+    public RatingResult(String blogPostId, double averageRating, int ratingCount, String code) {
         this.blogPostId = blogPostId;
         this.averageRating = averageRating;
         this.ratingCount = ratingCount;
+        this.code = code;
     }
 
     public String getBlogPostId() {
@@ -25,4 +35,11 @@ public class RatingResult {
     public int getRatingCount() {
         return ratingCount;
     }
+
+    /**
+     * @return {@link #CODE_OK} for a first vote, {@link #CODE_UPDATED} when the client changed its vote
+     */
+    public String getCode() {
+        return code;
+    }
 }
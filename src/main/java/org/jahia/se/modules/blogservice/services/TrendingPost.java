@@ -0,0 +1,26 @@
+package org.jahia.se.modules.blogservice.services;
+
+/**
+ * A trending blog post with its time-decayed score
+ */
+public class TrendingPost {
+
+    private final String blogPostId;
+    private final double score;
+
+    public TrendingPost(String blogPostId, double score) {
+        this.blogPostId = blogPostId;
+        this.score = score;
+    }
+
+    public String getBlogPostId() {
+        return blogPostId;
+    }
+
+    /**
+     * @return the sum of the weights of the interactions with the post, each halved for every half-life elapsed since
+     */
+    public double getScore() {
+        return score;
+    }
+}
@@ -0,0 +1,38 @@
+package org.jahia.se.modules.blogservice.services;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.Locale;
+
+/**
+ * Layout of the UGC nodes stored below the comments, likes and ratings folders of a blog post.
+ */
+public enum UgcFolderLayout {
+
+    /**
+     * All nodes are direct children of their folder.
+     */
+    FLAT,
+
+    /**
+     * Nodes are spread over 256 buckets named after the first two hex characters of their key.
+     */
+    HASH,
+
+    /**
+     * Comments are stored in year/month/day buckets. Likes, ratings and index entries are looked up by key,
+     * so they fall back to hash buckets.
+     */
+    DATE;
+
+    public static UgcFolderLayout fromConfiguration(String value) {
+        if (StringUtils.isBlank(value)) {
+            return FLAT;
+        }
+        try {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return FLAT;
+        }
+    }
+}
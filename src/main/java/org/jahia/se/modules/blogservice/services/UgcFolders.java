@@ -0,0 +1,119 @@
+package org.jahia.se.modules.blogservice.services;
+
+import org.apache.commons.lang3.StringUtils;
+import org.jahia.services.content.JCRNodeWrapper;
+import org.jahia.services.content.JCRSessionWrapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.jcr.RepositoryException;
+import java.util.Calendar;
+import java.util.Locale;
+
+/**
+ * Folder helpers shared by the UGC services: creation of the folder structure below
+ * {@code /sites/<site>/contents/ugc/blogs/<postId>} and placement of nodes in buckets according to the
+ * configured {@link UgcFolderLayout}.
+ */
+final class UgcFolders {
+
+    private static final Logger logger = LoggerFactory.getLogger(UgcFolders.class);
+
+    static final String BUCKET_TYPE = "jsblognt:ugcBucket";
+
+    private UgcFolders() {
+    }
+
+    static JCRNodeWrapper getOrCreateFolder(JCRSessionWrapper session, String basePath, String folderType) throws RepositoryException {
+        if (session.nodeExists(basePath)) {
+            return session.getNode(basePath);
+        }
+
+        String[] segments = StringUtils.split(basePath, '/');
+        JCRNodeWrapper current = session.getRootNode();
+        for (int i = 0; i < segments.length; i++) {
+            String segment = segments[i];
+            if (StringUtils.isBlank(segment)) {
+                continue;
+            }
+            if (current.hasNode(segment)) {
+                current = current.getNode(segment);
+            } else {
+                String nodeType = (i == segments.length - 1) ? folderType : "jnt:contentFolder";
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Creating node {} of type {} under {}", segment, nodeType, current.getPath());
+                }
+                current = current.addNode(segment, nodeType);
+            }
+        }
+        if (logger.isInfoEnabled()) {
+            logger.info("Created {} folder structure at {}", folderType, current.getPath());
+        }
+        return current;
+    }
+
+    /**
+     * Returns the bucket path, relative to its folder, where a node should be stored, or null for the flat layout.
+     *
+     * @param name      the node name, optionally prefixed with a {@code x-} marker
+     * @param timestamp the creation date used by the date layout; keyed nodes pass null and get a hash bucket
+     */
+    static String bucketPath(UgcFolderLayout layout, String name, Calendar timestamp) {
+        if (layout == UgcFolderLayout.FLAT) {
+            return null;
+        }
+        if (layout == UgcFolderLayout.DATE && timestamp != null) {
+            return String.format(Locale.ROOT, "%04d/%02d/%02d", timestamp.get(Calendar.YEAR),
+                    timestamp.get(Calendar.MONTH) + 1, timestamp.get(Calendar.DAY_OF_MONTH));
+        }
+        return hashBucket(name);
+    }
+
+    /**
+     * Relative path of a keyed node: hash bucket for sharded layouts, plain name otherwise.
+     */
+    static String keyedPath(UgcFolderLayout layout, String name) {
+        return layout == UgcFolderLayout.FLAT ? name : hashBucket(name) + "/" + name;
+    }
+
+    /**
+     * Resolves a keyed node wherever it lives: in its hash bucket or, for folders that were not migrated
+     * yet, directly below the folder.
+     */
+    static JCRNodeWrapper findKeyed(JCRNodeWrapper folder, String name) throws RepositoryException {
+        String bucketed = hashBucket(name) + "/" + name;
+        if (folder.hasNode(bucketed)) {
+            return folder.getNode(bucketed);
+        }
+        if (folder.hasNode(name)) {
+            return folder.getNode(name);
+        }
+        return null;
+    }
+
+    /**
+     * Returns the parent node under which a new node should be added, creating the buckets as needed.
+     */
+    static JCRNodeWrapper getOrCreateParent(JCRNodeWrapper folder, UgcFolderLayout layout, String name,
+                                            Calendar timestamp) throws RepositoryException {
+        String bucketPath = bucketPath(layout, name, timestamp);
+        if (bucketPath == null) {
+            return folder;
+        }
+        JCRNodeWrapper current = folder;
+        for (String segment : StringUtils.split(bucketPath, '/')) {
+            current = current.hasNode(segment) ? current.getNode(segment) : current.addNode(segment, BUCKET_TYPE);
+        }
+        return current;
+    }
+
+    static boolean isBucket(JCRNodeWrapper node) throws RepositoryException {
+        return node.isNodeType(BUCKET_TYPE);
+    }
+
+    private static String hashBucket(String name) {
+        int separator = name.indexOf('-');
+        String key = separator >= 0 && separator < 3 ? name.substring(separator + 1) : name;
+        return key.length() >= 2 ? key.substring(0, 2).toLowerCase(Locale.ROOT) : "00";
+    }
+}
@@ -0,0 +1,55 @@
+package org.jahia.se.modules.blogservice.services;
+
+import org.jahia.services.content.JCRNodeWrapper;
+
+import javax.jcr.NodeIterator;
+import javax.jcr.RepositoryException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.NoSuchElementException;
+
+/**
+ * Depth-first iterator over the UGC nodes of a folder that transparently descends into bucket folders.
+ * Only one child iterator per bucket level is kept, so memory does not grow with the number of nodes.
+ */
+public final class UgcNodeIterator {
+
+    private final Deque<NodeIterator> stack = new ArrayDeque<>();
+    private final String nodeType;
+    private JCRNodeWrapper next;
+
+    /**
+     * @param folder   the comments, likes or ratings folder to walk
+     * @param nodeType the UGC node type to return; bucket folders and other nodes are skipped
+     */
+    public UgcNodeIterator(JCRNodeWrapper folder, String nodeType) throws RepositoryException {
+        this.nodeType = nodeType;
+        stack.push(folder.getNodes());
+    }
+
+    public boolean hasNext() throws RepositoryException {
+        while (next == null && !stack.isEmpty()) {
+            NodeIterator current = stack.peek();
+            if (!current.hasNext()) {
+                stack.pop();
+                continue;
+            }
+            JCRNodeWrapper node = (JCRNodeWrapper) current.nextNode();
+            if (UgcFolders.isBucket(node)) {
+                stack.push(node.getNodes());
+            } else if (node.isNodeType(nodeType)) {
+                next = node;
+            }
+        }
+        return next != null;
+    }
+
+    public JCRNodeWrapper next() throws RepositoryException {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        JCRNodeWrapper node = next;
+        next = null;
+        return node;
+    }
+}
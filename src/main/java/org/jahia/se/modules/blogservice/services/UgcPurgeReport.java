@@ -0,0 +1,99 @@
+package org.jahia.se.modules.blogservice.services;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Progress and counts of a UGC purge run. Counts only include removals that were saved; the report is
+ * updated by the purge thread and can be read at any time while the run is in progress.
+ */
+public final class UgcPurgeReport {
+
+    private final long startedAt = System.currentTimeMillis();
+    private volatile long finishedAt;
+    private volatile String currentSite;
+    private final AtomicLong postFoldersScanned = new AtomicLong();
+    private final AtomicLong rejectedCommentsDeleted = new AtomicLong();
+    private final AtomicLong likesDeleted = new AtomicLong();
+    private final AtomicLong orphanedFoldersDeleted = new AtomicLong();
+    private final AtomicLong saveConflicts = new AtomicLong();
+
+    UgcPurgeReport() {
+    }
+
+    public long getStartedAt() {
+        return startedAt;
+    }
+
+    /**
+     * @return the end time of the run, or 0 while it is in progress
+     */
+    public long getFinishedAt() {
+        return finishedAt;
+    }
+
+    public boolean isFinished() {
+        return finishedAt > 0;
+    }
+
+    /**
+     * @return the site being purged, or null when the run is finished
+     */
+    public String getCurrentSite() {
+        return currentSite;
+    }
+
+    public long getPostFoldersScanned() {
+        return postFoldersScanned.get();
+    }
+
+    public long getRejectedCommentsDeleted() {
+        return rejectedCommentsDeleted.get();
+    }
+
+    public long getLikesDeleted() {
+        return likesDeleted.get();
+    }
+
+    public long getOrphanedFoldersDeleted() {
+        return orphanedFoldersDeleted.get();
+    }
+
+    /**
+     * @return the number of batches discarded because a concurrent change touched the same nodes
+     */
+    public long getSaveConflicts() {
+        return saveConflicts.get();
+    }
+
+    void startSite(String siteKey) {
+        currentSite = siteKey;
+    }
+
+    void postFolderScanned() {
+        postFoldersScanned.incrementAndGet();
+    }
+
+    void saved(long rejectedComments, long likes, long orphanedFolders) {
+        rejectedCommentsDeleted.addAndGet(rejectedComments);
+        likesDeleted.addAndGet(likes);
+        orphanedFoldersDeleted.addAndGet(orphanedFolders);
+    }
+
+    void saveConflict() {
+        saveConflicts.incrementAndGet();
+    }
+
+    void finish() {
+        currentSite = null;
+        finishedAt = System.currentTimeMillis();
+    }
+
+    @Override
+    public String toString() {
+        return "postFoldersScanned=" + getPostFoldersScanned()
+                + " rejectedCommentsDeleted=" + getRejectedCommentsDeleted()
+                + " likesDeleted=" + getLikesDeleted()
+                + " orphanedFoldersDeleted=" + getOrphanedFoldersDeleted()
+                + " saveConflicts=" + getSaveConflicts();
+    }
+}
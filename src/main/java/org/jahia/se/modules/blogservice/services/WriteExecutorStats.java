@@ -0,0 +1,69 @@
+package org.jahia.se.modules.blogservice.services;
+
+/**
+ * Snapshot of the state and counters of the {@link BlogWriteExecutor}
+ */
+public class WriteExecutorStats {
+
+    private final String mode;
+    private final int threads;
+    private final int queueCapacity;
+    private final int queued;
+    private final int active;
+    private final long submitted;
+    private final long rejected;
+    private final long completed;
+    private final long failed;
+
+    public WriteExecutorStats(String mode, int threads, int queueCapacity, int queued, int active, long submitted,
+                              long rejected, long completed, long failed) {
+        this.mode = mode;
+        this.threads = threads;
+        this.queueCapacity = queueCapacity;
+        this.queued = queued;
+        this.active = active;
+        this.submitted = submitted;
+        this.rejected = rejected;
+        this.completed = completed;
+        this.failed = failed;
+    }
+
+    /**
+     * @return VIRTUAL, PLATFORM, or DIRECT when writes run on the request thread
+     */
+    public String getMode() {
+        return mode;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public int getQueued() {
+        return queued;
+    }
+
+    public int getActive() {
+        return active;
+    }
+
+    public long getSubmitted() {
+        return submitted;
+    }
+
+    public long getRejected() {
+        return rejected;
+    }
+
+    public long getCompleted() {
+        return completed;
+    }
+
+    public long getFailed() {
+        return failed;
+    }
+}
@@ -0,0 +1,123 @@
+package org.jahia.se.modules.blogservice.servlets;
+
+import org.apache.commons.lang3.StringUtils;
+import org.jahia.api.Constants;
+import org.jahia.se.modules.blogservice.services.BlogServiceException;
+import org.jahia.se.modules.blogservice.services.BlogUgcExportService;
+import org.jahia.services.content.JCRSessionFactory;
+import org.jahia.services.content.JCRSessionWrapper;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.jcr.RepositoryException;
+import javax.servlet.Servlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Calendar;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Downloads the UGC of a site as newline-delimited JSON, see {@link BlogUgcExportService}. Served on
+ * {@code /modules/blog-ugc-export} with the parameters {@code siteKey}, and optionally {@code postId},
+ * {@code since} (ISO-8601 instant or epoch milliseconds) and {@code gzip=true}. The records are written to the
+ * response as they are read, so the download can be as large as the site without being held in memory.
+ */
+@Component(service = {HttpServlet.class, Servlet.class}, property = {"alias=/blog-ugc-export"})
+public class BlogUgcExportServlet extends HttpServlet {
+
+    private static final long serialVersionUID = 1L;
+    private static final Logger logger = LoggerFactory.getLogger(BlogUgcExportServlet.class);
+
+    private static final String CONTENT_TYPE_NDJSON = "application/x-ndjson";
+    private static final String CONTENT_TYPE_GZIP = "application/gzip";
+
+    @Reference
+    private transient BlogUgcExportService exportService;
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        String siteKey = request.getParameter("siteKey");
+        String postId = StringUtils.trimToNull(request.getParameter("postId"));
+        boolean gzip = Boolean.parseBoolean(request.getParameter("gzip"));
+        if (StringUtils.isBlank(siteKey)) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Missing siteKey parameter");
+            return;
+        }
+        Calendar since;
+        try {
+            since = parseSince(request.getParameter("since"));
+        } catch (IllegalArgumentException e) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid since parameter");
+            return;
+        }
+        if (!hasExportPermission(siteKey)) {
+            response.sendError(HttpServletResponse.SC_FORBIDDEN, "Permission denied");
+            return;
+        }
+
+        String fileName = "blog-ugc-" + siteKey + (postId != null ? "-" + postId : "") + ".ndjson" + (gzip ? ".gz" : "");
+        response.setContentType(gzip ? CONTENT_TYPE_GZIP : CONTENT_TYPE_NDJSON);
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader("Content-Disposition", "attachment; filename=\"" + fileName.replace("\"", "") + "\"");
+        response.setHeader("Cache-Control", "no-store");
+        try {
+            OutputStream out = response.getOutputStream();
+            if (gzip) {
+                GZIPOutputStream gzipOut = new GZIPOutputStream(out);
+                exportService.export(siteKey, postId, since, gzipOut);
+                gzipOut.finish();
+            } else {
+                exportService.export(siteKey, postId, since, out);
+            }
+            out.flush();
+        } catch (BlogServiceException e) {
+            logger.error("UGC export of site={} post={} failed", siteKey, postId, e);
+            if (!response.isCommitted()) {
+                response.reset();
+                response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+            }
+            // Otherwise the truncated download is detected by the missing end of the gzip stream or last record
+        } catch (IOException e) {
+            logger.warn("UGC export of site={} post={} aborted: {}", siteKey, postId, e.getMessage());
+        }
+    }
+
+    /**
+     * The export contains unpublished comments and author emails: only users allowed to publish in the site may
+     * download it, as for the moderation queue.
+     */
+    private static boolean hasExportPermission(String siteKey) {
+        try {
+            String sitePath = "/sites/" + siteKey;
+            JCRSessionWrapper session = JCRSessionFactory.getInstance().getCurrentUserSession(Constants.EDIT_WORKSPACE);
+            return session.nodeExists(sitePath) && session.getNode(sitePath).hasPermission("publish");
+        } catch (RepositoryException | IllegalArgumentException e) {
+            logger.debug("Unable to check the UGC export permission of site {}", siteKey, e);
+            return false;
+        }
+    }
+
+    private static Calendar parseSince(String value) {
+        if (StringUtils.isBlank(value)) {
+            return null;
+        }
+        Calendar since = Calendar.getInstance();
+        if (StringUtils.isNumeric(value)) {
+            since.setTimeInMillis(Long.parseLong(value));
+            return since;
+        }
+        try {
+            since.setTimeInMillis(Instant.parse(value).toEpochMilli());
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException(e);
+        }
+        return since;
+    }
+}
@@ -0,0 +1,125 @@
+package org.jahia.se.modules.blogservice.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free Bloom filter over strings. {@link #mightContain} never returns false for a value that was added;
+ * it returns true for a value that was not added with a probability that grows with the number of insertions,
+ * and stays close to the target rate as long as the expected number of entries is not exceeded.
+ * Bit positions are derived from two 64-bit hashes of the value by double hashing.
+ */
+public final class BloomFilter {
+
+    private static final double LN2 = Math.log(2);
+
+    private final AtomicLongArray words;
+    private final long bitCount;
+    private final int hashCount;
+    private final long expectedEntries;
+    private final LongAdder insertions = new LongAdder();
+
+    private BloomFilter(long bitCount, int hashCount, long expectedEntries) {
+        int wordCount = (int) Math.min(Integer.MAX_VALUE, (bitCount + Long.SIZE - 1) / Long.SIZE);
+        this.words = new AtomicLongArray(wordCount);
+        this.bitCount = (long) wordCount * Long.SIZE;
+        this.hashCount = hashCount;
+        this.expectedEntries = expectedEntries;
+    }
+
+    /**
+     * Creates a filter sized for the given number of entries and false-positive rate
+     * @param expectedEntries Number of values the filter is expected to hold
+     * @param falsePositiveRate Target false-positive rate once the expected number of values was added, between 0 and 1
+     */
+    public static BloomFilter create(long expectedEntries, double falsePositiveRate) {
+        long entries = Math.max(1L, expectedEntries);
+        long bits = bitCount(entries, falsePositiveRate);
+        int hashes = Math.max(1, (int) Math.round((double) bits / entries * LN2));
+        return new BloomFilter(bits, hashes, entries);
+    }
+
+    /**
+     * @return the size of the filter {@link #create} would return for the same arguments, without allocating it
+     */
+    public static long sizeBytes(long expectedEntries, double falsePositiveRate) {
+        long words = (bitCount(Math.max(1L, expectedEntries), falsePositiveRate) + Long.SIZE - 1) / Long.SIZE;
+        return Math.min(Integer.MAX_VALUE, words) * Long.BYTES;
+    }
+
+    private static long bitCount(long entries, double falsePositiveRate) {
+        double rate = Math.min(0.5, Math.max(1e-9, falsePositiveRate));
+        return Math.max(Long.SIZE, (long) Math.ceil(-entries * Math.log(rate) / (LN2 * LN2)));
+    }
+
+    public void put(String value) {
+        long h1 = mix(hash(value));
+        long h2 = mix(h1) | 1L;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Long.remainderUnsigned(h1 + i * h2, bitCount);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long current = words.get(word);
+            while ((current & mask) == 0 && !words.compareAndSet(word, current, current | mask)) {
+                current = words.get(word);
+            }
+        }
+        insertions.increment();
+    }
+
+    public boolean mightContain(String value) {
+        long h1 = mix(hash(value));
+        long h2 = mix(h1) | 1L;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Long.remainderUnsigned(h1 + i * h2, bitCount);
+            if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the number of {@link #put} calls, counting values added more than once
+     */
+    public long getInsertions() {
+        return insertions.sum();
+    }
+
+    public long getExpectedEntries() {
+        return expectedEntries;
+    }
+
+    public long getSizeBytes() {
+        return bitCount / Byte.SIZE;
+    }
+
+    /**
+     * @return the false-positive rate expected for the current number of insertions
+     */
+    public double getExpectedFalsePositiveRate() {
+        return Math.pow(1 - Math.exp(-(double) hashCount * getInsertions() / bitCount), hashCount);
+    }
+
+    /**
+     * 64-bit FNV-1a over the UTF-16 code units of the value
+     */
+    private static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * SplitMix64 finaliser, spreading the FNV hash over all 64 bits
+     */
+    private static long mix(long value) {
+        long z = value + 0x9e3779b97f4a7c15L;
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
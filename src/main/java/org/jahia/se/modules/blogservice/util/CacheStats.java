@@ -0,0 +1,52 @@
+package org.jahia.se.modules.blogservice.util;
+
+/**
+ * Snapshot of the statistics of a {@link WeightedLruCache}.
+ */
+public class CacheStats {
+
+    private final long hits;
+    private final long misses;
+    private final long evictions;
+    private final int size;
+    private final long weight;
+    private final long maxWeight;
+
+    public CacheStats(long hits, long misses, long evictions, int size, long weight, long maxWeight) {
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.size = size;
+        this.weight = weight;
+        this.maxWeight = maxWeight;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public long getEvictions() {
+        return evictions;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public long getWeight() {
+        return weight;
+    }
+
+    public long getMaxWeight() {
+        return maxWeight;
+    }
+
+    public double getHitRatio() {
+        long requests = hits + misses;
+        return requests > 0 ? (double) hits / requests : 0.0;
+    }
+}
@@ -1,29 +1,130 @@
 package org.jahia.se.modules.blogservice.util;
 
 import java.nio.charset.StandardCharsets;
+import java.security.DigestException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
+/**
+ * SHA-256 hashing of identifiers. Each thread reuses its own digest and scratch buffers, and parts are fed to the
+ * digest one after the other instead of being concatenated first.
+ */
 public final class HashUtils {
 
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private static final byte SEPARATOR = ':';
+    private static final int SHA256_LENGTH = 32;
+    // Longer values are encoded with String.getBytes rather than growing the per-thread buffer
+    private static final int MAX_BUFFERED_CHARS = 2048;
+
+    private static final ThreadLocal<Engine> ENGINES = ThreadLocal.withInitial(Engine::new);
+
     private HashUtils() {
     }
 
     public static String sha256(String value) {
-        try {
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            byte[] hash = digest.digest(value.getBytes(StandardCharsets.UTF_8));
-            return toHex(hash);
-        } catch (NoSuchAlgorithmException e) {
-            throw new IllegalStateException("SHA-256 algorithm not available", e);
+        return ENGINES.get().hash(new String[]{value}, null);
+    }
+
+    /**
+     * Hashes the parts joined with {@code ':'}. The result is the same as {@code sha256(String.join(":", parts))}.
+     */
+    public static String sha256(String... parts) {
+        return ENGINES.get().hash(parts, null);
+    }
+
+    /**
+     * Hashes the parts joined with {@code ':'}, followed by raw suffix bytes.
+     */
+    static String sha256(String[] parts, byte[] suffix) {
+        return ENGINES.get().hash(parts, suffix);
+    }
+
+    /**
+     * Per-thread digest with the buffers used to encode the parts and the result
+     */
+    private static final class Engine {
+        private final MessageDigest digest;
+        private final byte[] hash = new byte[SHA256_LENGTH];
+        private final char[] hex = new char[SHA256_LENGTH * 2];
+        private byte[] buffer = new byte[256];
+
+        Engine() {
+            try {
+                digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 algorithm not available", e);
+            }
+        }
+
+        String hash(String[] parts, byte[] suffix) {
+            digest.reset();
+            for (int i = 0; i < parts.length; i++) {
+                if (i > 0) {
+                    digest.update(SEPARATOR);
+                }
+                update(String.valueOf(parts[i]));
+            }
+            if (suffix != null) {
+                digest.update(suffix);
+            }
+            try {
+                digest.digest(hash, 0, SHA256_LENGTH);
+            } catch (DigestException e) {
+                throw new IllegalStateException("Unable to compute SHA-256 digest", e);
+            }
+            for (int i = 0; i < SHA256_LENGTH; i++) {
+                hex[2 * i] = HEX[(hash[i] >> 4) & 0x0f];
+                hex[2 * i + 1] = HEX[hash[i] & 0x0f];
+            }
+            return new String(hex);
+        }
+
+        private void update(String value) {
+            int length = value.length();
+            if (length > MAX_BUFFERED_CHARS) {
+                digest.update(value.getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+            if (buffer.length < length * 3) {
+                buffer = new byte[length * 3];
+            }
+            digest.update(buffer, 0, encodeUtf8(value, buffer));
         }
     }
 
-    private static String toHex(byte[] data) {
-        StringBuilder sb = new StringBuilder(data.length * 2);
-        for (byte b : data) {
-            sb.append(String.format("%02x", b));
+    /**
+     * Encodes a string as UTF-8 into a buffer of at least three bytes per char, with the same output as
+     * {@link String#getBytes(java.nio.charset.Charset)}: unpaired surrogates are replaced with {@code '?'}.
+     *
+     * @return the number of bytes written
+     */
+    static int encodeUtf8(String value, byte[] out) {
+        int n = 0;
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                out[n++] = (byte) c;
+            } else if (c < 0x800) {
+                out[n++] = (byte) (0xc0 | (c >> 6));
+                out[n++] = (byte) (0x80 | (c & 0x3f));
+            } else if (Character.isSurrogate(c)) {
+                if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                    out[n++] = (byte) (0xf0 | (codePoint >> 18));
+                    out[n++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+                    out[n++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+                    out[n++] = (byte) (0x80 | (codePoint & 0x3f));
+                } else {
+                    out[n++] = (byte) '?';
+                }
+            } else {
+                out[n++] = (byte) (0xe0 | (c >> 12));
+                out[n++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                out[n++] = (byte) (0x80 | (c & 0x3f));
+            }
         }
-        return sb.toString();
+        return n;
     }
 }
@@ -0,0 +1,21 @@
+package org.jahia.se.modules.blogservice.util;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Hashes identifiers together with the server secret. The secret is encoded once, when the configuration is
+ * loaded; {@code hash(a, b)} gives the same result as {@code HashUtils.sha256(a + ":" + b + ":" + secret)}, so
+ * hashes stored by earlier versions keep matching.
+ */
+public final class KeyedHasher {
+
+    private final byte[] secretSuffix;
+
+    public KeyedHasher(String secret) {
+        this.secretSuffix = (":" + secret).getBytes(StandardCharsets.UTF_8);
+    }
+
+    public String hash(String... parts) {
+        return HashUtils.sha256(parts, secretSuffix);
+    }
+}
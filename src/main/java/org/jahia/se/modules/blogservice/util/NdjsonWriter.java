@@ -0,0 +1,102 @@
+package org.jahia.se.modules.blogservice.util;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.time.Instant;
+import java.util.Calendar;
+
+/**
+ * Writes flat JSON objects, one per line, straight to a {@link Writer}. Nothing is buffered beyond the writer
+ * itself, so records of any number can be streamed. Null values are omitted.
+ */
+public final class NdjsonWriter {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final Writer out;
+    private boolean firstField;
+
+    public NdjsonWriter(Writer out) {
+        this.out = out;
+    }
+
+    public NdjsonWriter beginRecord() throws IOException {
+        out.write('{');
+        firstField = true;
+        return this;
+    }
+
+    public NdjsonWriter field(String name, String value) throws IOException {
+        if (value != null) {
+            name(name);
+            string(value);
+        }
+        return this;
+    }
+
+    public NdjsonWriter field(String name, long value) throws IOException {
+        name(name);
+        out.write(Long.toString(value));
+        return this;
+    }
+
+    /**
+     * Dates are written as ISO-8601 UTC instants
+     */
+    public NdjsonWriter field(String name, Calendar value) throws IOException {
+        if (value != null) {
+            name(name);
+            string(Instant.ofEpochMilli(value.getTimeInMillis()).toString());
+        }
+        return this;
+    }
+
+    public void endRecord() throws IOException {
+        out.write("}\n");
+    }
+
+    private void name(String name) throws IOException {
+        if (!firstField) {
+            out.write(',');
+        }
+        firstField = false;
+        string(name);
+        out.write(':');
+    }
+
+    private void string(String value) throws IOException {
+        out.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    out.write("\\\"");
+                    break;
+                case '\\':
+                    out.write("\\\\");
+                    break;
+                case '\n':
+                    out.write("\\n");
+                    break;
+                case '\r':
+                    out.write("\\r");
+                    break;
+                case '\t':
+                    out.write("\\t");
+                    break;
+                default:
+                    // Line and paragraph separators are escaped too, so a record never spans lines for any reader
+                    if (c < 0x20 || c == '\u2028' || c == '\u2029') {
+                        out.write("\\u");
+                        out.write(HEX[(c >> 12) & 0xF]);
+                        out.write(HEX[(c >> 8) & 0xF]);
+                        out.write(HEX[(c >> 4) & 0xF]);
+                        out.write(HEX[c & 0xF]);
+                    } else {
+                        out.write(c);
+                    }
+            }
+        }
+        out.write('"');
+    }
+}
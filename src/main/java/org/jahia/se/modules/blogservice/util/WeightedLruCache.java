@@ -0,0 +1,174 @@
+package org.jahia.se.modules.blogservice.util;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
+
+/**
+ * Small in-process LRU cache bounded by the total weight of its values, with a time-to-live per entry and
+ * hit/miss/eviction statistics. Meant for read-mostly data that is invalidated explicitly by the write path.
+ *
+ * @param <K> key type
+ * @param <V> value type
+ */
+public final class WeightedLruCache<K, V> {
+
+    private final LinkedHashMap<K, Entry<V>> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private final ToLongFunction<V> weigher;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    private long maxWeight;
+    private long ttlMillis;
+    private long weight;
+
+    public WeightedLruCache(long maxWeight, long ttlMillis, ToLongFunction<V> weigher) {
+        this.maxWeight = maxWeight;
+        this.ttlMillis = ttlMillis;
+        this.weigher = weigher;
+    }
+
+    /**
+     * Updates the limits, evicting entries if the cache shrank. A max weight or TTL of zero disables the cache.
+     */
+    public synchronized void setLimits(long maxWeight, long ttlMillis) {
+        if (this.maxWeight == maxWeight && this.ttlMillis == ttlMillis) {
+            return;
+        }
+        this.maxWeight = maxWeight;
+        this.ttlMillis = ttlMillis;
+        if (!isEnabled()) {
+            evictions.add(entries.size());
+            entries.clear();
+            weight = 0;
+        } else {
+            evictOverweight();
+        }
+    }
+
+    public synchronized V get(K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        if (entry.expiresAt <= System.currentTimeMillis()) {
+            remove(key, entry);
+            evictions.increment();
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return entry.value;
+    }
+
+    /**
+     * Returns a token to pass to {@link #putIfNotInvalidated} once the value has been loaded, so that a value
+     * read before a concurrent invalidation is not cached.
+     */
+    public long loadToken() {
+        return invalidations.get();
+    }
+
+    public synchronized void putIfNotInvalidated(K key, V value, long loadToken) {
+        if (!isEnabled() || invalidations.get() != loadToken) {
+            return;
+        }
+        long valueWeight = weigher.applyAsLong(value);
+        if (valueWeight > maxWeight) {
+            return;
+        }
+        Entry<V> previous = entries.put(key, new Entry<>(value, valueWeight, System.currentTimeMillis() + ttlMillis));
+        if (previous != null) {
+            weight -= previous.weight;
+        }
+        weight += valueWeight;
+        evictOverweight();
+    }
+
+    public synchronized void invalidate(K key) {
+        invalidations.incrementAndGet();
+        Entry<V> entry = entries.get(key);
+        if (entry != null) {
+            remove(key, entry);
+        }
+    }
+
+    public synchronized void invalidateIf(Predicate<K> predicate) {
+        invalidations.incrementAndGet();
+        Iterator<Map.Entry<K, Entry<V>>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<K, Entry<V>> entry = iterator.next();
+            if (predicate.test(entry.getKey())) {
+                weight -= entry.getValue().weight;
+                iterator.remove();
+            }
+        }
+    }
+
+    public synchronized void invalidateValuesIf(Predicate<V> predicate) {
+        invalidations.incrementAndGet();
+        Iterator<Entry<V>> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            Entry<V> entry = iterator.next();
+            if (predicate.test(entry.value)) {
+                weight -= entry.weight;
+                iterator.remove();
+            }
+        }
+    }
+
+    public synchronized void invalidateAll() {
+        invalidations.incrementAndGet();
+        entries.clear();
+        weight = 0;
+    }
+
+    /**
+     * Calls the action on every cached value, including expired values not evicted yet
+     */
+    public synchronized void forEachValue(Consumer<V> action) {
+        entries.values().forEach(entry -> action.accept(entry.value));
+    }
+
+    public synchronized CacheStats getStats() {
+        return new CacheStats(hits.sum(), misses.sum(), evictions.sum(), entries.size(), weight, maxWeight);
+    }
+
+    private boolean isEnabled() {
+        return maxWeight > 0 && ttlMillis > 0;
+    }
+
+    private void evictOverweight() {
+        Iterator<Entry<V>> iterator = entries.values().iterator();
+        while (weight > maxWeight && iterator.hasNext()) {
+            weight -= iterator.next().weight;
+            iterator.remove();
+            evictions.increment();
+        }
+    }
+
+    private void remove(K key, Entry<V> entry) {
+        entries.remove(key);
+        weight -= entry.weight;
+    }
+
+    private static final class Entry<V> {
+        private final V value;
+        private final long weight;
+        private final long expiresAt;
+
+        private Entry(V value, long weight, long expiresAt) {
+            this.value = value;
+            this.weight = weight;
+            this.expiresAt = expiresAt;
+        }
+    }
+}